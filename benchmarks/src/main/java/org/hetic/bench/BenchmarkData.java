@@ -0,0 +1,55 @@
+package org.hetic.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Données de mesure générées à partir d'une graine fixe, identiques d'une exécution à l'autre.
+ */
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param type {@code text} (journaux applicatifs), {@code binary} (enregistrements structurés)
+     *             ou {@code random} (incompressible, comme un JPEG ou un ZIP)
+     */
+    static byte[] generate(String type, int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        switch (type) {
+            case "text" -> {
+                StringBuilder builder = new StringBuilder(size + 128);
+                String[] levels = {"INFO", "DEBUG", "WARN", "ERROR"};
+                while (builder.length() < size) {
+                    builder.append("2024-03-").append(10 + random.nextInt(20))
+                            .append(" ").append(levels[random.nextInt(levels.length)])
+                            .append(" [worker-").append(random.nextInt(16)).append("] request id=")
+                            .append(Long.toHexString(random.nextLong()))
+                            .append(" duration=").append(random.nextInt(5000)).append("ms\n");
+                }
+                byte[] text = builder.toString().getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(text, 0, data, 0, size);
+            }
+            case "binary" -> {
+                for (int offset = 0; offset + 16 <= size; offset += 16) {
+                    // Identifiant croissant, petite valeur, horodatage proche : typique d'un fichier de données
+                    writeInt(data, offset, offset / 16);
+                    writeInt(data, offset + 4, random.nextInt(256));
+                    writeInt(data, offset + 8, 1_700_000_000 + offset / 4);
+                    writeInt(data, offset + 12, 0);
+                }
+            }
+            case "random" -> random.nextBytes(data);
+            default -> throw new IllegalArgumentException("Type de données inconnu: " + type);
+        }
+        return data;
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,42 @@
+package org.hetic.bench;
+
+import org.hetic.ContentDefinedChunking;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit du découpage seul (sans empreinte ni compression), une taille de fichier par palier
+ * de taille de chunk d'{@code adjustChunkParams}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkingBenchmark {
+    // 1 KB, 4 KB, 8 KB, 16 KB, 32 KB et 64 KB de taille moyenne
+    @Param({"8192", "65536", "524288", "4194304", "33554432", "134217728"})
+    int fileSize;
+
+    @Param({"text", "random"})
+    String dataType;
+
+    private final ContentDefinedChunking chunker = new ContentDefinedChunking();
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.generate(dataType, fileSize, 42);
+    }
+
+    @Benchmark
+    public int streamChunks(Blackhole blackhole) throws IOException {
+        return chunker.streamChunks(new ByteArrayInputStream(data), data.length,
+                (chunk, chunkNumber) -> blackhole.consume(chunk));
+    }
+}
@@ -0,0 +1,54 @@
+package org.hetic.bench;
+
+import org.hetic.ChunkCompressor;
+import org.hetic.CompressionPolicy;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodage et décodage d'un chunk par {@link ChunkCompressor}, par niveau Zstd et type de données.
+ * La politique adaptative s'applique : les données aléatoires mesurent le coût de la sonde
+ * d'entropie et du stockage brut, pas celui de Zstd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionCodecBenchmark {
+    @Param({"1", "3", "9", "19"})
+    int level;
+
+    @Param({"text", "binary", "random"})
+    String dataType;
+
+    @Param({"8192", "65536"})
+    int chunkSize;
+
+    private ChunkCompressor compressor;
+    private ByteBuffer chunk;
+    private ByteBuffer target;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        compressor = new ChunkCompressor(new CompressionPolicy(level, 0));
+        chunk = ByteBuffer.wrap(BenchmarkData.generate(dataType, chunkSize, 11));
+        target = ByteBuffer.allocateDirect(ChunkCompressor.maxEncodedSize(chunkSize));
+        encoded = compressor.createCompressedChunkWithMetadata(chunk);
+    }
+
+    @Benchmark
+    public int encode() {
+        target.clear();
+        return compressor.encode(chunk, "", target);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return compressor.decompressChunkWithMetadata(encoded);
+    }
+}
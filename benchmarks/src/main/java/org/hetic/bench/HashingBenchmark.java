@@ -0,0 +1,44 @@
+package org.hetic.bench;
+
+import org.hetic.ChunkHasher;
+import org.hetic.models.ChunkId;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût de l'empreinte d'un chunk pour chaque algorithme, sur tas et en buffer direct
+ * (chunks issus d'un fichier projeté en mémoire).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashingBenchmark {
+    @Param({"sha256", "blake3", "murmur3-128"})
+    String hasherName;
+
+    @Param({"1024", "8192", "65536"})
+    int chunkSize;
+
+    @Param({"false", "true"})
+    boolean direct;
+
+    private ChunkHasher hasher;
+    private ByteBuffer chunk;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hasher = ChunkHasher.forName(hasherName);
+        byte[] data = BenchmarkData.generate("random", chunkSize, 7);
+        chunk = direct ? ByteBuffer.allocateDirect(chunkSize).put(data).flip() : ByteBuffer.wrap(data);
+    }
+
+    @Benchmark
+    public ChunkId hashChunk() {
+        return hasher.hash(chunk);
+    }
+}
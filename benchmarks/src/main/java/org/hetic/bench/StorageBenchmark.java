@@ -0,0 +1,78 @@
+package org.hetic.bench;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.hetic.ChunkIndex;
+import org.hetic.CompressedChunkStorageSystem;
+import org.hetic.CompressionPolicy;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code addChunk} de bout en bout (empreinte, recherche de doublons, compression, pack, références) :
+ * nouveaux chunks et doublons, contre un PostgreSQL embarqué démarré pour la mesure ou avec un
+ * dépôt embarqué, sans base de données.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StorageBenchmark {
+    @Param({"8192"})
+    int chunkSize;
+
+    @Param({"postgres", "embedded"})
+    String chunkIndex;
+
+    private EmbeddedPostgres postgres;
+    private CompressedChunkStorageSystem storageSystem;
+    private byte[] template;
+    private ByteBuffer duplicate;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ChunkIndex.Backend backend = ChunkIndex.Backend.fromName(chunkIndex);
+        if (backend == ChunkIndex.Backend.POSTGRES) {
+            postgres = EmbeddedPostgres.start();
+            String jdbcUrl = postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true";
+            storageSystem = new CompressedChunkStorageSystem(jdbcUrl, "postgres", "postgres",
+                    Sha256ChunkHasher.INSTANCE, false, new CompressionPolicy(), false, backend);
+        } else {
+            storageSystem = new CompressedChunkStorageSystem(Sha256ChunkHasher.INSTANCE, false,
+                    new CompressionPolicy(), false, backend);
+        }
+        template = BenchmarkData.generate("text", chunkSize, 3);
+        duplicate = ByteBuffer.wrap(template.clone());
+        storageSystem.addChunk(duplicate, "duplicate.log", 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storageSystem.close();
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Benchmark
+    public ChunkMetadata addNewChunk() {
+        // Les 8 premiers octets rendent chaque chunk unique, le reste garde sa compressibilité
+        long id = ++counter;
+        byte[] chunk = template.clone();
+        ByteBuffer.wrap(chunk).putLong(0, id);
+        return storageSystem.addChunk(chunk, "new.log", (int) id);
+    }
+
+    @Benchmark
+    public ChunkMetadata addDuplicateChunk() {
+        long id = ++counter;
+        return storageSystem.addChunk(duplicate, "duplicate.log", (int) id);
+    }
+}
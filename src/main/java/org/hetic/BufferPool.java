@@ -0,0 +1,92 @@
+package org.hetic;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool de buffers directs par classes de taille (puissances de deux), pour les chunks
+ * encodés qui transitent de la compression jusqu'à l'écriture dans les packs.
+ * Les buffers plus grands que la plus grande classe sont alloués sans être conservés.
+ */
+public class BufferPool {
+    private static final int MIN_SHIFT = 10; // 1 KB
+
+    private final int maxShift;
+    private final int maxPerClass;
+    private final Queue<ByteBuffer>[] classes;
+    private final AtomicInteger[] pooled;
+
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    /**
+     * @param maxBufferSize plus grande taille conservée (arrondie à la puissance de deux supérieure)
+     * @param maxPerClass   nombre maximal de buffers conservés par classe
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxBufferSize, int maxPerClass) {
+        this.maxShift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(maxBufferSize - 1));
+        this.maxPerClass = maxPerClass;
+        int classCount = maxShift - MIN_SHIFT + 1;
+        this.classes = new Queue[classCount];
+        this.pooled = new AtomicInteger[classCount];
+        for (int i = 0; i < classCount; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+            pooled[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @return un buffer direct vide (position 0, limite = capacité) d'au moins {@code minCapacity} octets
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int index = classIndex(minCapacity);
+        if (index < 0) {
+            allocations.incrementAndGet();
+            return ByteBuffer.allocateDirect(minCapacity);
+        }
+        ByteBuffer buffer = classes[index].poll();
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            return ByteBuffer.allocateDirect(1 << (index + MIN_SHIFT));
+        }
+        pooled[index].decrementAndGet();
+        reuses.incrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Rend un buffer au pool. Le buffer ne doit plus être utilisé par l'appelant ;
+     * un buffer qui ne vient pas du pool est simplement ignoré.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || Integer.bitCount(buffer.capacity()) != 1) {
+            return;
+        }
+        int index = classIndex(buffer.capacity());
+        if (index < 0 || (1 << (index + MIN_SHIFT)) != buffer.capacity()) {
+            return;
+        }
+        if (pooled[index].incrementAndGet() <= maxPerClass) {
+            classes[index].offer(buffer);
+        } else {
+            pooled[index].decrementAndGet();
+        }
+    }
+
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    private int classIndex(int capacity) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1));
+        return shift > maxShift ? -1 : shift - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,304 @@
+package org.hetic;
+
+import org.hetic.models.ChunkCacheStats;
+import org.hetic.models.ChunkId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache des chunks décodés (décompressés) pour les restaurations, borné en octets.
+ * <p>
+ * Le contenu d'un chunk ne dépend que de son empreinte : une entrée n'est jamais périmée,
+ * même quand le ramasse-miettes déplace le chunk dans un autre pack.
+ * L'éviction suit W-TinyLFU, pondéré par la taille des chunks :
+ * <ul>
+ *   <li>une petite fenêtre LRU (1 % de la capacité) accueille chaque nouveau chunk ;</li>
+ *   <li>à sa sortie de la fenêtre, le chunk n'entre dans la zone principale (LRU segmentée
+ *   probatoire / protégée) que s'il a été demandé plus souvent que tous les chunks qu'il
+ *   évincerait, d'après un sketch de fréquences (count-min, compteurs de 4 bits vieillis
+ *   par moitié).</li>
+ * </ul>
+ * Un chunk lu une seule fois (parcours d'un gros fichier unique) ne chasse donc pas les
+ * en-têtes et blocs communs partagés par des milliers de fichiers.
+ * En mode hors tas, les chunks sont copiés dans des buffers directs : le cache ne pèse
+ * pas sur le ramasse-miettes de la JVM, au prix d'une copie à chaque lecture.
+ */
+public class ChunkCache {
+    public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final boolean offHeap;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    public ChunkCache() {
+        this(DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * @param capacityBytes taille totale maximale des chunks conservés
+     * @param offHeap       stocker les chunks dans des buffers directs plutôt que sur le tas
+     */
+    public ChunkCache(long capacityBytes, boolean offHeap) {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("Capacité du cache invalide: " + capacityBytes);
+        }
+        long perSegment = Math.max(1, capacityBytes / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * @return une copie du chunk décodé, ou null s'il n'est pas en cache
+     */
+    public byte[] get(ChunkId hash) {
+        ByteBuffer data = segment(hash).get(hash);
+        if (data == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return toArray(data);
+    }
+
+    /**
+     * Propose un chunk décodé au cache ; le tableau n'est plus modifié par le cache ni conservé
+     * tel quel en mode hors tas. Le chunk peut être refusé par la politique d'admission.
+     */
+    public void put(ChunkId hash, byte[] chunk) {
+        segment(hash).put(hash, offHeap ? ByteBuffer.allocateDirect(chunk.length).put(chunk).flip()
+                : ByteBuffer.wrap(chunk));
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public ChunkCacheStats getStats() {
+        long chunks = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                chunks += segment.window.size() + segment.probation.size() + segment.protectedLru.size();
+                bytes += segment.windowBytes + segment.probationBytes + segment.protectedBytes;
+            }
+        }
+        return new ChunkCacheStats(hits.get(), misses.get(), evictions.get(), evictedBytes.get(),
+                rejections.get(), chunks, bytes);
+    }
+
+    private byte[] toArray(ByteBuffer data) {
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return copy;
+    }
+
+    // Les mots 2 et 3 sont nuls avec une empreinte de 128 bits (murmur3-128)
+    private Segment segment(ChunkId hash) {
+        return segments[(int) (hash.word(1) >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private final class Segment {
+        private final long windowCapacity;
+        private final long mainCapacity;
+        private final long protectedCapacity;
+        private final FrequencySketch sketch;
+
+        // Ordre d'insertion : la tête est le moins récemment utilisé, un accès réinsère en queue
+        private final LinkedHashMap<ChunkId, ByteBuffer> window = new LinkedHashMap<>();
+        private final LinkedHashMap<ChunkId, ByteBuffer> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<ChunkId, ByteBuffer> protectedLru = new LinkedHashMap<>();
+        private long windowBytes;
+        private long probationBytes;
+        private long protectedBytes;
+
+        Segment(long capacity) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = Math.max(1, capacity - windowCapacity);
+            this.protectedCapacity = mainCapacity * 8 / 10;
+            // Une entrée du sketch par tranche de 4 KB de capacité (taille de chunk typique)
+            this.sketch = new FrequencySketch(capacity / 4096);
+        }
+
+        synchronized ByteBuffer get(ChunkId hash) {
+            sketch.increment(hash);
+            ByteBuffer data = window.remove(hash);
+            if (data != null) {
+                window.put(hash, data);
+                return data;
+            }
+            data = protectedLru.remove(hash);
+            if (data != null) {
+                protectedLru.put(hash, data);
+                return data;
+            }
+            data = probation.remove(hash);
+            if (data != null) {
+                // Deuxième accès dans la zone principale : promotion en zone protégée
+                probationBytes -= data.remaining();
+                protectedLru.put(hash, data);
+                protectedBytes += data.remaining();
+                demoteProtectedOverflow();
+            }
+            return data;
+        }
+
+        synchronized void put(ChunkId hash, ByteBuffer data) {
+            int weight = data.remaining();
+            if (weight > mainCapacity) {
+                rejections.incrementAndGet();
+                return;
+            }
+            if (window.containsKey(hash) || probation.containsKey(hash) || protectedLru.containsKey(hash)) {
+                return;
+            }
+            window.put(hash, data);
+            windowBytes += weight;
+            while (windowBytes > windowCapacity) {
+                Iterator<Map.Entry<ChunkId, ByteBuffer>> eldest = window.entrySet().iterator();
+                Map.Entry<ChunkId, ByteBuffer> candidate = eldest.next();
+                eldest.remove();
+                windowBytes -= candidate.getValue().remaining();
+                admit(candidate.getKey(), candidate.getValue());
+            }
+        }
+
+        /**
+         * Le candidat sortant de la fenêtre prend la place des victimes (tête de la zone
+         * probatoire, puis protégée) seulement s'il est plus fréquent que chacune d'elles.
+         */
+        private void admit(ChunkId candidate, ByteBuffer data) {
+            int weight = data.remaining();
+            long needed = probationBytes + protectedBytes + weight - mainCapacity;
+            if (needed > 0) {
+                int candidateFrequency = sketch.frequency(candidate);
+                List<ChunkId> victims = new ArrayList<>();
+                long freed = 0;
+                for (LinkedHashMap<ChunkId, ByteBuffer> zone : List.of(probation, protectedLru)) {
+                    for (var entry : zone.entrySet()) {
+                        if (freed >= needed) {
+                            break;
+                        }
+                        if (sketch.frequency(entry.getKey()) >= candidateFrequency) {
+                            reject(weight);
+                            return;
+                        }
+                        victims.add(entry.getKey());
+                        freed += entry.getValue().remaining();
+                    }
+                }
+                for (ChunkId victim : victims) {
+                    ByteBuffer evicted = probation.remove(victim);
+                    if (evicted != null) {
+                        probationBytes -= evicted.remaining();
+                    } else {
+                        evicted = protectedLru.remove(victim);
+                        protectedBytes -= evicted.remaining();
+                    }
+                    evictions.incrementAndGet();
+                    evictedBytes.addAndGet(evicted.remaining());
+                }
+            }
+            probation.put(candidate, data);
+            probationBytes += weight;
+        }
+
+        private void reject(int weight) {
+            rejections.incrementAndGet();
+            evictions.incrementAndGet();
+            evictedBytes.addAndGet(weight);
+        }
+
+        private void demoteProtectedOverflow() {
+            Iterator<Map.Entry<ChunkId, ByteBuffer>> eldest = protectedLru.entrySet().iterator();
+            while (protectedBytes > protectedCapacity && eldest.hasNext()) {
+                Map.Entry<ChunkId, ByteBuffer> entry = eldest.next();
+                eldest.remove();
+                protectedBytes -= entry.getValue().remaining();
+                probation.put(entry.getKey(), entry.getValue());
+                probationBytes += entry.getValue().remaining();
+            }
+        }
+
+        synchronized void clear() {
+            window.clear();
+            probation.clear();
+            protectedLru.clear();
+            windowBytes = 0;
+            probationBytes = 0;
+            protectedBytes = 0;
+        }
+    }
+
+    /**
+     * Sketch count-min de 4 lignes à compteurs de 4 bits (saturés à 15). Toutes les
+     * {@code 10 × largeur} incrémentations, les compteurs sont divisés par deux pour
+     * que les fréquences reflètent l'activité récente. Non synchronisé : protégé par son segment.
+     */
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+
+        private final byte[][] counters = new byte[ROWS][];
+        private final int mask;
+        private final int resetThreshold;
+        private int additions;
+
+        FrequencySketch(long expectedEntries) {
+            int width = Integer.highestOneBit((int) Math.max(64, Math.min(1 << 24, expectedEntries)) * 2 - 1);
+            for (int i = 0; i < ROWS; i++) {
+                counters[i] = new byte[width];
+            }
+            this.mask = width - 1;
+            this.resetThreshold = 10 * width;
+        }
+
+        void increment(ChunkId hash) {
+            boolean added = false;
+            for (int i = 0; i < ROWS; i++) {
+                int index = index(hash, i);
+                if (counters[i][index] < 15) {
+                    counters[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetThreshold) {
+                for (byte[] row : counters) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(ChunkId hash) {
+            int frequency = 15;
+            for (int i = 0; i < ROWS; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int index(ChunkId hash, int row) {
+            // Double hachage sur deux mots déjà uniformes de l'empreinte
+            long h = hash.word(0) + row * hash.word(1);
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Réservations des nouveaux chunks en cours d'écriture dans ce processus.
+ * <p>
+ * Quand plusieurs threads découvrent le même nouveau chunk en même temps, seul celui qui le
+ * réserve le compresse, l'écrit dans un pack et l'indexe ; les autres n'écrivent que leur
+ * référence, après avoir attendu que le chunk soit indexé. La table est une
+ * {@link ConcurrentHashMap} : deux empreintes différentes ne se disputent pas le même verrou.
+ * <p>
+ * Entre processus (ou si une réservation se libère juste après une recherche de doublons),
+ * un même chunk peut encore être écrit deux fois : l'index n'en garde qu'une entrée et les
+ * octets en trop dans le pack sont récupérés par compactage.
+ */
+public class ChunkClaims {
+    private final ConcurrentMap<ChunkId, CompletableFuture<Void>> claims = new ConcurrentHashMap<>();
+
+    /**
+     * @return true si l'appelant devient responsable d'écrire et d'indexer le chunk ; il doit
+     * ensuite appeler {@link #release} ou {@link #abandon}
+     */
+    public boolean tryClaim(ChunkId hash) {
+        return claims.putIfAbsent(hash, new CompletableFuture<>()) == null;
+    }
+
+    /**
+     * Le chunk est indexé : les threads qui l'attendaient peuvent écrire leurs références.
+     */
+    public void release(ChunkId hash) {
+        CompletableFuture<Void> claim = claims.remove(hash);
+        if (claim != null) {
+            claim.complete(null);
+        }
+    }
+
+    /**
+     * L'écriture a échoué : les threads qui attendaient le chunk échouent à leur tour.
+     */
+    public void abandon(ChunkId hash, Throwable cause) {
+        CompletableFuture<Void> claim = claims.remove(hash);
+        if (claim != null) {
+            claim.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Attend que le chunk réservé par un autre thread soit indexé ; retourne immédiatement
+     * s'il n'est pas réservé.
+     *
+     * @throws IllegalStateException si l'écriture du chunk a été abandonnée
+     */
+    public void await(ChunkId hash) {
+        CompletableFuture<Void> claim = claims.get(hash);
+        if (claim == null) {
+            return;
+        }
+        try {
+            claim.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Écriture abandonnée du chunk " + hash, e.getCause());
+        }
+    }
+
+    public int size() {
+        return claims.size();
+    }
+}
@@ -1,39 +1,107 @@
 package org.hetic;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
 
 public class ChunkCompressor {
-    private static final int COMPRESSION_LEVEL = 22; // Entre 1 et 22
+    // Format stocké : [taille originale (8 bytes)][codec (1 byte)][id du dictionnaire (4 bytes), ZSTD_DICT seulement][données]
+    public static final int HEADER_SIZE = Long.BYTES + 1;
 
-    public byte[] compressChunk(byte[] chunk) {
-        // Estimation de la taille maximale compressée
-        long maxCompressedSize = Zstd.compressBound(chunk.length);
-        byte[] compressedData = new byte[(int) maxCompressedSize];
+    /**
+     * Codec d'un chunk stocké, enregistré dans son en-tête.
+     * Le mode rapide produit des trames Zstd standard (niveaux négatifs), décodées comme ZSTD.
+     */
+    public enum Codec {
+        RAW(0), FAST(1), ZSTD(2), ZSTD_DICT(3);
 
-        // Compression du chunk
-        long compressedSize = Zstd.compress(compressedData,chunk,COMPRESSION_LEVEL);
+        private final byte id;
 
-        if (compressedSize < 0) {
-            throw new RuntimeException("Échec de la compression: " + Zstd.getErrorName(compressedSize));
+        Codec(int id) {
+            this.id = (byte) id;
         }
 
-        if (compressedSize >= chunk.length) {
-            return chunk;
+        public byte id() {
+            return id;
         }
 
-        // Créer un nouveau tableau de la taille exacte des données compressées
-        byte[] result = new byte[(int) compressedSize];
-        System.arraycopy(compressedData, 0, result, 0, (int) compressedSize);
-        return result;
+        public static Codec fromId(byte id) {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IllegalArgumentException("Codec de chunk inconnu: " + id);
+        }
     }
 
+    // Contextes Zstd et buffers de travail réutilisés par thread : aucune allocation par chunk
+    private static final ThreadLocal<Contexts> CONTEXTS = ThreadLocal.withInitial(Contexts::new);
+
+    private final CompressionPolicy policy;
+    private final CompressionDictionaries dictionaries;
+
+    public ChunkCompressor() {
+        this(new CompressionPolicy());
+    }
+
+    public ChunkCompressor(CompressionPolicy policy) {
+        this(policy, null);
+    }
+
+    /**
+     * @param dictionaries dictionnaires des petits chunks, null pour n'en utiliser aucun
+     */
+    public ChunkCompressor(CompressionPolicy policy, CompressionDictionaries dictionaries) {
+        this.policy = policy;
+        this.dictionaries = dictionaries;
+    }
+
+    public CompressionPolicy getPolicy() {
+        return policy;
+    }
+
+    public static int headerSize(Codec codec) {
+        return codec == Codec.ZSTD_DICT ? HEADER_SIZE + Integer.BYTES : HEADER_SIZE;
+    }
+
+    /**
+     * Taille à réserver pour encoder un chunk de {@code chunkSize} octets avec {@link #encode}.
+     */
+    public static int maxEncodedSize(int chunkSize) {
+        return HEADER_SIZE + Integer.BYTES + (int) Zstd.compressBound(chunkSize);
+    }
+
+    /**
+     * Trame Zstd du chunk au niveau courant de la politique, même si elle n'est pas plus petite.
+     */
+    public byte[] compressChunk(byte[] chunk) {
+        return compressChunk(ByteBuffer.wrap(chunk));
+    }
+
+    /**
+     * Compresse un chunk lu directement depuis un buffer (tas ou direct, par exemple une
+     * tranche de fichier projeté), sans copier les données d'origine sur le tas.
+     */
+    public byte[] compressChunk(ByteBuffer chunk) {
+        Contexts contexts = CONTEXTS.get();
+        ByteBuffer target = contexts.targetScratch(chunk.isDirect(), (int) Zstd.compressBound(chunk.remaining()));
+        int compressedSize = compressInto(contexts, contexts.compressor(Math.max(1, policy.getCurrentLevel())),
+                chunk, target, 0);
+        byte[] result = new byte[compressedSize];
+        target.get(0, result);
+        return result;
+    }
 
     public byte[] decompressChunk(byte[] compressedChunk, long originalSize) {
         if (originalSize < 0) {
             // Si la taille originale n'est pas connue, on la détermine
-            originalSize = Zstd.decompress(compressedChunk, new byte[0]);
+            originalSize = Zstd.decompressedSize(compressedChunk);
         }
 
         if (originalSize == 0) {
@@ -41,39 +109,222 @@ public class ChunkCompressor {
         }
 
         byte[] result = new byte[(int) originalSize];
-        long decompressedSize = Zstd.decompress(result, compressedChunk);
+        CONTEXTS.get().decompressor(null)
+                .decompressByteArray(result, 0, result.length, compressedChunk, 0, compressedChunk.length);
+        return result;
+    }
 
-        if (decompressedSize < 0) {
-            throw new RuntimeException("Échec de la décompression: " + Zstd.getErrorName(decompressedSize));
-        }
+    public byte[] createCompressedChunkWithMetadata(byte[] chunk) {
+        return createCompressedChunkWithMetadata(ByteBuffer.wrap(chunk));
+    }
+
+    public byte[] createCompressedChunkWithMetadata(ByteBuffer chunk) {
+        return createCompressedChunkWithMetadata(chunk, "");
+    }
 
+    /**
+     * Version tableau de {@link #encode} : le chunk est encodé dans un buffer de travail
+     * du thread, puis copié une seule fois à la taille exacte.
+     */
+    public byte[] createCompressedChunkWithMetadata(ByteBuffer chunk, String fileType) {
+        Contexts contexts = CONTEXTS.get();
+        ByteBuffer target = contexts.targetScratch(chunk.isDirect(), maxEncodedSize(chunk.remaining()));
+        int length = encode(chunk, fileType, target);
+        byte[] result = new byte[length];
+        target.get(0, result);
         return result;
     }
 
-    public byte[] createCompressedChunkWithMetadata(byte[] chunk) {
-            byte[] compressedData = compressChunk(chunk);
-            
-            // Format: [taille originale (8 bytes)][données compressées]
-            ByteBuffer buffer = ByteBuffer.allocate(8 + compressedData.length);
-            buffer.putLong(chunk.length);  // Taille originale
-            buffer.put(compressedData);    // Données compressées
-            
-            return buffer.array();
+    /**
+     * Encode un chunk avec le codec choisi par la politique, en écrivant l'en-tête et la trame
+     * directement dans {@code target} (tas ou direct) à partir de sa position, qui est avancée.
+     * Un petit chunk est compressé avec le dictionnaire de son type de fichier quand il existe
+     * (et sert sinon d'échantillon). Un chunk que Zstd n'arrive pas à réduire est stocké brut :
+     * l'en-tête indique toujours comment le relire.
+     *
+     * @param target au moins {@link #maxEncodedSize} octets disponibles
+     * @return le nombre d'octets écrits
+     */
+    public int encode(ByteBuffer chunk, String fileType, ByteBuffer target) {
+        int length = chunk.remaining();
+        if (target.remaining() < maxEncodedSize(length)) {
+            throw new IllegalArgumentException("Buffer cible trop petit: " + target.remaining()
+                    + " octets pour un chunk de " + length);
+        }
+
+        CompressionPolicy.Decision decision = policy.choose(chunk);
+        Codec codec = decision.codec();
+        CompressionDictionaries.Dictionary dictionary = null;
+        if (codec != Codec.RAW && dictionaries != null
+                && length <= CompressionDictionaries.MAX_DICTIONARY_CHUNK_SIZE) {
+            dictionary = dictionaries.forFileType(fileType);
+            if (dictionary == null) {
+                dictionaries.sample(fileType, chunk);
+            } else {
+                codec = Codec.ZSTD_DICT;
+            }
+        }
+
+        int start = target.position();
+        int payloadLength = 0;
+        if (codec != Codec.RAW) {
+            Contexts contexts = CONTEXTS.get();
+            ZstdCompressCtx context = codec == Codec.ZSTD_DICT
+                    ? contexts.compressor(dictionary.forCompression(decision.level()))
+                    : contexts.compressor(decision.level());
+            long startTime = System.nanoTime();
+            payloadLength = compressInto(contexts, context, chunk, target, start + headerSize(codec));
+            policy.record(length, System.nanoTime() - startTime);
+            if (payloadLength >= length) {
+                codec = Codec.RAW;
+            }
+        }
+        if (codec == Codec.RAW) {
+            target.put(start + HEADER_SIZE, chunk, chunk.position(), length);
+            payloadLength = length;
         }
 
+        target.putLong(start, length);  // Taille originale
+        target.put(start + Long.BYTES, codec.id());
+        if (codec == Codec.ZSTD_DICT) {
+            target.putInt(start + HEADER_SIZE, dictionary.id());
+        }
+        target.position(start + headerSize(codec) + payloadLength);
+        return headerSize(codec) + payloadLength;
+    }
+
+    /**
+     * Compresse {@code source} dans {@code target} à partir de {@code offset} sans déplacer
+     * les positions. Les deux buffers doivent être de même nature (tas ou direct) pour Zstd :
+     * sinon seule la source est recopiée dans un buffer de travail.
+     */
+    private static int compressInto(Contexts contexts, ZstdCompressCtx context, ByteBuffer source,
+                                    ByteBuffer target, int offset) {
+        int available = target.limit() - offset;
+        if (target.isDirect()) {
+            ByteBuffer directSource = source.isDirect() ? source : contexts.directSource(source);
+            return context.compressDirectByteBuffer(target, offset, available,
+                    directSource, directSource.position(), directSource.remaining());
+        }
+        if (source.hasArray()) {
+            return context.compressByteArray(target.array(), target.arrayOffset() + offset, available,
+                    source.array(), source.arrayOffset() + source.position(), source.remaining());
+        }
+        byte[] heapSource = contexts.heapSource(source);
+        return context.compressByteArray(target.array(), target.arrayOffset() + offset, available,
+                heapSource, 0, source.remaining());
+    }
+
     public byte[] decompressChunkWithMetadata(byte[] data) {
-            ByteBuffer buffer = ByteBuffer.wrap(data);
-            
-            // Lecture de la taille originale
-            long originalSize = buffer.getLong();
-            
-            // Extraction des données compressées
-            byte[] compressedData = new byte[data.length - 8];
-            buffer.get(compressedData);
-            
-            return decompressChunk(compressedData, originalSize);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        // Lecture de la taille originale et du codec
+        long originalSize = buffer.getLong();
+        Codec codec = Codec.fromId(buffer.get());
+
+        if (codec == Codec.RAW) {
+            return Arrays.copyOfRange(data, HEADER_SIZE, data.length);
         }
 
+        ZstdDictDecompress dictionary = codec == Codec.ZSTD_DICT
+                ? requireDictionaries().byId(buffer.getInt()).forDecompression()
+                : null;
+
+        // Décompression directement depuis le tableau stocké, sans extraire les données
+        byte[] result = new byte[(int) originalSize];
+        int decompressedSize = CONTEXTS.get().decompressor(dictionary)
+                .decompressByteArray(result, 0, result.length, data, buffer.position(), buffer.remaining());
+        if (decompressedSize != originalSize) {
+            throw new RuntimeException("Échec de la décompression: " + decompressedSize
+                    + " octets au lieu de " + originalSize);
+        }
+        return result;
+    }
 
-    
+    private CompressionDictionaries requireDictionaries() {
+        if (dictionaries == null) {
+            throw new IllegalStateException("Chunk compressé avec un dictionnaire, mais aucun dictionnaire n'est chargé");
+        }
+        return dictionaries;
+    }
+
+    /**
+     * Contextes d'un thread. Ils ne sont reconfigurés que lorsque le niveau ou le dictionnaire
+     * change d'un chunk à l'autre ; les buffers de travail ne font que grandir.
+     */
+    private static final class Contexts {
+        private final ZstdCompressCtx compress = new ZstdCompressCtx();
+        private final ZstdDecompressCtx decompress = new ZstdDecompressCtx();
+        private int compressLevel = Integer.MIN_VALUE;
+        private ZstdDictCompress compressDictionary;
+        private ZstdDictDecompress decompressDictionary;
+
+        private ByteBuffer directSource;
+        private byte[] heapSource = new byte[0];
+        private ByteBuffer directTarget;
+        private ByteBuffer heapTarget;
+
+        ZstdCompressCtx compressor(int level) {
+            if (compressDictionary != null || compressLevel != level) {
+                compress.reset();
+                compress.setLevel(level);
+                compressDictionary = null;
+                compressLevel = level;
+            }
+            return compress;
+        }
+
+        ZstdCompressCtx compressor(ZstdDictCompress dictionary) {
+            if (compressDictionary != dictionary) {
+                // Le niveau est celui du dictionnaire pré-digéré
+                compress.reset();
+                compress.loadDict(dictionary);
+                compressDictionary = dictionary;
+                compressLevel = Integer.MIN_VALUE;
+            }
+            return compress;
+        }
+
+        ZstdDecompressCtx decompressor(ZstdDictDecompress dictionary) {
+            if (decompressDictionary != dictionary) {
+                decompress.reset();
+                if (dictionary != null) {
+                    decompress.loadDict(dictionary);
+                }
+                decompressDictionary = dictionary;
+            }
+            return decompress;
+        }
+
+        ByteBuffer directSource(ByteBuffer source) {
+            if (directSource == null || directSource.capacity() < source.remaining()) {
+                directSource = ByteBuffer.allocateDirect(source.remaining());
+            }
+            directSource.clear();
+            directSource.put(source.duplicate()).flip();
+            return directSource;
+        }
+
+        byte[] heapSource(ByteBuffer source) {
+            if (heapSource.length < source.remaining()) {
+                heapSource = new byte[source.remaining()];
+            }
+            source.get(source.position(), heapSource, 0, source.remaining());
+            return heapSource;
+        }
+
+        ByteBuffer targetScratch(boolean direct, int size) {
+            ByteBuffer scratch = direct ? directTarget : heapTarget;
+            if (scratch == null || scratch.capacity() < size) {
+                scratch = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+                if (direct) {
+                    directTarget = scratch;
+                } else {
+                    heapTarget = scratch;
+                }
+            }
+            scratch.clear();
+            return scratch;
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Calcul de l'empreinte d'un chunk. Les implémentations gardent leur état de calcul
+ * par thread et peuvent donc être partagées entre les threads d'ingestion.
+ * L'algorithme utilisé est enregistré dans le dépôt : on ne mélange jamais deux
+ * algorithmes dans une même table {@code chunks}.
+ */
+public interface ChunkHasher {
+
+    /** Nom enregistré dans le dépôt. */
+    String name();
+
+    /**
+     * Une empreinte non cryptographique peut entrer en collision : une correspondance
+     * trouvée avec elle doit être confirmée par SHA-256 si la vérification est activée.
+     */
+    boolean isCryptographic();
+
+    /** Empreinte du contenu restant du buffer, sans modifier sa position. */
+    ChunkId hash(ByteBuffer chunk);
+
+    default ChunkId hash(byte[] chunk) {
+        return hash(ByteBuffer.wrap(chunk));
+    }
+
+    static ChunkHasher forName(String name) {
+        return switch (name) {
+            case Sha256ChunkHasher.NAME -> Sha256ChunkHasher.INSTANCE;
+            case Blake3ChunkHasher.NAME -> Blake3ChunkHasher.INSTANCE;
+            case Murmur3ChunkHasher.NAME -> Murmur3ChunkHasher.INSTANCE;
+            default -> throw new IllegalArgumentException("Algorithme d'empreinte inconnu: " + name);
+        };
+    }
+}
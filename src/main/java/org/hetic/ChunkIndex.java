@@ -0,0 +1,97 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkRecord;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Index des chunks stockés, par empreinte : c'est lui qu'interroge chaque recherche de doublon.
+ * <ul>
+ *   <li>{@link PostgresChunkIndex} : la table {@code chunks}, partagée entre plusieurs processus
+ *   et gérée par le {@link GarbageCollector} ;</li>
+ *   <li>{@link EmbeddedChunkIndex} : un journal à ajout seul à côté des packs et une table
+ *   projetée en mémoire, sans aller-retour réseau, pour une ingestion sur une seule machine.</li>
+ * </ul>
+ * Les implémentations peuvent être appelées depuis plusieurs threads.
+ */
+public interface ChunkIndex extends AutoCloseable {
+
+    /**
+     * Choisit aussi le {@link RecipeStore} : {@code EMBEDDED} donne un dépôt entièrement local,
+     * sans base de données.
+     */
+    enum Backend {
+        POSTGRES, EMBEDDED;
+
+        public static Backend fromName(String name) {
+            return valueOf(name.toUpperCase());
+        }
+    }
+
+    /**
+     * @return les entrées des chunks connus parmi {@code hashes} ; l'empreinte de vérification
+     * peut y être omise, elle se lit avec {@link #verifyDigests}
+     */
+    Map<ChunkId, ChunkRecord> lookup(Collection<ChunkId> hashes);
+
+    /**
+     * @return les empreintes de vérification des chunks connus parmi {@code hashes}, sans ceux
+     * qui ont été indexés sans empreinte
+     */
+    default Map<ChunkId, byte[]> verifyDigests(Collection<ChunkId> hashes) {
+        Map<ChunkId, byte[]> digests = new HashMap<>();
+        for (ChunkRecord record : lookup(hashes).values()) {
+            if (record.verifyDigest() != null) {
+                digests.put(record.hash(), record.verifyDigest());
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * Appelé sur les doublons d'un lot avant d'en écrire les références : les chunks encore
+     * indexés sont protégés du ramasse-miettes pour au moins son délai de grâce.
+     *
+     * @return ceux des {@code hashes} toujours indexés ; les autres sont à écrire de nouveau
+     */
+    default Set<ChunkId> retain(Collection<ChunkId> hashes) {
+        return new HashSet<>(hashes);
+    }
+
+    /**
+     * Ajoute les chunks absents de l'index ; un chunk déjà indexé (par un autre thread ou un
+     * autre processus) garde son emplacement existant.
+     *
+     * @return les empreintes réellement ajoutées
+     */
+    Set<ChunkId> insertIfAbsent(List<ChunkRecord> records);
+
+    long size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Parcourt toutes les entrées, sans ordre garanti ; l'empreinte de vérification peut y être omise.
+     */
+    void forEach(Consumer<ChunkRecord> action);
+
+    /**
+     * @return true si l'index répond depuis la mémoire de ce processus, sans aller-retour :
+     * inutile alors de le doubler d'un cache de présence
+     */
+    default boolean isLocal() {
+        return false;
+    }
+
+    @Override
+    void close();
+}
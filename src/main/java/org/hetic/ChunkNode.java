@@ -0,0 +1,399 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkRecord;
+import org.hetic.models.PackLocation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Nœud propriétaire d'une partition des chunks en mode distribué : ses propres packs et son
+ * {@link EmbeddedChunkIndex} dans {@code storage/}, servis en TCP aux workers ({@link ClusterClient}).
+ * Chaque connexion est traitée par un thread virtuel ; les requêtes portent sur des lots de chunks.
+ * <p>
+ * Un chunk absent est réservé ({@link ChunkClaims}) pour le worker qui l'a demandé le premier :
+ * lui seul le compresse et l'envoie, les autres attendent qu'il soit indexé. Les réservations
+ * d'une connexion coupée sont abandonnées, et un worker qui les attendait reprend l'écriture.
+ * Le nœud garde aussi les listes de chunks des fichiers dont le nom lui revient
+ * ({@code manifests/}).
+ */
+public class ChunkNode implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7401;
+    public static final String STORAGE_DIRECTORY_NAME = "storage";
+    public static final String MANIFEST_DIRECTORY_NAME = "manifests";
+    private static final String HASHER_FILE_NAME = "hasher";
+
+    // Requêtes
+    static final byte HELLO = 1;
+    static final byte LOOKUP = 2;
+    static final byte STORE = 3;
+    static final byte AWAIT = 4;
+    static final byte READ = 5;
+    static final byte PUT_MANIFEST = 6;
+    static final byte GET_MANIFEST = 7;
+
+    // Réponses
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // État d'un chunk retourné par LOOKUP et AWAIT
+    static final byte PRESENT = 0;
+    static final byte CLAIMED = 1;
+    static final byte PENDING = 2;
+
+    private final Path directory;
+    private final PackFileStore packStore;
+    private final EmbeddedChunkIndex index;
+    private final ChunkClaims claims = new ChunkClaims();
+    private final ServerSocket server;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> openSockets = Collections.synchronizedSet(new HashSet<>());
+    private final Thread acceptor;
+
+    /**
+     * @param bindAddress adresse d'écoute ; port 0 pour un port libre choisi par le système
+     */
+    public ChunkNode(Path directory, InetSocketAddress bindAddress) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.resolve(MANIFEST_DIRECTORY_NAME));
+        Path storage = directory.resolve(STORAGE_DIRECTORY_NAME);
+        this.packStore = new PackFileStore(storage);
+        this.index = new EmbeddedChunkIndex(storage);
+        this.server = new ServerSocket();
+        try {
+            server.bind(bindAddress);
+        } catch (IOException e) {
+            server.close();
+            packStore.close();
+            index.close();
+            throw e;
+        }
+        this.acceptor = Thread.ofPlatform().name("chunk-node-" + server.getLocalPort()).daemon().start(this::acceptLoop);
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long chunkCount() {
+        return index.size();
+    }
+
+    public boolean hasChunk(ChunkId hash) {
+        return !index.lookup(List.of(hash)).isEmpty();
+    }
+
+    /**
+     * Arrête d'accepter des connexions, coupe celles en cours puis ferme les packs et l'index.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        synchronized (openSockets) {
+            for (Socket socket : openSockets) {
+                socket.close();
+            }
+        }
+        connections.close();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        packStore.close();
+        index.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                openSockets.add(socket);
+                connections.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("Erreur d'acceptation sur le nœud " + getAddress() + " : " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        // Chunks réservés par ce worker et pas encore reçus
+        Set<ChunkId> owned = new HashSet<>();
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte request;
+                try {
+                    request = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    switch (request) {
+                        case HELLO -> hello(in, out);
+                        case LOOKUP -> lookup(readHashes(in), owned, out);
+                        case STORE -> store(in, owned, out);
+                        case AWAIT -> await(readHashes(in), owned, out);
+                        case READ -> read(readHashes(in), out);
+                        case PUT_MANIFEST -> putManifest(in, out);
+                        case GET_MANIFEST -> getManifest(in, out);
+                        default -> throw new IOException("Requête inconnue: " + request);
+                    }
+                } catch (RuntimeException e) {
+                    // La requête a été lue en entier : la connexion reste utilisable
+                    out.writeByte(ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // Connexion coupée par le worker ou par la fermeture du nœud
+        } catch (IOException e) {
+            System.err.println("Erreur sur une connexion du nœud " + getAddress() + " : " + e.getMessage());
+        } finally {
+            openSockets.remove(socket);
+            IOException cause = new IOException("Connexion du worker fermée avant l'envoi du chunk");
+            for (ChunkId hash : owned) {
+                claims.abandon(hash, cause);
+            }
+        }
+    }
+
+    /**
+     * Le premier worker fixe l'algorithme d'empreinte du nœud ; un worker qui en utilise un autre
+     * est refusé, deux algorithmes ne se mélangent jamais dans un même index.
+     */
+    private synchronized void hello(DataInputStream in, DataOutputStream out) throws IOException {
+        String hasher = in.readUTF();
+        Path hasherFile = directory.resolve(HASHER_FILE_NAME);
+        if (!Files.exists(hasherFile)) {
+            Files.writeString(hasherFile, hasher);
+        }
+        String registered = Files.readString(hasherFile).trim();
+        if (!registered.equals(hasher)) {
+            throw new IllegalStateException("Le nœud utilise l'empreinte " + registered + ", pas " + hasher);
+        }
+        out.writeByte(OK);
+    }
+
+    private void lookup(List<ChunkId> hashes, Set<ChunkId> owned, DataOutputStream out) throws IOException {
+        Map<ChunkId, ChunkRecord> found = index.lookup(hashes);
+        byte[] states = new byte[hashes.size()];
+        for (int i = 0; i < hashes.size(); i++) {
+            ChunkId hash = hashes.get(i);
+            states[i] = found.containsKey(hash) ? PRESENT : claim(hash, owned);
+        }
+        out.writeByte(OK);
+        out.writeInt(states.length);
+        out.write(states);
+    }
+
+    private byte claim(ChunkId hash, Set<ChunkId> owned) {
+        if (owned.contains(hash)) {
+            return CLAIMED;
+        }
+        if (!claims.tryClaim(hash)) {
+            return PENDING;
+        }
+        // Indexé entre la recherche et la réservation : rien à écrire
+        if (hasChunk(hash)) {
+            claims.release(hash);
+            return PRESENT;
+        }
+        owned.add(hash);
+        return CLAIMED;
+    }
+
+    /**
+     * Chunks encodés envoyés par le worker qui les a réservés : ajoutés aux packs, forcés sur
+     * disque puis indexés avant la réponse, comme {@link SQLChunkStorageSystem#storeNewChunks}.
+     * En cas d'erreur, les réservations du lot sont abandonnées avant la réponse : les workers
+     * qui attendent ces chunks reprennent l'écriture sans attendre la fin de cette connexion.
+     */
+    private void store(DataInputStream in, Set<ChunkId> owned, DataOutputStream out) throws IOException {
+        int count = in.readInt();
+        List<ChunkId> hashes = new ArrayList<>(count);
+        List<Integer> originalSizes = new ArrayList<>(count);
+        List<byte[]> encoded = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hashes.add(readHash(in));
+            originalSizes.add(in.readInt());
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            encoded.add(data);
+        }
+
+        Set<ChunkId> inserted;
+        try {
+            Map<ChunkId, ChunkRecord> existing = index.lookup(hashes);
+            List<ChunkRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                // Un envoi rejoué après une coupure ne réécrit pas un chunk déjà indexé
+                if (!existing.containsKey(hashes.get(i))) {
+                    PackLocation location = packStore.append(hashes.get(i), ByteBuffer.wrap(encoded.get(i)));
+                    records.add(new ChunkRecord(hashes.get(i), location, originalSizes.get(i), null));
+                }
+            }
+            packStore.awaitDurable();
+            inserted = index.insertIfAbsent(records);
+        } catch (IOException | RuntimeException e) {
+            for (ChunkId hash : hashes) {
+                if (owned.remove(hash)) {
+                    claims.abandon(hash, e);
+                }
+            }
+            throw new IllegalStateException("Erreur lors de l'écriture des chunks : " + e.getMessage(), e);
+        }
+        for (ChunkId hash : hashes) {
+            if (owned.remove(hash)) {
+                claims.release(hash);
+            }
+        }
+        out.writeByte(OK);
+        out.writeInt(inserted.size());
+    }
+
+    /**
+     * Attend les chunks réservés par d'autres workers puis répond comme {@link #lookup} : un chunk
+     * dont l'écriture a été abandonnée peut être réservé par ce worker.
+     */
+    private void await(List<ChunkId> hashes, Set<ChunkId> owned, DataOutputStream out) throws IOException {
+        for (ChunkId hash : hashes) {
+            try {
+                claims.await(hash);
+            } catch (IllegalStateException e) {
+                // Abandonné par son worker : la recherche ci-dessous le proposera à celui-ci
+            }
+        }
+        lookup(hashes, owned, out);
+    }
+
+    private void read(List<ChunkId> hashes, DataOutputStream out) throws IOException {
+        Map<ChunkId, ChunkRecord> found = index.lookup(hashes);
+        List<byte[]> chunks = new ArrayList<>(hashes.size());
+        for (ChunkId hash : hashes) {
+            ChunkRecord record = found.get(hash);
+            chunks.add(record == null ? null : packStore.read(record.location()));
+        }
+        out.writeByte(OK);
+        out.writeInt(chunks.size());
+        for (byte[] chunk : chunks) {
+            if (chunk == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(chunk.length);
+                out.write(chunk);
+            }
+        }
+    }
+
+    /**
+     * Manifeste : [nom][taille du fichier][nombre de chunks][empreintes], écrit dans un fichier
+     * temporaire forcé sur disque puis renommé : un manifeste lu est toujours complet.
+     */
+    private void putManifest(DataInputStream in, DataOutputStream out) throws IOException {
+        String filename = in.readUTF();
+        long fileSize = in.readLong();
+        List<ChunkId> hashes = readHashes(in);
+
+        ByteBuffer manifest = ByteBuffer.allocate(Integer.BYTES + filename.getBytes(StandardCharsets.UTF_8).length
+                + Long.BYTES + Integer.BYTES + hashes.size() * ChunkId.BYTES);
+        byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+        manifest.putInt(name.length).put(name).putLong(fileSize).putInt(hashes.size());
+        for (ChunkId hash : hashes) {
+            hash.writeTo(manifest);
+        }
+        manifest.flip();
+
+        Path target = manifestPath(filename);
+        // Fichier temporaire propre à la requête : un envoi rejoué depuis une nouvelle connexion
+        // peut croiser celui de l'ancienne, chacun renomme alors un manifeste complet
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (manifest.hasRemaining()) {
+                    channel.write(manifest);
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        out.writeByte(OK);
+    }
+
+    private void getManifest(DataInputStream in, DataOutputStream out) throws IOException {
+        String filename = in.readUTF();
+        Path path = manifestPath(filename);
+        if (!Files.exists(path)) {
+            out.writeByte(OK);
+            out.writeLong(-1);
+            return;
+        }
+        ByteBuffer manifest = ByteBuffer.wrap(Files.readAllBytes(path));
+        manifest.position(Integer.BYTES + manifest.getInt(0));
+        long fileSize = manifest.getLong();
+        int count = manifest.getInt();
+        out.writeByte(OK);
+        out.writeLong(fileSize);
+        out.writeInt(count);
+        out.write(manifest.array(), manifest.position(), count * ChunkId.BYTES);
+    }
+
+    private Path manifestPath(String filename) {
+        // Nom de fichier quelconque (chemins, caractères spéciaux) : on nomme le manifeste par son empreinte
+        ChunkId key = Sha256ChunkHasher.INSTANCE.hash(filename.getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(MANIFEST_DIRECTORY_NAME).resolve(key.toHex() + ".manifest");
+    }
+
+    static List<ChunkId> readHashes(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<ChunkId> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hashes.add(readHash(in));
+        }
+        return hashes;
+    }
+
+    static ChunkId readHash(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[ChunkId.BYTES];
+        in.readFully(bytes);
+        return ChunkId.fromBytes(bytes);
+    }
+
+    static void writeHashes(DataOutputStream out, Collection<ChunkId> hashes) throws IOException {
+        out.writeInt(hashes.size());
+        for (ChunkId hash : hashes) {
+            out.write(hash.toBytes());
+        }
+    }
+}
@@ -1,17 +1,21 @@
 package org.hetic;
 
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import org.hetic.models.ChunkId;
+
+import java.nio.ByteBuffer;
 
 public class ChunkStorageUtils {
-    public static String hashChunk(byte[] chunk) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(chunk);
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hash) {
-            hexString.append(String.format("%02x", b));
-        }
-        return hexString.toString();
+    public static ChunkId hashChunk(byte[] chunk) {
+        return hashChunk(ByteBuffer.wrap(chunk));
+    }
+
+    /**
+     * Empreinte SHA-256 lue directement depuis le buffer (tas, direct ou projection mémoire),
+     * sans modifier sa position. Le stockage utilise l'algorithme de son dépôt,
+     * voir {@link SQLChunkStorageSystem#hashChunk(ByteBuffer)}.
+     */
+    public static ChunkId hashChunk(ByteBuffer chunk) {
+        return Sha256ChunkHasher.INSTANCE.hash(chunk);
     }
 }
@@ -0,0 +1,200 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkMetadata;
+import org.hetic.models.PackLocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lecture d'un fichier du dépôt à n'importe quelle position, sans le reconstruire sur disque.
+ * <p>
+ * À l'ouverture, un index des positions cumulées des chunks est construit depuis
+ * {@code file_chunks} ; chaque lecture cherche par dichotomie le chunk qui contient la position
+ * courante et ne lit et ne décode que les chunks couverts. Le dernier chunk décodé est conservé,
+ * si bien que des lectures séquentielles en petits morceaux ne le décodent qu'une fois ; les
+ * autres passent par le {@link ChunkCache} éventuellement partagé avec d'autres lectures.
+ * Le canal est en lecture seule et, comme un {@code FileChannel} partagé, ne doit pas être
+ * utilisé par plusieurs threads à la fois.
+ */
+public class ChunkedFileChannel implements SeekableByteChannel {
+    private final SQLChunkStorageSystem storageSystem;
+    private final ChunkCache chunkCache;
+    private final String filename;
+    // offsets[i] : position du chunk i dans le fichier ; offsets[n] : taille du fichier
+    private final long[] offsets;
+    private final ChunkId[] ids;
+    private final PackLocation[] locations;
+
+    private long position;
+    private int decodedIndex = -1;
+    private byte[] decoded;
+    private boolean open = true;
+
+    private ChunkedFileChannel(SQLChunkStorageSystem storageSystem, ChunkCache chunkCache, String filename,
+                               long[] offsets, ChunkId[] ids, PackLocation[] locations) {
+        this.storageSystem = storageSystem;
+        this.chunkCache = chunkCache;
+        this.filename = filename;
+        this.offsets = offsets;
+        this.ids = ids;
+        this.locations = locations;
+    }
+
+    public static ChunkedFileChannel open(SQLChunkStorageSystem storageSystem, String filename) {
+        return open(storageSystem, filename, null);
+    }
+
+    /**
+     * @param chunkCache cache des chunks décodés, ou null pour toujours lire les packs
+     * @throws IllegalArgumentException si le fichier n'existe pas dans le dépôt
+     */
+    public static ChunkedFileChannel open(SQLChunkStorageSystem storageSystem, String filename,
+                                          ChunkCache chunkCache) {
+        List<ChunkMetadata> chunks = storageSystem.getFileChunks(filename);
+        if (chunks.isEmpty()) {
+            throw new IllegalArgumentException("Fichier non trouvé: " + filename);
+        }
+        long[] offsets = new long[chunks.size() + 1];
+        ChunkId[] ids = new ChunkId[chunks.size()];
+        PackLocation[] locations = new PackLocation[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            offsets[i + 1] = offsets[i] + chunks.get(i).getSize();
+            ids[i] = chunks.get(i).getId();
+            locations[i] = chunks.get(i).getPackLocation();
+        }
+        return new ChunkedFileChannel(storageSystem, chunkCache, filename, offsets, ids, locations);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int chunkCount() {
+        return locations.length;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        long size = size();
+        if (position >= size) {
+            return -1;
+        }
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            int index = chunkIndex(position);
+            byte[] chunk = decode(index);
+            int from = (int) (position - offsets[index]);
+            int count = Math.min(dst.remaining(), chunk.length - from);
+            dst.put(chunk, from, count);
+            position += count;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Lit exactement {@code length} octets à partir de {@code offset} (moins en fin de fichier),
+     * sans modifier la position courante.
+     */
+    public byte[] read(long offset, int length) throws IOException {
+        ensureOpen();
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Plage invalide: " + offset + "+" + length);
+        }
+        long saved = position;
+        try {
+            position = offset;
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, size() - offset)));
+            while (buffer.hasRemaining() && read(buffer) > 0) {
+                // Lecture jusqu'à remplir la plage
+            }
+            return buffer.array();
+        } finally {
+            position = saved;
+        }
+    }
+
+    /**
+     * Numéro du chunk qui contient {@code filePosition}.
+     */
+    int chunkIndex(long filePosition) {
+        int found = Arrays.binarySearch(offsets, 0, locations.length, filePosition);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private byte[] decode(int index) throws IOException {
+        if (index != decodedIndex) {
+            byte[] data = chunkCache != null ? chunkCache.get(ids[index]) : null;
+            if (data == null) {
+                data = storageSystem.readChunkFromStorage(locations[index]);
+                long expected = offsets[index + 1] - offsets[index];
+                if (data.length != expected) {
+                    throw new IOException("Taille inattendue pour le chunk " + index + " de " + filename
+                            + ": " + data.length + " au lieu de " + expected);
+                }
+                if (chunkCache != null) {
+                    chunkCache.put(ids[index], data);
+                }
+            }
+            decoded = data;
+            decodedIndex = index;
+        }
+        return decoded;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position négative: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return offsets[locations.length];
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        decoded = null;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
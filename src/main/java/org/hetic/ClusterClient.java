@@ -0,0 +1,274 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Connexions d'un worker à tous les nœuds du cluster ({@link ChunkNode}), avec le routage des
+ * empreintes vers leur propriétaire. Les requêtes sont groupées par nœud : un aller-retour par
+ * nœud et par lot de chunks.
+ * <p>
+ * Un client n'est pas partagé entre threads : une attente ({@code AWAIT}) bloque sa connexion,
+ * et chaque thread d'ingestion doit pouvoir envoyer les chunks qu'il a réservés pendant que
+ * d'autres attendent.
+ */
+public class ClusterClient implements AutoCloseable {
+
+    /**
+     * Résultat d'une recherche groupée.
+     *
+     * @param claimed chunks absents réservés pour ce client : à compresser et envoyer avec {@link #store}
+     * @param pending chunks en cours d'écriture par un autre worker : à attendre avec {@link #await}
+     */
+    public record LookupResult(Set<ChunkId> claimed, Set<ChunkId> pending) {}
+
+    /**
+     * Chunk encodé à envoyer à son propriétaire.
+     */
+    public record EncodedChunk(ChunkId hash, int originalSize, byte[] encoded) {}
+
+    private final List<InetSocketAddress> nodes;
+    private final Connection[] connections;
+
+    /**
+     * @param nodes adresses des nœuds, dans le même ordre pour tous les workers du cluster
+     */
+    public ClusterClient(List<InetSocketAddress> nodes, ChunkHasher hasher) throws IOException {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("Aucun nœud dans le cluster");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.connections = new Connection[nodes.size()];
+        try {
+            for (int i = 0; i < nodes.size(); i++) {
+                connections[i] = new Connection(nodes.get(i));
+                connections[i].send(ChunkNode.HELLO, out -> out.writeUTF(hasher.name()));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Partition par préfixe : les 32 premiers bits de l'empreinte, uniformes, sont découpés en
+     * {@code nodeCount} plages contiguës.
+     */
+    public static int ownerOf(ChunkId hash, int nodeCount) {
+        return (int) (((hash.word(0) >>> 32) * nodeCount) >>> 32);
+    }
+
+    /**
+     * Nœud qui garde la liste de chunks d'un fichier.
+     */
+    public static int manifestOwnerOf(String filename, int nodeCount) {
+        return ownerOf(Sha256ChunkHasher.INSTANCE.hash(filename.getBytes(StandardCharsets.UTF_8)), nodeCount);
+    }
+
+    public LookupResult lookup(Collection<ChunkId> hashes) throws IOException {
+        return classify(ChunkNode.LOOKUP, hashes);
+    }
+
+    /**
+     * Attend les chunks réservés par d'autres workers. Un chunk abandonné en route (worker
+     * arrêté) revient dans {@code claimed} : c'est alors à ce client de l'envoyer.
+     */
+    public LookupResult await(Collection<ChunkId> hashes) throws IOException {
+        return classify(ChunkNode.AWAIT, hashes);
+    }
+
+    /**
+     * Envoie des chunks réservés, groupés par propriétaire ; au retour ils sont durables et indexés.
+     *
+     * @return le nombre de chunks réellement ajoutés
+     */
+    public int store(List<EncodedChunk> chunks) throws IOException {
+        Map<Integer, List<EncodedChunk>> byOwner = new TreeMap<>();
+        for (EncodedChunk chunk : chunks) {
+            byOwner.computeIfAbsent(ownerOf(chunk.hash(), nodes.size()), owner -> new ArrayList<>()).add(chunk);
+        }
+        int inserted = 0;
+        for (Map.Entry<Integer, List<EncodedChunk>> entry : byOwner.entrySet()) {
+            List<EncodedChunk> batch = entry.getValue();
+            DataInputStream in = connections[entry.getKey()].send(ChunkNode.STORE, out -> {
+                out.writeInt(batch.size());
+                for (EncodedChunk chunk : batch) {
+                    out.write(chunk.hash().toBytes());
+                    out.writeInt(chunk.originalSize());
+                    out.writeInt(chunk.encoded().length);
+                    out.write(chunk.encoded());
+                }
+            });
+            inserted += in.readInt();
+        }
+        return inserted;
+    }
+
+    /**
+     * @return les chunks encodés trouvés, par empreinte
+     */
+    public Map<ChunkId, byte[]> read(Collection<ChunkId> hashes) throws IOException {
+        Map<ChunkId, byte[]> chunks = new HashMap<>();
+        for (Map.Entry<Integer, List<ChunkId>> entry : groupByOwner(hashes).entrySet()) {
+            List<ChunkId> batch = entry.getValue();
+            DataInputStream in = connections[entry.getKey()].send(ChunkNode.READ,
+                    out -> ChunkNode.writeHashes(out, batch));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length >= 0) {
+                    byte[] chunk = new byte[length];
+                    in.readFully(chunk);
+                    chunks.put(batch.get(i), chunk);
+                }
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Enregistre la liste des chunks d'un fichier, une fois tous ses chunks indexés par leurs propriétaires.
+     */
+    public void putManifest(String filename, long fileSize, List<ChunkId> hashes) throws IOException {
+        connections[manifestOwnerOf(filename, nodes.size())].send(ChunkNode.PUT_MANIFEST, out -> {
+            out.writeUTF(filename);
+            out.writeLong(fileSize);
+            ChunkNode.writeHashes(out, hashes);
+        });
+    }
+
+    /**
+     * @return les empreintes des chunks du fichier dans l'ordre, ou null si le fichier est inconnu
+     */
+    public List<ChunkId> getManifest(String filename) throws IOException {
+        DataInputStream in = connections[manifestOwnerOf(filename, nodes.size())].send(ChunkNode.GET_MANIFEST,
+                out -> out.writeUTF(filename));
+        if (in.readLong() < 0) {
+            return null;
+        }
+        return ChunkNode.readHashes(in);
+    }
+
+    /**
+     * Reconstruit un fichier depuis son manifeste : les chunks sont lus par lots auprès de leurs
+     * propriétaires puis décodés dans l'ordre.
+     *
+     * @return false si le fichier est inconnu du cluster
+     */
+    public boolean readFile(String filename, ChunkCompressor compressor, OutputStream target, int batchSize)
+            throws IOException {
+        List<ChunkId> hashes = getManifest(filename);
+        if (hashes == null) {
+            return false;
+        }
+        for (int from = 0; from < hashes.size(); from += batchSize) {
+            List<ChunkId> batch = hashes.subList(from, Math.min(hashes.size(), from + batchSize));
+            Map<ChunkId, byte[]> chunks = read(new LinkedHashSet<>(batch));
+            for (ChunkId hash : batch) {
+                byte[] encoded = chunks.get(hash);
+                if (encoded == null) {
+                    throw new IOException("Chunk introuvable dans le cluster: " + hash);
+                }
+                target.write(compressor.decompressChunkWithMetadata(encoded));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (Connection connection : connections) {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private LookupResult classify(byte request, Collection<ChunkId> hashes) throws IOException {
+        Set<ChunkId> claimed = new LinkedHashSet<>();
+        Set<ChunkId> pending = new LinkedHashSet<>();
+        for (Map.Entry<Integer, List<ChunkId>> entry : groupByOwner(hashes).entrySet()) {
+            List<ChunkId> batch = entry.getValue();
+            DataInputStream in = connections[entry.getKey()].send(request, out -> ChunkNode.writeHashes(out, batch));
+            byte[] states = new byte[in.readInt()];
+            in.readFully(states);
+            for (int i = 0; i < states.length; i++) {
+                switch (states[i]) {
+                    case ChunkNode.CLAIMED -> claimed.add(batch.get(i));
+                    case ChunkNode.PENDING -> pending.add(batch.get(i));
+                    default -> { } // Déjà indexé
+                }
+            }
+        }
+        return new LookupResult(claimed, pending);
+    }
+
+    /**
+     * Empreintes distinctes groupées par propriétaire : une même empreinte n'est jamais
+     * demandée deux fois dans une requête.
+     */
+    private Map<Integer, List<ChunkId>> groupByOwner(Collection<ChunkId> hashes) {
+        Map<Integer, List<ChunkId>> byOwner = new TreeMap<>();
+        for (ChunkId hash : new LinkedHashSet<>(hashes)) {
+            byOwner.computeIfAbsent(ownerOf(hash, nodes.size()), owner -> new ArrayList<>()).add(hash);
+        }
+        return byOwner;
+    }
+
+    @FunctionalInterface
+    private interface RequestWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Connection {
+        private final InetSocketAddress address;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            this.address = address;
+            this.socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Envoie une requête et lit le statut de la réponse.
+         *
+         * @return le flux positionné sur le corps de la réponse
+         */
+        DataInputStream send(byte request, RequestWriter body) throws IOException {
+            out.writeByte(request);
+            body.write(out);
+            out.flush();
+            if (in.readByte() != ChunkNode.OK) {
+                throw new IOException("Nœud " + address + " : " + in.readUTF());
+            }
+            return in;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Erreur lors de la fermeture de la connexion à " + address + " : " + e.getMessage());
+            }
+        }
+    }
+}
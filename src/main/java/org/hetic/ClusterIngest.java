@@ -0,0 +1,201 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.IngestStats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Worker d'ingestion distribuée. Plusieurs workers (processus ou machines) se partagent un
+ * dossier : les fichiers, triés par chemin, sont répartis un sur {@code workerCount} à partir
+ * de {@code workerIndex}. Les chunks appartiennent aux nœuds ({@link ChunkNode}) selon le préfixe
+ * de leur empreinte : chaque nœud a ses packs et sa partition de l'index.
+ * <p>
+ * Un worker découpe et hashe localement, interroge chaque propriétaire une fois par lot,
+ * compresse et envoie seulement les chunks qui lui ont été réservés, puis attend ceux qu'un
+ * autre worker est en train d'écrire. La liste de chunks d'un fichier n'est enregistrée qu'une
+ * fois tous ses chunks indexés. Découpage, empreintes et compression, le gros du coût CPU, se
+ * font sur les workers ; les nœuds ne font que des écritures séquentielles et des accès à leur
+ * table en mémoire : le débit croît avec le nombre de workers et de nœuds.
+ */
+public class ClusterIngest {
+
+    /**
+     * @param workerIndex rang de ce worker, de 0 à {@code workerCount - 1}
+     * @param threads     fichiers traités en parallèle par ce worker, chacun avec ses connexions
+     * @param batchSize   chunks par requête vers les nœuds
+     */
+    public record Config(int workerIndex, int workerCount, int threads, int batchSize) {
+        public Config {
+            if (workerCount < 1 || workerIndex < 0 || workerIndex >= workerCount) {
+                throw new IllegalArgumentException("Worker " + workerIndex + " invalide pour " + workerCount + " workers");
+            }
+            if (threads < 1 || batchSize < 1) {
+                throw new IllegalArgumentException("Il faut au moins un thread et des lots non vides");
+            }
+        }
+
+        public static Config defaults(int workerIndex, int workerCount) {
+            return new Config(workerIndex, workerCount, Runtime.getRuntime().availableProcessors(), 256);
+        }
+    }
+
+    private final List<InetSocketAddress> nodes;
+    private final ChunkHasher hasher;
+    private final ChunkCompressor compressor;
+    private final ContentDefinedChunking chunker;
+    private final Config config;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong newChunks = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public ClusterIngest(List<InetSocketAddress> nodes, ChunkHasher hasher, ChunkCompressor compressor,
+                         ContentDefinedChunking chunker, Config config) {
+        this.nodes = List.copyOf(nodes);
+        this.hasher = hasher;
+        this.compressor = compressor;
+        this.chunker = chunker;
+        this.config = config;
+    }
+
+    /**
+     * Ingère la part de ce worker des fichiers de {@code root}. Un fichier est nommé par son
+     * chemin relatif à {@code root}, identique sur tous les workers.
+     */
+    public IngestStats run(Path root) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        Queue<Path> assigned = new ConcurrentLinkedQueue<>(assignedFiles(root));
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.threads());
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < config.threads(); i++) {
+                workers.add(executor.submit(() -> {
+                    ClusterClient client = new ClusterClient(nodes, hasher);
+                    try {
+                        Path file;
+                        while ((file = assigned.poll()) != null) {
+                            if (!ingestFile(client, root, file)) {
+                                // Nouvelles connexions : les nœuds abandonnent les réservations
+                                // de l'ancienne, que d'autres workers attendent peut-être
+                                client.close();
+                                client = new ClusterClient(nodes, hasher);
+                            }
+                        }
+                    } finally {
+                        client.close();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Worker d'ingestion arrêté", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new IngestStats(files.get(), 0, chunks.get(), newChunks.get(), bytes.get(), failures.get(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Fichiers de ce worker : tous les workers trient la même liste et en prennent un sur {@code workerCount}.
+     */
+    List<Path> assignedFiles(Path root) throws IOException {
+        List<Path> all;
+        try (Stream<Path> paths = Files.walk(root)) {
+            all = paths.filter(Files::isRegularFile).sorted().toList();
+        }
+        List<Path> assigned = new ArrayList<>();
+        for (int i = config.workerIndex(); i < all.size(); i += config.workerCount()) {
+            assigned.add(all.get(i));
+        }
+        return assigned;
+    }
+
+    public static String fileNameOf(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * @return false si le fichier n'a pas pu être ingéré : des chunks réservés par cette
+     * connexion peuvent ne pas avoir été envoyés
+     */
+    private boolean ingestFile(ClusterClient client, Path root, Path file) {
+        String filename = fileNameOf(root, file);
+        try {
+            List<ChunkId> manifest = new ArrayList<>();
+            List<byte[]> batch = new ArrayList<>(config.batchSize());
+            chunker.streamChunks(file.toString(), (chunk, chunkNumber) -> {
+                batch.add(chunk);
+                if (batch.size() >= config.batchSize()) {
+                    storeBatch(client, batch, manifest);
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                storeBatch(client, batch, manifest);
+            }
+            client.putManifest(filename, Files.size(file), manifest);
+            files.incrementAndGet();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            System.err.println("Erreur lors de l'ingestion distribuée de " + filename + " : " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Un lot de chunks consécutifs d'un fichier : une recherche par propriétaire, l'envoi des
+     * chunks réservés, puis l'attente de ceux réservés ailleurs. Un chunk abandonné par un autre
+     * worker pendant l'attente est réservé pour celui-ci et envoyé au tour suivant.
+     */
+    private void storeBatch(ClusterClient client, List<byte[]> batch, List<ChunkId> manifest) throws IOException {
+        Map<ChunkId, byte[]> contents = new LinkedHashMap<>();
+        for (byte[] chunk : batch) {
+            ChunkId hash = hasher.hash(chunk);
+            manifest.add(hash);
+            contents.putIfAbsent(hash, chunk);
+            bytes.addAndGet(chunk.length);
+        }
+        chunks.addAndGet(batch.size());
+
+        ClusterClient.LookupResult result = client.lookup(contents.keySet());
+        while (true) {
+            if (!result.claimed().isEmpty()) {
+                List<ClusterClient.EncodedChunk> encoded = new ArrayList<>(result.claimed().size());
+                for (ChunkId hash : result.claimed()) {
+                    byte[] chunk = contents.get(hash);
+                    encoded.add(new ClusterClient.EncodedChunk(hash, chunk.length,
+                            compressor.createCompressedChunkWithMetadata(ByteBuffer.wrap(chunk))));
+                }
+                newChunks.addAndGet(client.store(encoded));
+            }
+            if (result.pending().isEmpty()) {
+                return;
+            }
+            result = client.await(result.pending());
+        }
+    }
+}
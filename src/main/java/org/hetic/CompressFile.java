@@ -1,12 +1,14 @@
 package org.hetic;
 
 import org.hetic.models.DeduplicationStats;
+import org.hetic.models.IngestStats;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 public class CompressFile {
@@ -14,19 +16,77 @@ public class CompressFile {
 
     public static void main(String[] args) {
         try {
-            // 1. Initialiser le système avec compression
-            CompressedChunkStorageSystem storageSystem = new CompressedChunkStorageSystem();
-            FileReconstructor reconstructor = new FileReconstructor(storageSystem);
+            // 1. Initialiser le système avec compression (-Dchunk.hasher=sha256|blake3|murmur3-128)
+            ChunkHasher hasher = ChunkHasher.forName(System.getProperty("chunk.hasher", Sha256ChunkHasher.NAME));
+            boolean verifyMatches = Boolean.getBoolean("chunk.verify");
+            // Niveau Zstd (-Dcompression.level) et débit visé par thread de compression (-Dcompression.targetMBps)
+            CompressionPolicy policy = new CompressionPolicy(
+                    Integer.getInteger("compression.level", CompressionPolicy.DEFAULT_LEVEL),
+                    Double.parseDouble(System.getProperty("compression.targetMBps", "0")));
+
+            // Mode distribué, sans PostgreSQL : un nœud propriétaire d'une partition des chunks
+            // (node <dossier>, -Dcluster.port) ou un worker d'ingestion
+            // (cluster-ingest [dossier], -Dcluster.nodes=hôte:port,..., -Dcluster.worker, -Dcluster.workers)
+            if (args[0] != null && args[0].equals("node")) {
+                runNode(args.length > 1 && args[1] != null ? args[1] : "node-data");
+                return;
+            } else if (args[0] != null && args[0].equals("cluster-ingest")) {
+                runClusterIngest(hasher, new ChunkCompressor(policy),
+                        args.length > 1 && args[1] != null ? args[1] : "data-files");
+                return;
+            }
+            // Dépôt conservé entre deux exécutions, ingestion incrémentale (-Drepository.persistent=true)
+            boolean persistent = Boolean.getBoolean("repository.persistent");
+            // Dépôt dans PostgreSQL ou embarqué à côté des packs, sans base (-Dchunk.index=postgres|embedded)
+            ChunkIndex.Backend indexBackend = ChunkIndex.Backend.fromName(System.getProperty("chunk.index", "postgres"));
+            CompressedChunkStorageSystem storageSystem = new CompressedChunkStorageSystem(hasher, verifyMatches, policy,
+                    persistent, indexBackend);
+            // Cache des chunks décodés pour les restaurations (-Drestore.cacheMB, -Drestore.cacheOffHeap=true)
+            ChunkCache chunkCache = new ChunkCache(
+                    Long.getLong("restore.cacheMB", ChunkCache.DEFAULT_CAPACITY / (1024 * 1024)) * 1024 * 1024,
+                    Boolean.getBoolean("restore.cacheOffHeap"));
+            int processors = Runtime.getRuntime().availableProcessors();
+            FileReconstructor reconstructor = new FileReconstructor(storageSystem, processors, 4 * processors, chunkCache);
+            // Corpus synthétique reproductible à la place de data-files
+            // (-Dcorpus.profile=versioned-backup|log-append|vm-image, -Dcorpus.seed, -Dcorpus.output pour l'écrire)
+            SyntheticCorpus corpus = syntheticCorpus();
 
             // Tests de performance de compression
             if (args[0] != null && args[0].equals("compare")) {
-                runCompressionBenchmark("data-files");
+                if (corpus != null) {
+                    new CompressionBenchmark().runCorpus(corpus);
+                } else {
+                    runCompressionBenchmark("data-files");
+                }
+            } else if (args[0] != null && args[0].equals("delete")) {
+                // Suppression d'un fichier du dépôt persistant, puis récupération immédiate de ses chunks
+                if (!storageSystem.deleteFile(args[1])) {
+                    System.out.println("Fichier inconnu : " + args[1]);
+                }
+                if (storageSystem.getChunkIndex() instanceof PostgresChunkIndex) {
+                    System.out.println(new GarbageCollector(storageSystem, Duration.ZERO,
+                            GarbageCollector.DEFAULT_COMPACTION_THRESHOLD).collect());
+                }
             } else {
                 // // 2. Traiter les fichiers
                 String folderPath = "data-files";
                 System.out.println("Traitement des fichiers...\n");
                 long startTime = System.currentTimeMillis();
-                processFolder(storageSystem, folderPath);
+                // Ramasse-miettes périodique pendant l'ingestion (-Dgc.intervalSeconds, index PostgreSQL)
+                GarbageCollector collector = null;
+                long gcInterval = Long.getLong("gc.intervalSeconds", 0);
+                if (gcInterval > 0) {
+                    collector = new GarbageCollector(storageSystem);
+                    collector.start(Duration.ofSeconds(gcInterval));
+                }
+                if (corpus != null) {
+                    processCorpus(storageSystem, corpus);
+                } else {
+                    processFolder(storageSystem, folderPath);
+                }
+                if (collector != null) {
+                    collector.close();
+                }
                 long endTime = System.currentTimeMillis();
                 System.out.println("\nTraitement terminé en " + (endTime - startTime) + " ms");
 
@@ -34,6 +94,9 @@ public class CompressFile {
                 storageSystem.printChunkDetails();
                 DeduplicationStats stats = storageSystem.calculateDetailedStats();
                 System.out.println(stats.toString());
+                if (!storageSystem.getChunkIndex().isLocal()) {
+                    System.out.println(storageSystem.getDedupCacheStats());
+                }
                 storageSystem.printCompressionStats();
 
                 // // 5. Reconstruire un fichier spécifique
@@ -44,6 +107,7 @@ public class CompressFile {
                     String fileToReconstruct = args[1];
                     System.out.println("\nReconstruction du fichier : " + fileToReconstruct);
                     reconstructor.reconstructFile(fileToReconstruct);
+                    System.out.println(reconstructor.getChunkCacheStats());
                 }
             }
 
@@ -55,29 +119,70 @@ public class CompressFile {
 
     private static void processFolder(SQLChunkStorageSystem chunkStorageSystem, String folderPath) {
         try {
-            Files.walk(Paths.get(folderPath))
-                .filter(Files::isRegularFile)
-                .forEach(file -> processFile(chunkStorageSystem, file));
-        } catch (IOException e) {
-            System.err.println("Erreur lors du parcours du dossier : " + e.getMessage());
+            IngestPipeline pipeline = new IngestPipeline(chunkStorageSystem, chunker, IngestPipeline.Config.defaults());
+            IngestStats ingestStats = pipeline.run(Paths.get(folderPath));
+            System.out.println(ingestStats);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Traitement du dossier interrompu : " + e.getMessage());
         }
     }
 
-    private static void processFile(SQLChunkStorageSystem chunkStorageSystem, Path filePath) {
-        try {
-            List<byte[]> chunks = chunker.chunkFile(String.valueOf(filePath));
-            String fileName = filePath.getFileName().toString();
-
-            for (int i = 0; i < chunks.size(); i++) {
-                chunkStorageSystem.addChunk(chunks.get(i), fileName, i);
+    private static void runNode(String directory) throws IOException, InterruptedException {
+        ChunkNode node = new ChunkNode(Paths.get(directory),
+                new InetSocketAddress(Integer.getInteger("cluster.port", ChunkNode.DEFAULT_PORT)));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                node.close();
+            } catch (IOException e) {
+                System.err.println("Erreur lors de l'arrêt du nœud : " + e.getMessage());
             }
+        }));
+        System.out.println("Nœud à l'écoute sur " + node.getAddress() + " (" + node.chunkCount() + " chunks)");
+        Thread.currentThread().join();
+    }
+
+    private static void runClusterIngest(ChunkHasher hasher, ChunkCompressor compressor, String folderPath)
+            throws IOException {
+        List<InetSocketAddress> nodes = new ArrayList<>();
+        for (String node : System.getProperty("cluster.nodes", "localhost:" + ChunkNode.DEFAULT_PORT).split(",")) {
+            int separator = node.lastIndexOf(':');
+            nodes.add(new InetSocketAddress(node.substring(0, separator).trim(),
+                    Integer.parseInt(node.substring(separator + 1).trim())));
+        }
+        ClusterIngest ingest = new ClusterIngest(nodes, hasher, compressor, chunker, ClusterIngest.Config.defaults(
+                Integer.getInteger("cluster.worker", 0), Integer.getInteger("cluster.workers", 1)));
+        try {
+            System.out.println(ingest.run(Paths.get(folderPath)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Ingestion distribuée interrompue : " + e.getMessage());
+        }
+    }
 
-            System.out.println("Traitement terminé pour : " + fileName);
+    private static SyntheticCorpus syntheticCorpus() throws IOException {
+        String profile = System.getProperty("corpus.profile");
+        if (profile == null) {
+            return null;
+        }
+        SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.Config.defaults(
+                SyntheticCorpus.Profile.fromName(profile), Long.getLong("corpus.seed", 42)));
+        String output = System.getProperty("corpus.output");
+        if (output != null) {
+            corpus.writeTo(Paths.get(output));
+            System.out.println("Corpus synthétique écrit dans " + output);
+        }
+        return corpus;
+    }
 
-        } catch (IOException e) {
-            System.err.println("Erreur lors du traitement du fichier " + filePath + " : " + e.getMessage());
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    private static void processCorpus(SQLChunkStorageSystem chunkStorageSystem, SyntheticCorpus corpus) {
+        try {
+            IngestPipeline pipeline = new IngestPipeline(chunkStorageSystem, chunker, IngestPipeline.Config.defaults());
+            IngestStats ingestStats = pipeline.run(corpus);
+            System.out.println(ingestStats);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Traitement du corpus interrompu : " + e.getMessage());
         }
     }
 
@@ -1,39 +1,93 @@
 package org.hetic;
 
+import org.hetic.models.PackLocation;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.sql.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class CompressedChunkStorageSystem extends SQLChunkStorageSystem {
+    // Chunks de 64 KB au plus : leur borne de compression tient dans la classe de 128 KB
+    private static final int MAX_POOLED_BUFFER_SIZE = 128 * 1024;
+    private static final int POOLED_BUFFERS_PER_SIZE = 256;
     private final ChunkCompressor compressor;
+    private final BufferPool bufferPool = new BufferPool(MAX_POOLED_BUFFER_SIZE, POOLED_BUFFERS_PER_SIZE);
+    private final CompressionDictionaries dictionaries;
 
     public CompressedChunkStorageSystem() {
-        super();
-        this.compressor = new ChunkCompressor();
+        this(Sha256ChunkHasher.INSTANCE, false);
+    }
+
+    public CompressedChunkStorageSystem(ChunkHasher hasher, boolean verifyMatches) {
+        this(hasher, verifyMatches, new CompressionPolicy());
+    }
+
+    public CompressedChunkStorageSystem(ChunkHasher hasher, boolean verifyMatches, CompressionPolicy policy) {
+        this(hasher, verifyMatches, policy, false);
+    }
+
+    public CompressedChunkStorageSystem(ChunkHasher hasher, boolean verifyMatches, CompressionPolicy policy,
+                                        boolean persistent) {
+        this(DEFAULT_JDBC_URL, DEFAULT_USERNAME, DEFAULT_PASSWORD, hasher, verifyMatches, policy, persistent);
+    }
+
+    public CompressedChunkStorageSystem(String jdbcUrl, String username, String password,
+                                        ChunkHasher hasher, boolean verifyMatches, CompressionPolicy policy) {
+        this(jdbcUrl, username, password, hasher, verifyMatches, policy, false);
+    }
+
+    public CompressedChunkStorageSystem(String jdbcUrl, String username, String password,
+                                        ChunkHasher hasher, boolean verifyMatches, CompressionPolicy policy,
+                                        boolean persistent) {
+        this(jdbcUrl, username, password, hasher, verifyMatches, policy, persistent, ChunkIndex.Backend.POSTGRES);
+    }
+
+    public CompressedChunkStorageSystem(ChunkHasher hasher, boolean verifyMatches, CompressionPolicy policy,
+                                        boolean persistent, ChunkIndex.Backend indexBackend) {
+        this(DEFAULT_JDBC_URL, DEFAULT_USERNAME, DEFAULT_PASSWORD, hasher, verifyMatches, policy, persistent, indexBackend);
+    }
+
+    public CompressedChunkStorageSystem(String jdbcUrl, String username, String password,
+                                        ChunkHasher hasher, boolean verifyMatches, CompressionPolicy policy,
+                                        boolean persistent, ChunkIndex.Backend indexBackend) {
+        super(jdbcUrl, username, password, hasher, verifyMatches, persistent, indexBackend);
+        this.dictionaries = new CompressionDictionaries(this::saveDictionary);
+        loadDictionaries();
+        this.compressor = new ChunkCompressor(policy, dictionaries);
+    }
+
+    private void loadDictionaries() {
+        for (RecipeStore.StoredDictionary dictionary : getRecipeStore().loadDictionaries()) {
+            dictionaries.register(dictionary.id(), dictionary.fileType(), dictionary.content());
+        }
+    }
+
+    private int saveDictionary(String fileType, byte[] content) {
+        int id = getRecipeStore().saveDictionary(fileType, content);
+        System.out.printf("Dictionnaire de compression %d entraîné pour le type '%s' (%d bytes)%n",
+                id, fileType, content.length);
+        return id;
     }
 
     @Override
-    protected void saveChunkToStorage(byte[] chunk, String storagePath) throws IOException {
-        // Compresser le chunk avec ses métadonnées
-        byte[] compressedData = compressor.createCompressedChunkWithMetadata(chunk);
-
-        // Sauvegarder le chunk compressé
-        Path path = Paths.get(storagePath);
-        Files.createDirectories(path.getParent());
-        Files.write(path, compressedData);
-
-        double compressionRatio = (1.0 - (double) compressedData.length / chunk.length) * 100;
-        // System.out.printf("Chunk compressé : %s (réduction: %.2f%%)%n",
-        //     path.toAbsolutePath(), compressionRatio);
+    public ByteBuffer encodeChunk(ByteBuffer chunk, String filename) {
+        // Compresser le chunk avec ses métadonnées directement dans un buffer du pool
+        ByteBuffer target = bufferPool.acquire(ChunkCompressor.maxEncodedSize(chunk.remaining()));
+        compressor.encode(chunk, CompressionDictionaries.fileTypeOf(filename), target);
+        return target.flip();
     }
 
     @Override
-    protected byte[] readChunkFromStorage(String storagePath) throws IOException {
-        byte[] compressedData = Files.readAllBytes(Paths.get(storagePath));
+    public void releaseEncoded(ByteBuffer encoded) {
+        bufferPool.release(encoded);
+    }
+
+    @Override
+    protected byte[] readChunkFromStorage(PackLocation location) throws IOException {
+        byte[] compressedData = readStoredChunk(location);
         return compressor.decompressChunkWithMetadata(compressedData);
     }
 
@@ -42,37 +96,27 @@ public class CompressedChunkStorageSystem extends SQLChunkStorageSystem {
             long totalOriginalSize = 0;
             long totalCompressedSize = 0;
             int chunkCount = 0;
+            int[] codecCounts = new int[ChunkCompressor.Codec.values().length];
 
-            Path storagePath = Paths.get(STORAGE_BASE_PATH);
-            if (Files.exists(storagePath)) {
-                try (Connection conn = getConnection();
-                     PreparedStatement stmt = conn.prepareStatement("SELECT chunk_hash, file_path FROM chunks")) {
-
-                    ResultSet rs = stmt.executeQuery();
-                    while (rs.next()) {
-                        String filePath = rs.getString("file_path");
-                        String chunkHash = rs.getString("chunk_hash");
-                        Path path = Paths.get(filePath);
-
-                        if (Files.exists(path)) {
-                            byte[] compressedData = Files.readAllBytes(path);
-                            ByteBuffer buffer = ByteBuffer.wrap(compressedData);
-                            long originalSize = buffer.getLong(); // Lire la taille originale
-                            long compressedSize = compressedData.length - 8; // Soustraire la taille des métadonnées
-
-//                            System.out.println("Chunk détails - Hash: " + chunkHash);
-//                            System.out.println("  Taille originale: " + originalSize + " bytes");
-//                            System.out.println("  Taille compressée: " + compressedSize + " bytes");
-//                            System.out.println("  Ratio: " + String.format("%.2f%%", ((double)compressedSize/originalSize) * 100));
+            ByteBuffer header = ByteBuffer.allocate(ChunkCompressor.HEADER_SIZE);
+            List<PackLocation> locations = new ArrayList<>();
+            getChunkIndex().forEach(record -> locations.add(record.location()));
+            for (PackLocation location : locations) {
+                // Seul l'en-tête est lu : la taille compressée est connue par l'index
+                header.clear();
+                getPackStore().read(new PackLocation(location.packId(), location.offset(), ChunkCompressor.HEADER_SIZE), header);
+                long originalSize = header.getLong(0); // Lire la taille originale
+                ChunkCompressor.Codec codec = ChunkCompressor.Codec.fromId(header.get(Long.BYTES));
+                codecCounts[codec.ordinal()]++;
+                long compressedSize = location.length() - ChunkCompressor.headerSize(codec); // Soustraire la taille des métadonnées
+
+//                System.out.println("  Taille originale: " + originalSize + " bytes");
+//                System.out.println("  Taille compressée: " + compressedSize + " bytes");
+//                System.out.println("  Ratio: " + String.format("%.2f%%", ((double)compressedSize/originalSize) * 100));
 //
-                            totalOriginalSize += originalSize;
-                            totalCompressedSize += compressedSize;
-                            chunkCount++;
-                        } else {
-                            System.out.println("ATTENTION: Fichier non trouvé: " + filePath);
-                        }
-                    }
-                }
+                totalOriginalSize += originalSize;
+                totalCompressedSize += compressedSize;
+                chunkCount++;
             }
 
             if (chunkCount > 0) {
@@ -87,6 +131,11 @@ public class CompressedChunkStorageSystem extends SQLChunkStorageSystem {
                 System.out.printf("Taille totale compressée : %.2f KB%n", totalCompressedSize / 1024.0);
                 System.out.printf("Ratio de compression moyen : %.2f%%%n", avgCompressionRatio);
                 System.out.printf("Taille finale : %.2f KB%n", (totalOriginalSize - totalCompressedSize) / 1024.0);
+                for (ChunkCompressor.Codec codec : ChunkCompressor.Codec.values()) {
+                    System.out.printf("Chunks %-9s : %d%n", codec, codecCounts[codec.ordinal()]);
+                }
+                System.out.printf("Dictionnaires de compression : %d%n", dictionaries.size());
+                System.out.printf("Niveau Zstd courant : %d%n", compressor.getPolicy().getCurrentLevel());
                 System.out.println("----------------------------------------\n");
             }
         } catch (IOException e) {
@@ -37,7 +37,10 @@ public class CompressionBenchmark {
     }
 
     public CompressionResult benchmarkGlobalCompression(String filePath) throws IOException {
-        byte[] content = Files.readAllBytes(Paths.get(filePath));
+        return benchmarkGlobalCompression(Files.readAllBytes(Paths.get(filePath)));
+    }
+
+    public CompressionResult benchmarkGlobalCompression(byte[] content) {
         long startTime = System.currentTimeMillis();
 
         // Compression globale
@@ -58,16 +61,23 @@ public class CompressionBenchmark {
     }
 
     public CompressionResult benchmarkChunkCompression(String filePath) throws IOException {
+        return benchmarkChunkCompression(Files.readAllBytes(Paths.get(filePath)));
+    }
+
+    public CompressionResult benchmarkChunkCompression(byte[] content) throws IOException {
         long startTime = System.currentTimeMillis();
-        List<byte[]> chunks = chunker.chunkFile(filePath);
-        
+        List<byte[]> chunks = new ArrayList<>();
+        chunker.streamChunks(new ByteArrayInputStream(content), content.length,
+                (chunk, chunkNumber) -> chunks.add(chunk));
+
         long totalOriginalSize = 0;
         long totalCompressedSize = 0;
 
         List<byte[]> compressedChunks = new ArrayList<>();
         for (byte[] chunk : chunks) {
             totalOriginalSize += chunk.length;
-            byte[] compressedChunk = chunkCompressor.compressChunk(chunk);
+            // Encodage réel du stockage : codec adaptatif et en-tête compris
+            byte[] compressedChunk = chunkCompressor.createCompressedChunkWithMetadata(chunk);
             totalCompressedSize += compressedChunk.length;
             compressedChunks.add(compressedChunk);
         }
@@ -85,7 +95,38 @@ public class CompressionBenchmark {
     }
 
     public void runComparaisonComplete(String filePath) throws IOException {
-        String fileName = Paths.get(filePath).getFileName().toString().toLowerCase();
+        runComparaisonComplete(Paths.get(filePath).getFileName().toString(), Files.readAllBytes(Paths.get(filePath)));
+    }
+
+    /**
+     * Compare les deux méthodes sur chaque fichier d'un corpus synthétique, puis sur le corpus entier.
+     */
+    public void runCorpus(SyntheticCorpus corpus) throws IOException {
+        SyntheticCorpus.Config config = corpus.getConfig();
+        System.out.printf("Corpus synthétique %s (graine %d) : %d fichiers, %.2f MB%n",
+                config.profile(), config.seed(), corpus.files().size(), corpus.totalSize() / (1024.0 * 1024.0));
+
+        long originalSize = 0;
+        long compressedSize = 0;
+        long timeInMs = 0;
+        for (SyntheticCorpus.CorpusFile file : corpus.files()) {
+            System.out.println("\nTest pour le fichier: " + file.name());
+            CompressionResult chunkResult = runComparaisonComplete(file.name(), corpus.readAllBytes(file));
+            originalSize += chunkResult.originalSize();
+            compressedSize += chunkResult.compressedSize();
+            timeInMs += chunkResult.timeInMs();
+        }
+
+        System.out.println("\nTotal du corpus (compression par chunk, sans déduplication):");
+        System.out.println(new CompressionResult(originalSize, compressedSize, timeInMs,
+                (1.0 - ((double) compressedSize / Math.max(1, originalSize))) * 100, "Compression par Chunk"));
+    }
+
+    /**
+     * @return le résultat de la compression par chunk
+     */
+    public CompressionResult runComparaisonComplete(String name, byte[] content) throws IOException {
+        String fileName = name.toLowerCase();
         boolean isPreCompressed = fileName.endsWith(".jpg") || 
                                 fileName.endsWith(".jpeg") || 
                                 fileName.endsWith(".png") || 
@@ -94,7 +135,7 @@ public class CompressionBenchmark {
                                 fileName.endsWith(".mp3") ||
                                 fileName.endsWith(".mp4");
 
-        System.out.println("Comparaison des méthodes de compression pour: " + filePath);
+        System.out.println("Comparaison des méthodes de compression pour: " + name);
         System.out.println("=================================================");
         if (isPreCompressed) {
             System.out.println("ATTENTION: Ce fichier est déjà dans un format compressé.");
@@ -102,12 +143,12 @@ public class CompressionBenchmark {
         }
 
         // Test compression globale
-        CompressionResult globalResult = benchmarkGlobalCompression(filePath);
+        CompressionResult globalResult = benchmarkGlobalCompression(content);
         System.out.println("\nRésultats compression globale:");
         System.out.println(globalResult);
 
         // Test compression par chunk
-        CompressionResult chunkResult = benchmarkChunkCompression(filePath);
+        CompressionResult chunkResult = benchmarkChunkCompression(content);
         System.out.println("\nRésultats compression par chunk:");
         System.out.println(chunkResult);
 
@@ -146,5 +187,6 @@ public class CompressionBenchmark {
             System.out.printf("(%.1fx plus rapide)%n", 
                 (double)chunkResult.timeInMs() / globalResult.timeInMs());
         }
+        return chunkResult;
     }
 }
\ No newline at end of file
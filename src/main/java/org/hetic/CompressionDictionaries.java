@@ -0,0 +1,162 @@
+package org.hetic;
+
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionnaires Zstd entraînés par type de fichier (extension) pour les petits chunks :
+ * compressé seul, un chunk de quelques centaines d'octets paie tout le coût d'une trame
+ * sans contexte partagé. Les premiers petits chunks d'un type servent d'échantillons ;
+ * le dictionnaire entraîné est enregistré par le {@link Store} qui lui attribue un identifiant,
+ * référencé ensuite dans l'en-tête de chaque chunk compressé avec lui.
+ */
+public class CompressionDictionaries {
+    // Au-delà, un chunk a assez de contenu pour se passer d'un dictionnaire
+    public static final int MAX_DICTIONARY_CHUNK_SIZE = 4096;
+    private static final int DICTIONARY_SIZE = 16 * 1024;
+    // Zstd recommande environ 100 fois la taille du dictionnaire en échantillons
+    private static final int TRAINING_BYTES = 100 * DICTIONARY_SIZE;
+    private static final int MIN_SAMPLES = 64;
+
+    /**
+     * Persistance des dictionnaires entraînés.
+     */
+    @FunctionalInterface
+    public interface Store {
+        /**
+         * @return l'identifiant attribué au dictionnaire
+         */
+        int save(String fileType, byte[] content);
+    }
+
+    /**
+     * Dictionnaire pré-digéré : la version de compression dépend du niveau, elle est
+     * préparée à la demande pour chaque niveau utilisé.
+     */
+    public static final class Dictionary {
+        private final int id;
+        private final byte[] content;
+        private final ZstdDictDecompress decompress;
+        private final Map<Integer, ZstdDictCompress> compressByLevel = new ConcurrentHashMap<>();
+
+        Dictionary(int id, byte[] content) {
+            this.id = id;
+            this.content = content;
+            this.decompress = new ZstdDictDecompress(content);
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public ZstdDictCompress forCompression(int level) {
+            return compressByLevel.computeIfAbsent(level, l -> new ZstdDictCompress(content, l));
+        }
+
+        public ZstdDictDecompress forDecompression() {
+            return decompress;
+        }
+    }
+
+    private final Store store;
+    private final Map<Integer, Dictionary> byId = new ConcurrentHashMap<>();
+    private final Map<String, Dictionary> byFileType = new ConcurrentHashMap<>();
+    private final Map<String, SampleCollector> collectors = new ConcurrentHashMap<>();
+
+    public CompressionDictionaries(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * Rend disponible un dictionnaire déjà enregistré (au démarrage).
+     */
+    public void register(int id, String fileType, byte[] content) {
+        Dictionary dictionary = new Dictionary(id, content);
+        byId.put(id, dictionary);
+        byFileType.put(fileType, dictionary);
+    }
+
+    public Dictionary forFileType(String fileType) {
+        return byFileType.get(fileType);
+    }
+
+    public Dictionary byId(int id) {
+        Dictionary dictionary = byId.get(id);
+        if (dictionary == null) {
+            throw new IllegalStateException("Dictionnaire de compression inconnu: " + id);
+        }
+        return dictionary;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Garde une copie d'un petit chunk comme échantillon d'entraînement pour son type,
+     * et entraîne le dictionnaire quand les échantillons sont suffisants.
+     */
+    public void sample(String fileType, ByteBuffer chunk) {
+        if (byFileType.containsKey(fileType) || chunk.remaining() > MAX_DICTIONARY_CHUNK_SIZE) {
+            return;
+        }
+        SampleCollector collector = collectors.computeIfAbsent(fileType, type -> new SampleCollector());
+        byte[] trained = collector.add(chunk);
+        if (trained != null) {
+            int id = store.save(fileType, trained);
+            register(id, fileType, trained);
+            collectors.remove(fileType);
+        }
+    }
+
+    /**
+     * Extension en minuscules, ou chaîne vide : les fichiers sans extension partagent un dictionnaire.
+     */
+    public static String fileTypeOf(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int slash = Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\'));
+        int dot = filename.lastIndexOf('.');
+        return dot > slash ? filename.substring(dot + 1).toLowerCase() : "";
+    }
+
+    private static final class SampleCollector {
+        private final ZstdDictTrainer trainer = new ZstdDictTrainer(TRAINING_BYTES, DICTIONARY_SIZE);
+        private long collectedBytes;
+        private int samples;
+        private boolean done;
+
+        /**
+         * @return le dictionnaire entraîné quand ce chunk complète les échantillons, sinon null
+         */
+        synchronized byte[] add(ByteBuffer chunk) {
+            if (done) {
+                return null;
+            }
+            byte[] sample = new byte[chunk.remaining()];
+            chunk.duplicate().get(sample);
+            boolean accepted = trainer.addSample(sample);
+            if (accepted) {
+                collectedBytes += sample.length;
+                samples++;
+            }
+            if ((!accepted || collectedBytes >= TRAINING_BYTES) && samples >= MIN_SAMPLES) {
+                done = true;
+                try {
+                    return trainer.trainSamples();
+                } catch (RuntimeException e) {
+                    // Échantillons trop homogènes ou trop peu nombreux : on se passe de dictionnaire
+                    System.err.println("Entraînement du dictionnaire impossible : " + e.getMessage());
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.hetic;
+
+import com.github.luben.zstd.Zstd;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Choix du codec de chaque chunk avant compression.
+ * <ul>
+ *   <li>une sonde d'entropie sur un échantillon du chunk écarte les données déjà compressées
+ *   (JPEG, ZIP, MP4...) : elles sont stockées brutes sans passer par Zstd ;</li>
+ *   <li>les données moyennement entropiques passent par le mode rapide de Zstd (niveaux négatifs) ;</li>
+ *   <li>le reste est compressé au niveau Zstd configuré.</li>
+ * </ul>
+ * Avec un débit cible, le niveau est ajusté en continu : il baisse tant que la compression
+ * mesurée est plus lente que la cible, et remonte quand elle dispose d'une marge suffisante.
+ * Le débit est mesuré par thread de compression, en temps de compression uniquement.
+ */
+public class CompressionPolicy {
+    public static final int DEFAULT_LEVEL = 19;
+    static final int FAST_LEVEL = -5;
+
+    // En bits par octet (maximum 8)
+    private static final double RAW_ENTROPY = 7.5;
+    private static final double FAST_ENTROPY = 6.5;
+    // En dessous, l'en-tête d'une trame Zstd coûte plus que ce qu'elle peut gagner
+    private static final int MIN_COMPRESSIBLE_SIZE = 64;
+    private static final int SAMPLE_SIZE = 4096;
+    private static final int SAMPLE_WINDOWS = 8;
+    private static final int ADJUST_EVERY_CHUNKS = 256;
+
+    public record Decision(ChunkCompressor.Codec codec, int level) {}
+
+    private final int maxLevel;
+    private final double targetMBps;
+    private final AtomicInteger currentLevel;
+
+    private final LongAdder measuredBytes = new LongAdder();
+    private final LongAdder measuredNanos = new LongAdder();
+    private final AtomicLong measuredChunks = new AtomicLong();
+
+    public CompressionPolicy() {
+        this(DEFAULT_LEVEL, 0);
+    }
+
+    /**
+     * @param level      niveau Zstd des données compressibles (et niveau maximal en mode adaptatif)
+     * @param targetMBps débit de compression visé par thread, en MB/s ; 0 pour un niveau fixe
+     */
+    public CompressionPolicy(int level, double targetMBps) {
+        if (level < 1 || level > Zstd.maxCompressionLevel()) {
+            throw new IllegalArgumentException("Niveau Zstd invalide: " + level);
+        }
+        this.maxLevel = level;
+        this.targetMBps = targetMBps;
+        this.currentLevel = new AtomicInteger(level);
+    }
+
+    public int getCurrentLevel() {
+        return currentLevel.get();
+    }
+
+    public Decision choose(ByteBuffer chunk) {
+        if (chunk.remaining() < MIN_COMPRESSIBLE_SIZE) {
+            return new Decision(ChunkCompressor.Codec.RAW, 0);
+        }
+        double entropy = sampleEntropy(chunk);
+        if (entropy >= RAW_ENTROPY) {
+            return new Decision(ChunkCompressor.Codec.RAW, 0);
+        }
+        int level = currentLevel.get();
+        if (entropy >= FAST_ENTROPY || level < 1) {
+            return new Decision(ChunkCompressor.Codec.FAST, FAST_LEVEL);
+        }
+        return new Decision(ChunkCompressor.Codec.ZSTD, level);
+    }
+
+    /**
+     * Enregistre la durée de compression d'un chunk et réajuste le niveau si nécessaire.
+     */
+    public void record(long bytes, long nanos) {
+        if (targetMBps <= 0) {
+            return;
+        }
+        measuredBytes.add(bytes);
+        measuredNanos.add(nanos);
+        if (measuredChunks.incrementAndGet() % ADJUST_EVERY_CHUNKS == 0) {
+            adjustLevel();
+        }
+    }
+
+    private void adjustLevel() {
+        long bytes = measuredBytes.sumThenReset();
+        long nanos = measuredNanos.sumThenReset();
+        if (nanos == 0) {
+            return;
+        }
+        double mbps = bytes / 1024.0 / 1024.0 / (nanos / 1e9);
+        int level = currentLevel.get();
+        if (mbps < targetMBps && level > 0) {
+            // Niveau 0 : tout passe par le mode rapide
+            currentLevel.compareAndSet(level, level - 1);
+        } else if (mbps > targetMBps * 1.5 && level < maxLevel) {
+            currentLevel.compareAndSet(level, level + 1);
+        }
+    }
+
+    /**
+     * Entropie de Shannon (bits par octet) sur quelques fenêtres réparties dans le chunk.
+     */
+    static double sampleEntropy(ByteBuffer chunk) {
+        int[] histogram = new int[256];
+        int start = chunk.position();
+        int length = chunk.remaining();
+        int sampled = 0;
+        if (length <= SAMPLE_SIZE) {
+            for (int i = 0; i < length; i++) {
+                histogram[chunk.get(start + i) & 0xFF]++;
+            }
+            sampled = length;
+        } else {
+            int window = SAMPLE_SIZE / SAMPLE_WINDOWS;
+            long stride = (long) (length - window) / (SAMPLE_WINDOWS - 1);
+            for (int w = 0; w < SAMPLE_WINDOWS; w++) {
+                int from = start + (int) (w * stride);
+                for (int i = 0; i < window; i++) {
+                    histogram[chunk.get(from + i) & 0xFF]++;
+                }
+            }
+            sampled = window * SAMPLE_WINDOWS;
+        }
+
+        double entropy = 0;
+        for (int count : histogram) {
+            if (count > 0) {
+                double p = (double) count / sampled;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+        return entropy;
+    }
+}
@@ -1,61 +1,211 @@
 package org.hetic;
 
-import org.rabinfingerprint.fingerprint.RabinFingerprintLong;
-import org.rabinfingerprint.polynomial.Polynomial;
-
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
 public class ContentDefinedChunking {
-    private final Polynomial POLYNOMIAL = Polynomial.createFromLong(0x3DA3358B4DC173L); // Polynome optimisé
     private static final Logger logger = Logger.getLogger(ContentDefinedChunking.class.getName());
+    private static final long DEFAULT_MAPPING_WINDOW = 1L << 30; // 1 GB
 
-    public List<byte[]> chunkFile(String filePath) throws IOException {
-        long startTime = System.nanoTime();
+    private final long mappingWindow;
 
-        File file = new File(filePath);
-        long fileSize = file.length();
+    public ContentDefinedChunking() {
+        this(DEFAULT_MAPPING_WINDOW);
+    }
 
-        ChunkParams params = adjustChunkParams(fileSize);
+    /**
+     * @param mappingWindow taille de la fenêtre projetée en mémoire par {@link #streamMappedChunks}
+     */
+    public ContentDefinedChunking(long mappingWindow) {
+        if (mappingWindow <= 0 || mappingWindow > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Fenêtre de projection invalide: " + mappingWindow);
+        }
+        this.mappingWindow = mappingWindow;
+    }
+
+    /**
+     * Reçoit chaque chunk dès que sa frontière est trouvée.
+     * Le tableau transmis appartient au handler, le chunker n'en garde aucune référence.
+     */
+    @FunctionalInterface
+    public interface ChunkHandler {
+        void onChunk(byte[] chunk, int chunkNumber) throws IOException;
+    }
+
+    /**
+     * Reçoit chaque chunk sous forme de tranche de la projection mémoire du fichier, sans copie.
+     * Le buffer est en lecture seule et ne doit pas être conservé après l'appel.
+     */
+    @FunctionalInterface
+    public interface MappedChunkHandler {
+        void onChunk(ByteBuffer chunk, long fileOffset, int chunkNumber) throws IOException;
+    }
 
+    public List<byte[]> chunkFile(String filePath) throws IOException {
         List<byte[]> chunks = new ArrayList<>();
+        streamChunks(filePath, (chunk, chunkNumber) -> chunks.add(chunk));
+        return chunks;
+    }
+
+    /**
+     * Découpe le fichier en flux : la mémoire utilisée est bornée par maxChunkSize,
+     * quelle que soit la taille du fichier.
+     *
+     * @return le nombre de chunks émis
+     */
+    public int streamChunks(String filePath, ChunkHandler handler) throws IOException {
+        File file = new File(filePath);
         try (InputStream inputStream = new FileInputStream(file)) {
-            RabinFingerprintLong rabin = new RabinFingerprintLong(POLYNOMIAL);
-            ByteArrayOutputStream chunkBuffer = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                for (int i = 0; i < bytesRead; i++) {
-                    chunkBuffer.write(buffer[i]);
-                    rabin.pushByte(buffer[i]);
-
-                    if ((rabin.getFingerprintLong() & params.mask) == 0 || chunkBuffer.size() >= params.maxChunkSize) {
-                        if (chunkBuffer.size() >= params.minChunkSize) {
-                            chunks.add(chunkBuffer.toByteArray());
-                            chunkBuffer.reset();
-                            rabin = new RabinFingerprintLong(POLYNOMIAL);
-                        }
+            return streamChunks(inputStream, file.length(), handler);
+        }
+    }
+
+    public int streamChunks(InputStream inputStream, long fileSize, ChunkHandler handler) throws IOException {
+        return streamChunks(inputStream, fileSize, 0, handler);
+    }
+
+    /**
+     * Reprend le découpage à une frontière de chunk déjà connue : {@code inputStream} est
+     * positionné sur cette frontière et les chunks sont numérotés à partir de {@code firstChunkNumber}.
+     * Le hash roulant repart de zéro à chaque chunk, si bien que le résultat est identique à un
+     * découpage complet tant que {@code fileSize} reste dans le même palier (voir {@link #sameChunkingTier}).
+     *
+     * @param fileSize taille du fichier entier, qui fixe les paramètres de découpage
+     * @return le nombre de chunks émis
+     */
+    public int streamChunks(InputStream inputStream, long fileSize, int firstChunkNumber,
+                            ChunkHandler handler) throws IOException {
+        long startTime = System.nanoTime();
+
+        ChunkParams params = adjustChunkParams(fileSize);
+        GearBoundaryDetector detector = new GearBoundaryDetector(params);
+
+        int chunkCount = firstChunkNumber;
+        long totalBytes = 0;
+        // Le buffer contient toujours au moins maxChunkSize octets d'avance (ou la fin du fichier)
+        byte[] buffer = new byte[Math.max(2 * params.maxChunkSize, 64 * 1024)];
+        int start = 0;
+        int limit = 0;
+        boolean eof = false;
+
+        while (true) {
+            if (!eof && limit - start < params.maxChunkSize) {
+                // Ramener les octets non consommés en début de buffer puis le remplir
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    limit -= start;
+                    start = 0;
+                }
+                while (limit < buffer.length) {
+                    int bytesRead = inputStream.read(buffer, limit, buffer.length - limit);
+                    if (bytesRead == -1) {
+                        eof = true;
+                        break;
                     }
+                    limit += bytesRead;
                 }
             }
 
-            // Ajouter le dernier chunk s'il reste des données
-            if (chunkBuffer.size() > 0) {
-                chunks.add(chunkBuffer.toByteArray());
+            if (start == limit) {
+                break;
             }
+
+            int chunkLength = detector.nextBoundary(buffer, start, limit);
+            handler.onChunk(Arrays.copyOfRange(buffer, start, start + chunkLength), chunkCount++);
+            start += chunkLength;
+            totalBytes += chunkLength;
         }
 
         long endTime = System.nanoTime();
-        logger.info("File split execution time: " + (endTime - startTime) / 1_000_000 + " ms");
+        logSplitTime(startTime, endTime, totalBytes);
 
-        return chunks;
+        return chunkCount - firstChunkNumber;
+    }
+
+    /**
+     * Découpe le fichier via {@link FileChannel#map} : chaque chunk est une tranche
+     * (offset/longueur) de la projection, le hash et la compression lisent directement
+     * dans la page cache. Les fichiers plus grands que la fenêtre (et donc au-delà de 2 GB)
+     * sont parcourus par une fenêtre glissante reprojetée au début du chunk en cours.
+     *
+     * @return le nombre de chunks émis
+     */
+    public int streamMappedChunks(String filePath, MappedChunkHandler handler) throws IOException {
+        return streamMappedChunks(filePath, 0, 0, handler);
+    }
+
+    /**
+     * Version projetée de la reprise : le découpage commence à la frontière {@code startOffset}.
+     *
+     * @return le nombre de chunks émis
+     */
+    public int streamMappedChunks(String filePath, long startOffset, int firstChunkNumber,
+                                  MappedChunkHandler handler) throws IOException {
+        long startTime = System.nanoTime();
+
+        Path path = Paths.get(filePath);
+        int chunkCount = firstChunkNumber;
+        long fileSize;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            ChunkParams params = adjustChunkParams(fileSize);
+            GearBoundaryDetector detector = new GearBoundaryDetector(params);
+
+            if (mappingWindow < params.maxChunkSize) {
+                throw new IllegalStateException("La fenêtre de projection doit contenir au moins un chunk maximal");
+            }
+
+            long windowStart = startOffset;
+            while (windowStart < fileSize) {
+                int windowLength = (int) Math.min(mappingWindow, fileSize - windowStart);
+                boolean lastWindow = windowStart + windowLength == fileSize;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+
+                // Ne couper que si la fenêtre contient un chunk maximal complet, sinon reprojeter
+                int position = 0;
+                while (position < windowLength && (lastWindow || windowLength - position >= params.maxChunkSize)) {
+                    int chunkLength = detector.nextBoundary(window, position, windowLength);
+                    handler.onChunk(window.slice(position, chunkLength).asReadOnlyBuffer(), windowStart + position, chunkCount++);
+                    position += chunkLength;
+                }
+                windowStart += position;
+            }
+        }
+
+        long endTime = System.nanoTime();
+        logSplitTime(startTime, endTime, fileSize - startOffset);
+
+        return chunkCount - firstChunkNumber;
+    }
+
+    /**
+     * Indique si deux tailles de fichier donnent les mêmes paramètres de découpage,
+     * condition pour reprendre le découpage d'une version précédente du fichier.
+     */
+    public boolean sameChunkingTier(long fileSize, long otherFileSize) {
+        ChunkParams params = adjustChunkParams(fileSize);
+        ChunkParams other = adjustChunkParams(otherFileSize);
+        return params.mask == other.mask && params.minChunkSize == other.minChunkSize
+                && params.maxChunkSize == other.maxChunkSize;
     }
 
+    private void logSplitTime(long startTime, long endTime, long totalBytes) {
+        long elapsedNanos = Math.max(1, endTime - startTime);
+        double throughput = (totalBytes / (1024.0 * 1024.0)) / (elapsedNanos / 1_000_000_000.0);
+        logger.info(String.format("File split execution time: %d ms (%.1f MB/s)", elapsedNanos / 1_000_000, throughput));
+    }
 
-    private ChunkParams adjustChunkParams(long fileSize) {
+    ChunkParams adjustChunkParams(long fileSize) {
         final long BASE_MASK = (1 << 12) - 1; // Masque de base 4 KB
 
         long mask;
@@ -91,7 +241,7 @@ public class ContentDefinedChunking {
         return new ChunkParams(mask, minChunkSize, maxChunkSize);
     }
 
-    private static class ChunkParams {
+    static class ChunkParams {
         long mask;
         int minChunkSize;
         int maxChunkSize;
@@ -0,0 +1,197 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.DedupCacheStats;
+import org.hetic.models.PackLocation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Couche de présence des hashs devant la table {@code chunks}.
+ * <ul>
+ *   <li>un cache LRU borné des hashs récemment vus et de leur emplacement dans les packs :
+ *   un chunk trouvé ici est un doublon certain ;</li>
+ *   <li>un filtre de Bloom de tous les hashs connus : un chunk absent du filtre est nouveau à coup sûr.</li>
+ * </ul>
+ * Seuls les hashs que le filtre déclare "peut-être présents" sans qu'ils soient en cache
+ * nécessitent encore une requête. Le filtre ne couvre que ce que ce processus a vu : un chunk
+ * inséré ailleurs sera déclaré nouveau, ce que {@code ON CONFLICT DO NOTHING} rend sans danger.
+ */
+public class DedupIndexCache {
+    public enum Presence { PRESENT, ABSENT, UNKNOWN }
+
+    private static final int SEGMENTS = 16;
+
+    private final LruSegment[] segments = new LruSegment[SEGMENTS];
+    private final BloomFilter bloomFilter;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong bloomNegatives = new AtomicLong();
+    private final AtomicLong databaseLookups = new AtomicLong();
+    private final AtomicLong bloomFalsePositives = new AtomicLong();
+
+    public DedupIndexCache(int cacheCapacity, long expectedChunks) {
+        int perSegment = Math.max(1, cacheCapacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LruSegment(perSegment);
+        }
+        this.bloomFilter = new BloomFilter(expectedChunks, 0.01);
+    }
+
+    public Presence classify(ChunkId hash) {
+        if (segment(hash).contains(hash)) {
+            cacheHits.incrementAndGet();
+            return Presence.PRESENT;
+        }
+        if (!bloomFilter.mightContain(hash)) {
+            bloomNegatives.incrementAndGet();
+            return Presence.ABSENT;
+        }
+        databaseLookups.incrementAndGet();
+        return Presence.UNKNOWN;
+    }
+
+    /**
+     * Emplacement connu d'un chunk en cache, ou null ; n'entre pas dans les statistiques.
+     */
+    public PackLocation location(ChunkId hash) {
+        return segment(hash).get(hash);
+    }
+
+    /**
+     * À appeler uniquement quand la présence du chunk en base est validée (après commit).
+     */
+    public void markPresent(ChunkId hash, PackLocation location) {
+        bloomFilter.put(hash);
+        segment(hash).put(hash, location);
+    }
+
+    /**
+     * Le filtre de Bloom ne supporte pas la suppression : un hash retiré ne quitte que le cache,
+     * le filtre répondra "peut-être" et une requête tranchera.
+     */
+    public void invalidate(ChunkId hash) {
+        segment(hash).remove(hash);
+    }
+
+    /**
+     * Compte un hash déclaré "peut-être présent" par le filtre mais absent en base.
+     */
+    public void recordFalsePositive() {
+        bloomFalsePositives.incrementAndGet();
+    }
+
+    public void clear() {
+        for (LruSegment segment : segments) {
+            segment.clear();
+        }
+        bloomFilter.clear();
+    }
+
+    public DedupCacheStats getStats() {
+        long cached = 0;
+        for (LruSegment segment : segments) {
+            cached += segment.size();
+        }
+        return new DedupCacheStats(cacheHits.get(), bloomNegatives.get(), databaseLookups.get(),
+                bloomFalsePositives.get(), cached);
+    }
+
+    // Les mots 2 et 3 sont nuls avec une empreinte de 128 bits (murmur3-128)
+    private LruSegment segment(ChunkId hash) {
+        return segments[(int) (hash.word(1) >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private static final class LruSegment {
+        private final LinkedHashMap<ChunkId, PackLocation> entries;
+
+        LruSegment(int capacity) {
+            this.entries = new LinkedHashMap<>(capacity, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ChunkId, PackLocation> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized boolean contains(ChunkId hash) {
+            return entries.get(hash) != null;
+        }
+
+        synchronized PackLocation get(ChunkId hash) {
+            return entries.get(hash);
+        }
+
+        synchronized void put(ChunkId hash, PackLocation location) {
+            entries.put(hash, location);
+        }
+
+        synchronized void remove(ChunkId hash) {
+            entries.remove(hash);
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Filtre de Bloom sans verrou. Les hashs étant déjà uniformes (SHA-256), les k positions
+     * sont dérivées de deux mots de 64 bits du hash (double hachage de Kirsch-Mitzenmacher).
+     */
+    private static final class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashFunctions;
+
+        BloomFilter(long expectedInsertions, double falsePositiveRate) {
+            long n = Math.max(1, expectedInsertions);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = (long) words * 64;
+            this.hashFunctions = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        }
+
+        boolean mightContain(ChunkId hash) {
+            long h1 = hash.word(0);
+            long h2 = hash.word(1);
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(ChunkId hash) {
+            long h1 = hash.word(0);
+            long h2 = hash.word(1);
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                while (((current = bits.get(word)) & mask) == 0) {
+                    if (bits.compareAndSet(word, current, current | mask)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < bits.length(); i++) {
+                bits.set(i, 0);
+            }
+        }
+    }
+}
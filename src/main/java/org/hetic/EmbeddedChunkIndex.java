@@ -0,0 +1,243 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkRecord;
+import org.hetic.models.PackLocation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Index des chunks embarqué, sans base de données :
+ * <ul>
+ *   <li>un journal à ajout seul ({@code chunk-index.log}, à côté des packs) d'enregistrements de
+ *   taille fixe ; un enregistrement incomplet en fin de journal (arrêt pendant une écriture) est
+ *   ignoré et tronqué ;</li>
+ *   <li>une {@link OffHeapChunkTable} hors du tas, projetée depuis {@code chunk-index.table/} :
+ *   après une fermeture propre, le redémarrage se contente de projeter les fichiers de la table ;
+ *   après un arrêt brutal, la table est reconstruite en relisant le journal.</li>
+ * </ul>
+ * Une recherche est un accès mémoire au lieu d'un aller-retour vers PostgreSQL. Les empreintes
+ * de vérification ne sont pas gardées dans la table : {@link #verifyDigests} les relit dans le
+ * journal, seulement pour les doublons à confirmer ; {@link #lookup} ne lit jamais le disque.
+ * Le journal est écrit avant la table, donc toujours après les packs : un chunk indexé est
+ * toujours lisible.
+ */
+public class EmbeddedChunkIndex implements ChunkIndex {
+    public static final String LOG_FILE_NAME = "chunk-index.log";
+    public static final String TABLE_DIRECTORY_NAME = "chunk-index.table";
+    // [hash (32)][pack (4)][offset (8)][longueur stockée (4)][taille d'origine (4)][empreinte présente (1)][empreinte (32)]
+    static final int RECORD_SIZE = ChunkId.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + 1 + 32;
+    private static final int DIGEST_OFFSET = RECORD_SIZE - 33;
+    private static final int READ_BATCH = 8192;
+
+    private final Path logPath;
+    private final FileChannel log;
+    private final OffHeapChunkTable table;
+    // Sérialise les ajouts au journal ; les insertions dans la table sont verrouillées par segment
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile long logSize;
+
+    public EmbeddedChunkIndex(Path directory) throws IOException {
+        this.logPath = directory.resolve(LOG_FILE_NAME);
+        this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.table = new OffHeapChunkTable(directory.resolve(TABLE_DIRECTORY_NAME));
+        long size = log.size();
+        long complete = size - size % RECORD_SIZE;
+        if (complete != size) {
+            System.err.println("Enregistrement incomplet ignoré en fin de " + logPath);
+            log.truncate(complete);
+        }
+        if (table.coveredLogSize() != complete) {
+            table.clear();
+            replay(complete);
+        }
+        this.logSize = complete;
+    }
+
+    public Path getLogPath() {
+        return logPath;
+    }
+
+    private void replay(long complete) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BATCH * RECORD_SIZE);
+        long position = 0;
+        while (position < complete) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), complete - position));
+            while (buffer.hasRemaining()) {
+                if (log.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Fin de journal inattendue dans " + logPath);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                long recordPosition = position + buffer.position();
+                ChunkId hash = ChunkId.readFrom(buffer);
+                PackLocation location = new PackLocation(buffer.getInt(), buffer.getLong(), buffer.getInt());
+                int originalSize = buffer.getInt();
+                buffer.position(buffer.position() + 33);
+                // Le premier enregistrement d'une empreinte l'emporte
+                table.putIfAbsent(hash, location, originalSize, recordPosition);
+            }
+            position += buffer.limit();
+        }
+    }
+
+    /**
+     * Les entrées retournées n'ont pas d'empreinte de vérification.
+     */
+    @Override
+    public Map<ChunkId, ChunkRecord> lookup(Collection<ChunkId> hashes) {
+        Map<ChunkId, ChunkRecord> records = new HashMap<>();
+        for (ChunkId hash : hashes) {
+            OffHeapChunkTable.Entry entry = table.get(hash);
+            if (entry != null) {
+                records.put(hash, new ChunkRecord(hash, entry.location(), entry.originalSize(), null));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Une lecture positionnelle du journal par chunk connu.
+     */
+    @Override
+    public Map<ChunkId, byte[]> verifyDigests(Collection<ChunkId> hashes) {
+        Map<ChunkId, byte[]> digests = new HashMap<>();
+        try {
+            for (ChunkId hash : hashes) {
+                OffHeapChunkTable.Entry entry = table.get(hash);
+                byte[] digest = entry != null ? readDigest(entry.recordPosition()) : null;
+                if (digest != null) {
+                    digests.put(hash, digest);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erreur de lecture de " + logPath, e);
+        }
+        return digests;
+    }
+
+    /**
+     * Deux threads peuvent journaliser le même nouveau chunk : seul le premier à l'insérer dans
+     * la table le reçoit comme ajouté. À la relecture, c'est le premier enregistrement du journal
+     * qui l'emporte, éventuellement l'autre copie : les deux emplacements ont le même contenu.
+     */
+    @Override
+    public Set<ChunkId> insertIfAbsent(List<ChunkRecord> records) {
+        Set<ChunkId> candidates = new HashSet<>();
+        List<ChunkRecord> toAppend = new ArrayList<>();
+        for (ChunkRecord record : records) {
+            if (table.get(record.hash()) == null && candidates.add(record.hash())) {
+                toAppend.add(record);
+            }
+        }
+        Set<ChunkId> inserted = new LinkedHashSet<>();
+        if (toAppend.isEmpty()) {
+            return inserted;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(toAppend.size() * RECORD_SIZE);
+        for (ChunkRecord record : toAppend) {
+            record.hash().writeTo(buffer);
+            buffer.putInt(record.location().packId())
+                    .putLong(record.location().offset())
+                    .putInt(record.location().length())
+                    .putInt(record.originalSize());
+            byte[] digest = record.verifyDigest();
+            buffer.put((byte) (digest != null ? 1 : 0)).put(digest != null ? digest : new byte[32]);
+        }
+        buffer.flip();
+        long start;
+        appendLock.lock();
+        try {
+            start = logSize;
+            long position = start;
+            while (buffer.hasRemaining()) {
+                position += log.write(buffer, position);
+            }
+            logSize = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erreur d'écriture dans " + logPath, e);
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            // Hors du verrou : les ajouts concurrents partagent souvent la même mise sur disque
+            log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erreur lors de la mise sur disque de " + logPath, e);
+        }
+
+        // Visible dans la table seulement une fois durable dans le journal : une référence
+        // file_chunks validée ensuite ne peut pas désigner un enregistrement perdu
+        long recordPosition = start;
+        for (ChunkRecord record : toAppend) {
+            if (table.putIfAbsent(record.hash(), record.location(), record.originalSize(), recordPosition)) {
+                inserted.add(record.hash());
+            }
+            recordPosition += RECORD_SIZE;
+        }
+        return inserted;
+    }
+
+    @Override
+    public long size() {
+        return table.size();
+    }
+
+    @Override
+    public void forEach(Consumer<ChunkRecord> action) {
+        List<ChunkRecord> snapshot = new ArrayList<>();
+        table.forEach(entry -> snapshot.add(new ChunkRecord(entry.hash(), entry.location(), entry.originalSize(), null)));
+        snapshot.forEach(action);
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    /**
+     * Force le journal sur disque.
+     */
+    public void sync() throws IOException {
+        log.force(false);
+    }
+
+    /**
+     * Le journal est forcé avant que la table ne soit marquée à jour : une table propre ne
+     * référence jamais un enregistrement perdu.
+     */
+    @Override
+    public void close() {
+        try {
+            sync();
+            table.close(logSize);
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la fermeture de " + logPath + " : " + e.getMessage());
+        }
+    }
+
+    private byte[] readDigest(long recordPosition) throws IOException {
+        ByteBuffer digest = ByteBuffer.allocate(33);
+        long position = recordPosition + DIGEST_OFFSET;
+        while (digest.hasRemaining()) {
+            if (log.read(digest, position + digest.position()) < 0) {
+                throw new IOException("Fin de journal inattendue dans " + logPath);
+            }
+        }
+        if (digest.get(0) == 0) {
+            return null;
+        }
+        return Arrays.copyOfRange(digest.array(), 1, 33);
+    }
+}
@@ -0,0 +1,438 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.DeduplicationStats;
+import org.hetic.models.FileCatalogEntry;
+import org.hetic.models.PendingChunk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Recettes, catalogue et métadonnées sans base de données : un journal à ajout seul
+ * ({@code recipes.log}, à côté des packs) d'enregistrements {@code [type][longueur][crc32][contenu]},
+ * rejoué en mémoire à l'ouverture. Chaque écriture est forcée sur disque avant de rendre la main ;
+ * un enregistrement incomplet ou corrompu en fin de journal (arrêt pendant une écriture) est
+ * ignoré et tronqué. Le journal étant rejoué dans l'ordre, un fichier n'entre au catalogue
+ * qu'après ses références, comme avec PostgreSQL.
+ * <p>
+ * Quand les références oubliées (fichiers ré-ingérés ou supprimés) dépassent les références
+ * vivantes, le journal est réécrit à l'ouverture à partir de l'état rejoué, dans un fichier
+ * temporaire forcé sur disque puis renommé.
+ */
+public class EmbeddedRecipeStore implements RecipeStore {
+    public static final String LOG_FILE_NAME = "recipes.log";
+    private static final int HEADER_SIZE = 1 + Integer.BYTES + Integer.BYTES;
+    private static final byte REFERENCES = 1;
+    private static final byte FORGET = 2;
+    private static final byte CATALOG = 3;
+    private static final byte META = 4;
+    private static final byte DICTIONARY = 5;
+    // En dessous, réécrire le journal ne vaut pas le temps d'ouverture
+    private static final long MIN_COMPACTION_REFERENCES = 100_000;
+
+    private final Path logPath;
+    private final FileChannel log;
+    private long logSize;
+    // État rejoué, protégé par le moniteur de l'instance ; fichiers dans l'ordre d'ingestion
+    private final Map<String, TreeMap<Integer, ChunkId>> files = new LinkedHashMap<>();
+    private final Map<String, FileCatalogEntry> catalog = new HashMap<>();
+    private final Map<String, String> meta = new HashMap<>();
+    private final List<StoredDictionary> dictionaries = new ArrayList<>();
+    private long loggedReferences;
+
+    public EmbeddedRecipeStore(Path directory) throws IOException {
+        this.logPath = directory.resolve(LOG_FILE_NAME);
+        FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        long complete = replay(channel, size);
+        if (complete != size) {
+            System.err.println("Enregistrement incomplet ignoré en fin de " + logPath);
+            channel.truncate(complete);
+            channel.force(false);
+        }
+        if (loggedReferences > MIN_COMPACTION_REFERENCES && loggedReferences > 2 * liveReferences()) {
+            channel.close();
+            compact();
+            channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            complete = channel.size();
+        }
+        this.log = channel;
+        this.logSize = complete;
+    }
+
+    public Path getLogPath() {
+        return logPath;
+    }
+
+    /**
+     * @return la longueur de la partie valide du journal
+     */
+    private long replay(FileChannel channel, long size) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16));
+        CRC32 crc = new CRC32();
+        long position = 0;
+        while (position + HEADER_SIZE <= size) {
+            byte type = in.readByte();
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            byte[] content = new byte[length];
+            in.readFully(content);
+            crc.reset();
+            crc.update(content);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(type, new DataInputStream(new ByteArrayInputStream(content)));
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private void apply(byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case REFERENCES -> {
+                String filename = in.readUTF();
+                int count = in.readInt();
+                TreeMap<Integer, ChunkId> chunks = files.computeIfAbsent(filename, name -> new TreeMap<>());
+                byte[] hash = new byte[ChunkId.BYTES];
+                for (int i = 0; i < count; i++) {
+                    int chunkNumber = in.readInt();
+                    in.readFully(hash);
+                    chunks.put(chunkNumber, ChunkId.fromBytes(hash));
+                }
+                loggedReferences += count;
+            }
+            case FORGET -> applyForget(in.readUTF(), in.readInt());
+            case CATALOG -> {
+                String filename = in.readUTF();
+                long size = in.readLong();
+                long modifiedTime = in.readLong();
+                int digestLength = in.readInt();
+                catalog.put(filename, new FileCatalogEntry(filename, size, modifiedTime,
+                        digestLength < 0 ? null : in.readNBytes(digestLength)));
+            }
+            case META -> meta.put(in.readUTF(), in.readUTF());
+            case DICTIONARY -> {
+                int id = in.readInt();
+                String fileType = in.readUTF();
+                dictionaries.add(new StoredDictionary(id, fileType, in.readNBytes(in.readInt())));
+            }
+            default -> throw new IOException("Type d'enregistrement inconnu " + type + " dans " + logPath);
+        }
+    }
+
+    private void applyForget(String filename, int fromChunkNumber) {
+        TreeMap<Integer, ChunkId> chunks = files.get(filename);
+        if (chunks != null) {
+            chunks.tailMap(fromChunkNumber, true).clear();
+            if (chunks.isEmpty()) {
+                files.remove(filename);
+            }
+        }
+        catalog.remove(filename);
+    }
+
+    private long liveReferences() {
+        long live = 0;
+        for (TreeMap<Integer, ChunkId> chunks : files.values()) {
+            live += chunks.size();
+        }
+        return live;
+    }
+
+    /**
+     * Réécrit le journal avec le seul état courant.
+     */
+    private void compact() throws IOException {
+        Path temporary = logPath.resolveSibling(LOG_FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, String> entry : meta.entrySet()) {
+                writeFully(channel, metaRecord(entry.getKey(), entry.getValue()));
+            }
+            for (StoredDictionary dictionary : dictionaries) {
+                writeFully(channel, dictionaryRecord(dictionary));
+            }
+            for (Map.Entry<String, TreeMap<Integer, ChunkId>> file : files.entrySet()) {
+                writeFully(channel, referencesRecord(file.getKey(), file.getValue()));
+            }
+            for (FileCatalogEntry entry : catalog.values()) {
+                writeFully(channel, catalogRecord(entry));
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, logPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        System.out.printf("Journal %s compacté : %d références vivantes sur %d%n", logPath, liveReferences(),
+                loggedReferences);
+        loggedReferences = liveReferences();
+    }
+
+    /**
+     * Le lot est vérifié en entier avant d'être journalisé : un conflit n'en écrit aucune partie.
+     */
+    @Override
+    public void addReferences(List<PendingChunk> batch) {
+        Map<String, TreeMap<Integer, ChunkId>> byFile = new LinkedHashMap<>();
+        for (PendingChunk chunk : batch) {
+            ChunkId previous = byFile.computeIfAbsent(chunk.filename(), name -> new TreeMap<>())
+                    .put(chunk.chunkNumber(), chunk.hash());
+            checkReference(chunk, previous);
+        }
+        List<ByteBuffer> records = new ArrayList<>(byFile.size());
+        for (Map.Entry<String, TreeMap<Integer, ChunkId>> file : byFile.entrySet()) {
+            records.add(referencesRecord(file.getKey(), file.getValue()));
+        }
+        synchronized (this) {
+            for (PendingChunk chunk : batch) {
+                TreeMap<Integer, ChunkId> existing = files.get(chunk.filename());
+                checkReference(chunk, existing != null ? existing.get(chunk.chunkNumber()) : null);
+            }
+            append(records);
+            for (Map.Entry<String, TreeMap<Integer, ChunkId>> file : byFile.entrySet()) {
+                files.computeIfAbsent(file.getKey(), name -> new TreeMap<>()).putAll(file.getValue());
+                loggedReferences += file.getValue().size();
+            }
+        }
+        sync();
+    }
+
+    private static void checkReference(PendingChunk chunk, ChunkId existing) {
+        if (existing != null && !existing.equals(chunk.hash())) {
+            throw new IllegalStateException("Le chunk " + chunk.chunkNumber() + " de " + chunk.filename()
+                    + " est déjà référencé avec un autre contenu");
+        }
+    }
+
+    @Override
+    public synchronized List<ChunkId> fileChunks(String filename) {
+        TreeMap<Integer, ChunkId> chunks = files.get(filename);
+        if (chunks == null) {
+            return List.of();
+        }
+        List<ChunkId> hashes = new ArrayList<>(chunks.size());
+        for (Map.Entry<Integer, ChunkId> chunk : chunks.entrySet()) {
+            if (chunk.getKey() != hashes.size()) {
+                return List.of();
+            }
+            hashes.add(chunk.getValue());
+        }
+        return hashes;
+    }
+
+    @Override
+    public synchronized boolean containsFile(String filename) {
+        return files.containsKey(filename);
+    }
+
+    @Override
+    public synchronized Map<String, Integer> listFiles() {
+        Map<String, Integer> list = new LinkedHashMap<>();
+        files.forEach((filename, chunks) -> list.put(filename, chunks.size()));
+        return list;
+    }
+
+    @Override
+    public void forgetFile(String filename, int fromChunkNumber) {
+        ByteBuffer record = record(FORGET, out -> {
+            out.writeUTF(filename);
+            out.writeInt(fromChunkNumber);
+        });
+        synchronized (this) {
+            append(List.of(record));
+            applyForget(filename, fromChunkNumber);
+        }
+        sync();
+    }
+
+    @Override
+    public synchronized Map<String, FileCatalogEntry> loadCatalog() {
+        return new HashMap<>(catalog);
+    }
+
+    @Override
+    public void recordFile(FileCatalogEntry entry) {
+        ByteBuffer record = catalogRecord(entry);
+        synchronized (this) {
+            append(List.of(record));
+            catalog.put(entry.filename(), entry);
+        }
+        sync();
+    }
+
+    @Override
+    public synchronized String getMeta(String key) {
+        return meta.get(key);
+    }
+
+    @Override
+    public void putMeta(String key, String value) {
+        synchronized (this) {
+            if (value.equals(meta.get(key))) {
+                return;
+            }
+            append(List.of(metaRecord(key, value)));
+            meta.put(key, value);
+        }
+        sync();
+    }
+
+    /**
+     * Les dictionnaires ne sont jamais supprimés : un chunk qui en référence un doit rester lisible.
+     */
+    @Override
+    public synchronized List<StoredDictionary> loadDictionaries() {
+        return List.copyOf(dictionaries);
+    }
+
+    @Override
+    public int saveDictionary(String fileType, byte[] content) {
+        StoredDictionary dictionary;
+        synchronized (this) {
+            dictionary = new StoredDictionary(dictionaries.size() + 1, fileType, content);
+            append(List.of(dictionaryRecord(dictionary)));
+            dictionaries.add(dictionary);
+        }
+        sync();
+        return dictionary.id();
+    }
+
+    @Override
+    public synchronized DeduplicationStats referenceStats() {
+        Map<ChunkId, Integer> referenceCounts = new HashMap<>();
+        long totalChunks = 0;
+        for (TreeMap<Integer, ChunkId> chunks : files.values()) {
+            for (ChunkId hash : chunks.values()) {
+                referenceCounts.merge(hash, 1, Integer::sum);
+            }
+            totalChunks += chunks.size();
+        }
+        long uniqueChunks = referenceCounts.size();
+        long duplicateChunks = referenceCounts.values().stream().filter(count -> count > 1).count();
+        double ratio = totalChunks > 0
+                ? Math.round((double) (totalChunks - uniqueChunks) / totalChunks * 100 * 100) / 100.0
+                : 0.0;
+        return new DeduplicationStats(totalChunks, uniqueChunks, duplicateChunks, ratio);
+    }
+
+    /**
+     * Force le journal sur disque.
+     */
+    public void sync() {
+        try {
+            // Hors du moniteur : les écritures concurrentes partagent souvent la même mise sur disque
+            log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erreur lors de la mise sur disque de " + logPath, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!log.isOpen()) {
+            return;
+        }
+        try {
+            log.force(false);
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la fermeture de " + logPath + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appelé sous le moniteur de l'instance : les enregistrements sont appliqués dans l'ordre du journal.
+     */
+    private void append(List<ByteBuffer> records) {
+        try {
+            long position = logSize;
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) {
+                    position += log.write(record, position);
+                }
+            }
+            logSize = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erreur d'écriture dans " + logPath, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer record) throws IOException {
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private static ByteBuffer referencesRecord(String filename, SortedMap<Integer, ChunkId> chunks) {
+        return record(REFERENCES, out -> {
+            out.writeUTF(filename);
+            out.writeInt(chunks.size());
+            for (Map.Entry<Integer, ChunkId> chunk : chunks.entrySet()) {
+                out.writeInt(chunk.getKey());
+                out.write(chunk.getValue().toBytes());
+            }
+        });
+    }
+
+    private static ByteBuffer catalogRecord(FileCatalogEntry entry) {
+        return record(CATALOG, out -> {
+            out.writeUTF(entry.filename());
+            out.writeLong(entry.size());
+            out.writeLong(entry.modifiedTime());
+            out.writeInt(entry.digest() != null ? entry.digest().length : -1);
+            if (entry.digest() != null) {
+                out.write(entry.digest());
+            }
+        });
+    }
+
+    private static ByteBuffer metaRecord(String key, String value) {
+        return record(META, out -> {
+            out.writeUTF(key);
+            out.writeUTF(value);
+        });
+    }
+
+    private static ByteBuffer dictionaryRecord(StoredDictionary dictionary) {
+        return record(DICTIONARY, out -> {
+            out.writeInt(dictionary.id());
+            out.writeUTF(dictionary.fileType());
+            out.writeInt(dictionary.content().length);
+            out.write(dictionary.content());
+        });
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static ByteBuffer record(byte type, RecordWriter writer) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            writer.write(new DataOutputStream(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content.toByteArray());
+        return ByteBuffer.allocate(HEADER_SIZE + content.size())
+                .put(type)
+                .putInt(content.size())
+                .putInt((int) crc.getValue())
+                .put(content.toByteArray())
+                .flip();
+    }
+}
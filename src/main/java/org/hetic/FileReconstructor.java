@@ -1,20 +1,63 @@
 package org.hetic;
 
+import org.hetic.models.ChunkCacheStats;
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkMetadata;
+import org.hetic.models.PackLocation;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-
+import java.util.concurrent.*;
+
+/**
+ * Restauration des fichiers : les chunks sont lus et décodés (décompressés) en parallèle
+ * par le système de stockage, au plus {@code prefetch} chunks en avance, puis écrits
+ * directement à leur position dans le fichier de sortie. Les chunks décodés passent par un
+ * {@link ChunkCache} commun à toutes les restaurations : les chunks partagés par de nombreux
+ * fichiers ne sont lus et décompressés qu'une fois lors d'une restauration en masse.
+ */
 public class FileReconstructor {
     private final SQLChunkStorageSystem deduplicationSystem;
+    private final int parallelism;
+    private final int prefetch;
+    private final ChunkCache chunkCache;
     private static final String OUTPUT_DIR = "reconstructed";
 
     public FileReconstructor(SQLChunkStorageSystem deduplicationSystem) {
+        this(deduplicationSystem, Runtime.getRuntime().availableProcessors(),
+                4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism nombre de threads de lecture/décompression
+     * @param prefetch    nombre maximal de chunks lus en avance (mémoire bornée)
+     */
+    public FileReconstructor(SQLChunkStorageSystem deduplicationSystem, int parallelism, int prefetch) {
+        this(deduplicationSystem, parallelism, prefetch, new ChunkCache());
+    }
+
+    /**
+     * @param chunkCache cache des chunks décodés, éventuellement partagé avec d'autres lecteurs
+     */
+    public FileReconstructor(SQLChunkStorageSystem deduplicationSystem, int parallelism, int prefetch,
+                             ChunkCache chunkCache) {
         this.deduplicationSystem = deduplicationSystem;
+        this.parallelism = Math.max(1, parallelism);
+        this.prefetch = Math.max(this.parallelism, prefetch);
+        this.chunkCache = chunkCache;
         createOutputDirectory();
     }
 
+    public ChunkCacheStats getChunkCacheStats() {
+        return chunkCache.getStats();
+    }
+
     private void createOutputDirectory() {
         try {
             Files.createDirectories(Paths.get(OUTPUT_DIR));
@@ -24,64 +67,47 @@ public class FileReconstructor {
     }
 
     public void listAvailableFiles() {
-        try (Connection conn = deduplicationSystem.getConnection()) {
-            try (Statement stmt = conn.createStatement()) {
-                ResultSet rs = stmt.executeQuery("""
-                    SELECT DISTINCT 
-                           filename as original_filename,
-                           COUNT(chunk_number) as chunks,
-                           MIN(created_at) as created
-                    FROM file_chunks fc
-                    JOIN chunks c ON fc.chunk_hash = c.chunk_hash
-                    GROUP BY filename
-                    ORDER BY created
-                """);
-
-                System.out.println("\nFichiers disponibles pour reconstruction :");
-                System.out.println("----------------------------------------");
-                while (rs.next()) {
-                    System.out.printf("Fichier: %-30s | Chunks: %d | Créé le: %s%n",
-                        rs.getString("original_filename"),
-                        rs.getInt("chunks"),
-                        rs.getTimestamp("created").toString()
-                    );
-                }
-                System.out.println("----------------------------------------\n");
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException("Erreur lors de la liste des fichiers disponibles", e);
-        }
+        System.out.println("\nFichiers disponibles pour reconstruction :");
+        System.out.println("----------------------------------------");
+        deduplicationSystem.listFiles().forEach((filename, chunks) ->
+            System.out.printf("Fichier: %-30s | Chunks: %d%n", filename, chunks));
+        System.out.println("----------------------------------------\n");
     }
 
-    private List<ChunkInfo> getFileChunks(Connection conn, String filename) throws SQLException {
+    private List<ChunkInfo> getFileChunks(String filename) {
         List<ChunkInfo> chunks = new ArrayList<>();
-
-        try (PreparedStatement stmt = conn.prepareStatement("""
-            SELECT fc.chunk_number, c.chunk_hash, c.file_path
-            FROM file_chunks fc
-            JOIN chunks c ON fc.chunk_hash = c.chunk_hash
-            WHERE fc.filename = ?
-            ORDER BY fc.chunk_number
-        """)) {
-            stmt.setString(1, filename);
-
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                chunks.add(new ChunkInfo(
-                    rs.getString("chunk_hash"),
-                    rs.getString("file_path"),
-                    rs.getInt("chunk_number")
-                ));
-            }
+        long fileOffset = 0;
+        for (ChunkMetadata metadata : deduplicationSystem.getFileChunks(filename)) {
+            int size = Math.toIntExact(metadata.getSize());
+            chunks.add(new ChunkInfo(metadata.getId(), metadata.getPackLocation(), chunks.size(), fileOffset, size));
+            fileOffset += size;
         }
-
         return chunks;
     }
 
+    /**
+     * Accès direct au contenu d'un fichier (aperçu, restauration partielle) : seuls les chunks
+     * lus sont décodés.
+     */
+    public ChunkedFileChannel openFile(String filename) {
+        return ChunkedFileChannel.open(deduplicationSystem, filename, chunkCache);
+    }
+
+    /**
+     * Lit la plage {@code [offset, offset + length)} d'un fichier, tronquée à la fin du fichier.
+     */
+    public byte[] readRange(String filename, long offset, int length) {
+        try (ChunkedFileChannel channel = openFile(filename)) {
+            return channel.read(offset, length);
+        } catch (IOException e) {
+            throw new RuntimeException("Erreur lors de la lecture de " + filename + " à " + offset, e);
+        }
+    }
+
     public void reconstructFile(String filename) {
-        try (Connection conn = deduplicationSystem.getConnection()) {
+        try {
             // 1. Récupérer tous les chunks pour ce fichier, ordonnés par numéro
-            List<ChunkInfo> chunks = getFileChunks(conn, filename);
+            List<ChunkInfo> chunks = getFileChunks(filename);
 
             if (chunks.isEmpty()) {
                 System.out.println("Recherche des chunks pour : " + filename);
@@ -90,33 +116,103 @@ public class FileReconstructor {
 
             // 2. Créer le fichier de sortie
             Path outputPath = Paths.get(OUTPUT_DIR, "reconstructed_" + filename);
-            try (OutputStream outputStream = Files.newOutputStream(outputPath)) {
+            // Nom relatif à la racine ingérée : les sous-dossiers sont recréés
+            Files.createDirectories(outputPath.getParent());
+            long startTime = System.nanoTime();
+            try (FileChannel output = FileChannel.open(outputPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
 
                 System.out.println("Reconstruction en cours...");
                 System.out.println("Nombre de chunks trouvés : " + chunks.size());
 
-                // 3. Pour chaque chunk
-                for (ChunkInfo chunk : chunks) {
-//                    System.out.printf("Traitement du chunk %d depuis %s%n",
-//                        chunk.number(), chunk.storagePath);
-                    // 4. Lire le chunk depuis le stockage
-                    Path chunkPath = Paths.get(chunk.storagePath);
-                    if (!Files.exists(chunkPath)) {
-                        throw new IOException("Chunk introuvable: " + chunkPath);
-                    }
+                // 3. Lire, décompresser et écrire les chunks en parallèle
+                writeChunks(chunks, output);
+            }
+
+            long elapsedMs = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+            ChunkInfo last = chunks.get(chunks.size() - 1);
+            long totalSize = last.fileOffset() + last.size();
+            System.out.printf("Fichier reconstruit avec succès: %s (%d ms, %.1f MB/s)%n",
+                    outputPath, elapsedMs, totalSize / 1024.0 / 1024.0 / (elapsedMs / 1000.0));
 
-                    byte[] chunkData = Files.readAllBytes(chunkPath);
+        } catch (IOException e) {
+            throw new RuntimeException("Erreur lors de la reconstruction du fichier: " + filename, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Reconstruction interrompue: " + filename, e);
+        }
+    }
 
-                    // 5. Écrire le chunk dans le fichier de sortie
-                    outputStream.write(chunkData);
+    /**
+     * Chaque chunk connaît sa position dans le fichier : les écritures positionnelles
+     * n'ont pas à attendre les chunks précédents. Un sémaphore borne les chunks en vol.
+     */
+    private void writeChunks(List<ChunkInfo> chunks, FileChannel output) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(prefetch);
+        Deque<Future<?>> pending = new ArrayDeque<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+            for (ChunkInfo chunk : chunks) {
+                inFlight.acquire();
+                try {
+                    pending.add(executor.submit(() -> {
+                        try {
+                            restoreChunk(chunk, output);
+                        } finally {
+                            inFlight.release();
+                        }
+                        return null;
+                    }));
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
                 }
+                failFast(pending);
             }
+            for (Future<?> future : pending) {
+                awaitChunk(future);
+            }
+        }
+    }
 
-            System.out.println("Fichier reconstruit avec succès: " + outputPath);
+    private void restoreChunk(ChunkInfo chunk, FileChannel output) throws IOException {
+        // 4. Lire le chunk depuis le cache, ou depuis son pack décodé par le système de stockage
+        byte[] chunkData = chunkCache.get(chunk.hash());
+        if (chunkData == null) {
+            chunkData = deduplicationSystem.readChunkFromStorage(chunk.location());
+            if (chunkData.length != chunk.size()) {
+                throw new IOException("Taille inattendue pour le chunk " + chunk.number() + " (" + chunk.hash()
+                        + "): " + chunkData.length + " au lieu de " + chunk.size());
+            }
+            chunkCache.put(chunk.hash(), chunkData);
+        }
 
-        } catch (SQLException | IOException e) {
-            throw new RuntimeException("Erreur lors de la reconstruction du fichier: " + filename, e);
+        // 5. Écrire le chunk à sa position dans le fichier de sortie
+        ByteBuffer source = ByteBuffer.wrap(chunkData);
+        long position = chunk.fileOffset();
+        while (source.hasRemaining()) {
+            position += output.write(source, position);
+        }
+    }
+
+    /**
+     * Interrompt la soumission dès qu'un chunk a échoué, sans attendre la fin du fichier.
+     */
+    private static void failFast(Deque<Future<?>> pending) throws IOException, InterruptedException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            awaitChunk(pending.pollFirst());
+        }
+    }
+
+    private static void awaitChunk(Future<?> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Erreur lors de la restauration d'un chunk", e.getCause());
         }
     }
-    private record ChunkInfo(String hash, String storagePath, int number) {}
+
+    private record ChunkInfo(ChunkId hash, PackLocation location, int number, long fileOffset, int size) {}
 }
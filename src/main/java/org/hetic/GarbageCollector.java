@@ -0,0 +1,338 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.GcStats;
+import org.hetic.models.PackLocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ramasse-miettes du dépôt, par marquage et balayage sur {@code file_chunks} :
+ * <ol>
+ *   <li>marquage : un chunk qu'aucun fichier ne référence reçoit une date {@code orphaned_at},
+ *   qu'il perd s'il est de nouveau référencé ;</li>
+ *   <li>balayage : les chunks orphelins depuis plus que le délai de grâce sont supprimés par
+ *   petits lots, chacun dans une transaction courte ;</li>
+ *   <li>compactage : un pack fermé dont moins de la moitié des octets sont encore référencés voit
+ *   ses chunks vivants recopiés dans le pack courant, puis il est supprimé une fois vide depuis
+ *   le délai de grâce (le temps que les lectures commencées avec l'ancien emplacement se terminent).</li>
+ * </ol>
+ * Il tourne pendant l'ingestion sans la bloquer : les lots de balayage ignorent ({@code SKIP LOCKED})
+ * les chunks qu'une transaction d'ingestion est en train de référencer. Un chunk reconnu comme
+ * doublon perd sa date {@code orphaned_at} au moment de la recherche ({@link ChunkIndex#retain}) :
+ * le délai de grâce ne recommence qu'au marquage suivant et couvre donc l'intervalle jusqu'à
+ * l'écriture des références, et un chunk supprimé avant la recherche est simplement réécrit.
+ * Seul un lot resté plus longtemps que le délai de grâce entre la recherche et ses références
+ * échoue sur la clé étrangère ; son fichier n'entre pas au catalogue et sera ré-ingéré.
+ * Il travaille directement sur la table {@code chunks} et demande donc l'index
+ * {@link PostgresChunkIndex}.
+ */
+public class GarbageCollector implements AutoCloseable {
+    public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofMinutes(10);
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    private static final int BATCH_SIZE = 1000;
+
+    private final SQLChunkStorageSystem storageSystem;
+    private final long graceMillis;
+    private final double compactionThreshold;
+    // Packs vides (numéro → date en ms à laquelle ils l'ont été vus pour la première fois)
+    private final Map<Integer, Long> emptyPacks = new HashMap<>();
+    private final Object collecting = new Object();
+    private ScheduledExecutorService scheduler;
+
+    public GarbageCollector(SQLChunkStorageSystem storageSystem) {
+        this(storageSystem, DEFAULT_GRACE_PERIOD, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param compactionThreshold part d'octets vivants en dessous de laquelle un pack est compacté
+     */
+    public GarbageCollector(SQLChunkStorageSystem storageSystem, Duration gracePeriod, double compactionThreshold) {
+        if (gracePeriod.isNegative() || compactionThreshold < 0 || compactionThreshold > 1) {
+            throw new IllegalArgumentException("Délai de grâce ou seuil de compactage invalide");
+        }
+        if (!(storageSystem.getChunkIndex() instanceof PostgresChunkIndex)) {
+            throw new IllegalStateException("Le ramasse-miettes nécessite l'index de chunks PostgreSQL");
+        }
+        this.storageSystem = storageSystem;
+        this.graceMillis = gracePeriod.toMillis();
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Lance un cycle complet toutes les {@code period}, sur un thread dédié.
+     */
+    public synchronized void start(Duration period) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Le ramasse-miettes est déjà démarré");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chunk-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                System.out.println(collect());
+            } catch (RuntimeException e) {
+                System.err.println("Erreur du ramasse-miettes : " + e.getMessage());
+            }
+        }, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Exécute un cycle complet : marquage, balayage, compactage et suppression des packs vides.
+     */
+    public GcStats collect() {
+        synchronized (collecting) {
+            long startTime = System.currentTimeMillis();
+            try (Connection conn = storageSystem.getConnection()) {
+                long marked = markOrphans(conn);
+                long[] swept = sweep(conn);
+                long[] compacted = compactPacks(conn);
+                long deleted = deleteEmptyPacks(conn);
+                return new GcStats(marked, swept[0], swept[1], compacted[1], compacted[0], deleted,
+                        System.currentTimeMillis() - startTime);
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException("Erreur du ramasse-miettes", e);
+            }
+        }
+    }
+
+    private long markOrphans(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("""
+                UPDATE chunks c SET orphaned_at = NULL
+                WHERE c.orphaned_at IS NOT NULL
+                  AND EXISTS (SELECT 1 FROM file_chunks fc WHERE fc.chunk_hash = c.chunk_hash)
+            """);
+            return stmt.executeUpdate("""
+                UPDATE chunks c SET orphaned_at = CURRENT_TIMESTAMP
+                WHERE c.orphaned_at IS NULL
+                  AND NOT EXISTS (SELECT 1 FROM file_chunks fc WHERE fc.chunk_hash = c.chunk_hash)
+            """);
+        }
+    }
+
+    /**
+     * @return {chunks supprimés, octets stockés libérés}
+     */
+    private long[] sweep(Connection conn) throws SQLException {
+        long deleted = 0;
+        long releasedBytes = 0;
+        conn.setAutoCommit(false);
+        try (PreparedStatement select = conn.prepareStatement("""
+                 SELECT chunk_hash FROM chunks
+                 WHERE orphaned_at <= CURRENT_TIMESTAMP - make_interval(secs => ?)
+                 LIMIT ? FOR UPDATE SKIP LOCKED
+                 """);
+             PreparedStatement delete = conn.prepareStatement("""
+                 DELETE FROM chunks c
+                 WHERE c.chunk_hash = ANY(?)
+                   AND NOT EXISTS (SELECT 1 FROM file_chunks fc WHERE fc.chunk_hash = c.chunk_hash)
+                 RETURNING c.chunk_hash, c.stored_length
+                 """);
+             PreparedStatement revive = conn.prepareStatement("""
+                 UPDATE chunks c SET orphaned_at = NULL
+                 WHERE c.chunk_hash = ANY(?)
+                   AND EXISTS (SELECT 1 FROM file_chunks fc WHERE fc.chunk_hash = c.chunk_hash)
+                 """)) {
+            while (true) {
+                List<ChunkId> candidates = new ArrayList<>();
+                List<ChunkId> removed = new ArrayList<>();
+                try {
+                    select.setDouble(1, graceMillis / 1000.0);
+                    select.setInt(2, BATCH_SIZE);
+                    ResultSet rs = select.executeQuery();
+                    while (rs.next()) {
+                        candidates.add(ChunkId.fromBytes(rs.getBytes(1)));
+                    }
+                    if (candidates.isEmpty()) {
+                        conn.commit();
+                        break;
+                    }
+
+                    // Les candidats sont verrouillés : un fichier ne peut plus les référencer avant le commit
+                    Array hashes = SQLChunkStorageSystem.toByteaArray(conn, candidates);
+                    delete.setArray(1, hashes);
+                    rs = delete.executeQuery();
+                    while (rs.next()) {
+                        removed.add(ChunkId.fromBytes(rs.getBytes(1)));
+                        releasedBytes += rs.getInt(2) + PackFileStore.RECORD_HEADER_SIZE;
+                    }
+                    revive.setArray(1, hashes);
+                    revive.executeUpdate();
+                    hashes.free();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+
+                // Après le commit seulement, comme pour l'ajout
+                DedupIndexCache cache = storageSystem.getDedupCache();
+                for (ChunkId hash : removed) {
+                    cache.invalidate(hash);
+                }
+                deleted += removed.size();
+                if (candidates.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return new long[]{deleted, releasedBytes};
+    }
+
+    /**
+     * @return {packs compactés, chunks déplacés}
+     */
+    private long[] compactPacks(Connection conn) throws SQLException, IOException {
+        PackFileStore packStore = storageSystem.getPackStore();
+        Map<Integer, Long> liveBytes = new HashMap<>();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(
+                    "SELECT pack_id, SUM(stored_length) + COUNT(*) * " + PackFileStore.RECORD_HEADER_SIZE
+                            + " FROM chunks GROUP BY pack_id");
+            while (rs.next()) {
+                liveBytes.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+
+        long compacted = 0;
+        long moved = 0;
+        long now = System.currentTimeMillis();
+        int currentPackId = packStore.currentPackId();
+        for (int packId : packStore.packIds()) {
+            Path path = packStore.packPath(packId);
+            // Un pack récemment écrit peut encore recevoir les lignes d'une transaction d'ingestion en vol
+            if (packId >= currentPackId || emptyPacks.containsKey(packId)
+                    || now - Files.getLastModifiedTime(path).toMillis() < graceMillis) {
+                continue;
+            }
+            Long live = liveBytes.get(packId);
+            if (live == null) {
+                emptyPacks.put(packId, now);
+            } else if (live < Files.size(path) * compactionThreshold) {
+                moved += relocateChunks(conn, packId);
+                compacted++;
+                emptyPacks.put(packId, now);
+            }
+        }
+        return new long[]{compacted, moved};
+    }
+
+    /**
+     * Recopie les chunks vivants d'un pack dans le pack courant, puis les fait pointer vers leur
+     * nouvel emplacement. Les copies sont forcées sur disque avant le commit : l'ancien pack
+     * sera supprimé.
+     */
+    private long relocateChunks(Connection conn, int packId) throws SQLException, IOException {
+        PackFileStore packStore = storageSystem.getPackStore();
+        List<ChunkId> ids = new ArrayList<>();
+        List<PackLocation> locations = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT chunk_hash, pack_offset, stored_length FROM chunks WHERE pack_id = ?")) {
+            stmt.setInt(1, packId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                ids.add(ChunkId.fromBytes(rs.getBytes(1)));
+                locations.add(new PackLocation(packId, rs.getLong(2), rs.getInt(3)));
+            }
+        }
+
+        long moved = 0;
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            int to = Math.min(ids.size(), from + BATCH_SIZE);
+            List<PackLocation> copies = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                copies.add(packStore.append(ids.get(i), ByteBuffer.wrap(packStore.read(locations.get(i)))));
+            }
+            packStore.awaitDurable();
+
+            int[] updated;
+            conn.setAutoCommit(false);
+            try (PreparedStatement update = conn.prepareStatement("""
+                    UPDATE chunks SET pack_id = ?, pack_offset = ?
+                    WHERE chunk_hash = ? AND pack_id = ? AND pack_offset = ?
+                    """)) {
+                for (int i = from; i < to; i++) {
+                    PackLocation copy = copies.get(i - from);
+                    update.setInt(1, copy.packId());
+                    update.setLong(2, copy.offset());
+                    update.setBytes(3, ids.get(i).toBytes());
+                    update.setInt(4, packId);
+                    update.setLong(5, locations.get(i).offset());
+                    update.addBatch();
+                }
+                updated = update.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            DedupIndexCache cache = storageSystem.getDedupCache();
+            for (int i = from; i < to; i++) {
+                // Un chunk supprimé entre-temps n'a pas été mis à jour : sa copie reste inutilisée
+                if (updated[i - from] != 0 && cache.location(ids.get(i)) != null) {
+                    cache.markPresent(ids.get(i), copies.get(i - from));
+                }
+                moved += updated[i - from] != 0 ? 1 : 0;
+            }
+        }
+        return moved;
+    }
+
+    private long deleteEmptyPacks(Connection conn) throws SQLException, IOException {
+        long deleted = 0;
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stillUsed = conn.prepareStatement("SELECT EXISTS (SELECT 1 FROM chunks WHERE pack_id = ?)")) {
+            Iterator<Map.Entry<Integer, Long>> entries = emptyPacks.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Integer, Long> entry = entries.next();
+                if (now - entry.getValue() < graceMillis) {
+                    continue;
+                }
+                stillUsed.setInt(1, entry.getKey());
+                ResultSet rs = stillUsed.executeQuery();
+                rs.next();
+                if (!rs.getBoolean(1)) {
+                    storageSystem.getPackStore().deletePack(entry.getKey());
+                    deleted++;
+                }
+                entries.remove();
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,120 @@
+package org.hetic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Détection des frontières de chunks par hash roulant "Gear" (FastCDC).
+ * <p>
+ * Le hash est mis à jour par un décalage et une addition avec une table de 256 valeurs
+ * pré-calculées : aucune allocation, aucune multiplication polynomiale.
+ * Comme chaque octet est décalé hors des 64 bits après 64 positions, le hash ne dépend
+ * que des 64 derniers octets ; on peut donc sauter les octets situés avant
+ * {@code minChunkSize - 64} sans changer les frontières trouvées.
+ * <p>
+ * Les sémantiques min/masque/max de {@link ContentDefinedChunking} sont conservées :
+ * le masque garde le même nombre de bits (donc la même probabilité de coupure), mais
+ * appliqué aux bits de poids fort qui mélangent toute la fenêtre.
+ */
+public final class GearBoundaryDetector {
+    private static final int WINDOW = Long.SIZE;
+    private static final long[] GEAR = buildGearTable(0x3DA3358B4DC173L);
+
+    private final long mask;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+
+    GearBoundaryDetector(ContentDefinedChunking.ChunkParams params) {
+        this(params.mask, params.minChunkSize, params.maxChunkSize);
+    }
+
+    public GearBoundaryDetector(long mask, int minChunkSize, int maxChunkSize) {
+        if (minChunkSize <= 0 || maxChunkSize < minChunkSize) {
+            throw new IllegalArgumentException("Tailles de chunk invalides: min=" + minChunkSize + ", max=" + maxChunkSize);
+        }
+        this.mask = -1L << (WINDOW - Long.bitCount(mask));
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * Cherche la fin du chunk qui commence à {@code from}.
+     * L'appelant doit fournir au moins {@code maxChunkSize} octets, ou tout ce qui reste
+     * du fichier : dans ce dernier cas le reste entier est renvoyé s'il n'y a pas de coupure.
+     *
+     * @return la longueur du chunk
+     */
+    public int nextBoundary(byte[] data, int from, int to) {
+        int available = to - from;
+        if (available <= minChunkSize) {
+            return available;
+        }
+
+        int end = from + Math.min(available, maxChunkSize);
+        int minEnd = from + minChunkSize - 1;
+        int i = from + Math.max(0, minChunkSize - WINDOW);
+        long hash = 0;
+
+        for (; i < minEnd; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & mask) == 0) {
+                return i - from + 1;
+            }
+        }
+        return end - from;
+    }
+
+    /**
+     * Variante de {@link #nextBoundary(byte[], int, int)} pour un {@link ByteBuffer}
+     * (tas ou direct, y compris une projection mémoire). Les positions sont absolues
+     * et la position/limite du buffer ne sont pas modifiées.
+     */
+    public int nextBoundary(ByteBuffer data, int from, int to) {
+        if (data.hasArray()) {
+            int offset = data.arrayOffset();
+            return nextBoundary(data.array(), offset + from, offset + to);
+        }
+
+        int available = to - from;
+        if (available <= minChunkSize) {
+            return available;
+        }
+
+        int end = from + Math.min(available, maxChunkSize);
+        int minEnd = from + minChunkSize - 1;
+        int i = from + Math.max(0, minChunkSize - WINDOW);
+        long hash = 0;
+
+        for (; i < minEnd; i++) {
+            hash = (hash << 1) + GEAR[data.get(i) & 0xFF];
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data.get(i) & 0xFF];
+            if ((hash & mask) == 0) {
+                return i - from + 1;
+            }
+        }
+        return end - from;
+    }
+
+    // Table générée par SplitMix64 à partir d'une graine fixe : les frontières doivent
+    // rester identiques d'une exécution à l'autre pour que la déduplication fonctionne.
+    private static long[] buildGearTable(long seed) {
+        long[] table = new long[256];
+        long state = seed;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,645 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkMetadata;
+import org.hetic.models.FileCatalogEntry;
+import org.hetic.models.IngestStats;
+import org.hetic.models.PendingChunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Ingestion en pipeline : découverte des fichiers → découpage → empreinte → recherche de doublons
+ * → compression → persistance.
+ * <p>
+ * Chaque étape a son propre nombre de threads et lit une file bornée : quand une étape
+ * aval est saturée, l'étape amont bloque (backpressure), si bien que la mémoire reste
+ * bornée par la somme des capacités des files multipliée par la taille maximale d'un chunk.
+ * Les chunks déjà connus sautent l'étape de compression. La recherche de doublons et la
+ * persistance traitent les chunks par lots (un aller-retour SQL par lot), tous fichiers confondus.
+ * Un nouveau chunk découvert par plusieurs tâches à la fois n'est compressé et écrit que par
+ * celle qui le réserve ({@link ChunkClaims}) ; les autres n'écrivent que leur référence.
+ * L'écriture d'un lot (packs forcés sur disque, puis index et références) se fait sur un thread
+ * virtuel : le thread de persistance passe au lot suivant sans attendre le disque.
+ * <p>
+ * Sur un dépôt persistant, l'ingestion est incrémentale : un fichier dont la taille et la date de
+ * modification n'ont pas changé depuis le catalogue est ignoré sans être lu ; à taille égale, un
+ * fichier seulement « touché » est reconnu à son empreinte complète. Un fichier modifié est
+ * redécoupé et seuls ses nouveaux chunks sont stockés. Son entrée de catalogue n'est écrite
+ * qu'une fois tous ses chunks persistés.
+ * <p>
+ * Un fichier dont un chunk n'a pas pu être découpé, compressé ou persisté n'est pas compté comme
+ * ingéré : en fin d'ingestion, ses références déjà validées sont retirées, pour qu'aucune liste de
+ * chunks partielle ne se restaure tronquée sans erreur.
+ */
+public class IngestPipeline {
+    // Au-delà de ce seuil, le fichier est projeté en mémoire plutôt que lu en flux
+    private static final long MAPPING_THRESHOLD = 1024 * 1024;
+    private static final FileSource END_OF_FILES = new FileSource("", null, -1, null);
+    private static final ChunkTask END_OF_CHUNKS = new ChunkTask(null, -1, null);
+    // Chunks déjà stockés relus et rehashés avant de reprendre le découpage d'un fichier agrandi
+    private static final int SPOT_CHECKS = 8;
+    // Lots en cours d'écriture asynchrone par thread de persistance
+    private static final int IN_FLIGHT_BATCHES_PER_THREAD = 2;
+
+    /**
+     * Parallélisme par étape, capacité des files entre étapes et taille des lots SQL.
+     * La découverte des fichiers reste sur un seul thread (parcours de répertoire).
+     */
+    public record Config(
+        int chunkingThreads,
+        int hashingThreads,
+        int lookupThreads,
+        int compressionThreads,
+        int persistenceThreads,
+        int queueCapacity,
+        int batchSize
+    ) {
+        public Config {
+            if (chunkingThreads < 1 || hashingThreads < 1 || lookupThreads < 1
+                    || compressionThreads < 1 || persistenceThreads < 1 || queueCapacity < 1 || batchSize < 1) {
+                throw new IllegalArgumentException("Chaque étape doit avoir au moins un thread, une file et des lots non vides");
+            }
+        }
+
+        public static Config defaults() {
+            int cores = Runtime.getRuntime().availableProcessors();
+            // La compression domine le coût CPU ; les étapes SQL sont limitées par le pool de connexions
+            return new Config(
+                Math.max(1, cores / 8),
+                Math.max(1, cores / 4),
+                2,
+                Math.max(1, cores / 2),
+                6,
+                256,
+                128
+            );
+        }
+    }
+
+    private static final class ChunkTask {
+        final String fileName;
+        final int chunkNumber;
+        FileProgress file;
+        ByteBuffer data;
+        long originalSize;
+        ChunkId hash;
+        ByteBuffer encoded;
+        byte[] verifyDigest;
+
+        ChunkTask(String fileName, int chunkNumber, ByteBuffer data) {
+            this.fileName = fileName;
+            this.chunkNumber = chunkNumber;
+            this.data = data;
+            this.originalSize = data == null ? 0 : data.remaining();
+        }
+    }
+
+    /**
+     * Fichier à découper : soit un fichier du disque, soit un flux (corpus synthétique) de taille connue.
+     */
+    private record FileSource(String name, Path path, long size, Callable<InputStream> opener) {
+        static FileSource of(Path root, Path path) {
+            return new FileSource(fileNameOf(root, path), path, -1, null);
+        }
+    }
+
+    /**
+     * Frontière de chunk d'où reprendre le découpage d'un fichier : tout ce qui précède est inchangé.
+     */
+    private record ResumePoint(int chunkNumber, long offset) {
+        static final ResumePoint START = new ResumePoint(0, 0);
+    }
+
+    /**
+     * Suivi d'un fichier en ingestion incrémentale : le découpage compte pour un, chaque chunk
+     * en vol aussi. Celui qui ramène le compteur à zéro enregistre le fichier au catalogue.
+     */
+    private final class FileProgress {
+        // Sans le début du fichier, l'empreinte complète n'est pas calculable
+        final MessageDigest digest;
+        final AtomicInteger pending = new AtomicInteger(1);
+        final String fileName;
+        final long size;
+        final long modifiedTime;
+        volatile byte[] contentDigest;
+
+        FileProgress(String fileName, long size, long modifiedTime, boolean wholeFile) {
+            this.digest = wholeFile ? contentDigest() : null;
+            this.fileName = fileName;
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+        }
+
+        void release() {
+            if (pending.decrementAndGet() == 0) {
+                storageSystem.recordFile(new FileCatalogEntry(fileName, size, modifiedTime, contentDigest));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageWorker<T> {
+        void process(List<T> batch) throws Exception;
+    }
+
+    private final SQLChunkStorageSystem storageSystem;
+    private final ContentDefinedChunking chunker;
+    private final Config config;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong newChunks = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final Set<String> failedFiles = ConcurrentHashMap.newKeySet();
+
+    public IngestPipeline(SQLChunkStorageSystem storageSystem, ContentDefinedChunking chunker, Config config) {
+        this.storageSystem = storageSystem;
+        this.chunker = chunker;
+        this.config = config;
+    }
+
+    public IngestStats run(Path root) throws InterruptedException {
+        return run(sink -> {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.filter(Files::isRegularFile).forEach(file -> sink.accept(FileSource.of(root, file)));
+            } catch (IOException e) {
+                System.err.println("Erreur lors du parcours du dossier : " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Nom d'un fichier dans le dépôt (catalogue, {@code file_chunks}) : son chemin relatif à la
+     * racine ingérée, avec des {@code /}. Deux fichiers de même nom dans des dossiers différents
+     * ({@code 2024/db.dump}, {@code 2025/db.dump}) restent distincts.
+     */
+    public static String fileNameOf(Path root, Path file) {
+        Path relative = root.relativize(file);
+        // Racine réduite à un seul fichier
+        return (relative.toString().isEmpty() ? file.getFileName() : relative).toString().replace('\\', '/');
+    }
+
+    /**
+     * Ingère un corpus synthétique directement depuis ses flux, sans l'écrire sur disque.
+     */
+    public IngestStats run(SyntheticCorpus corpus) throws InterruptedException {
+        return run(sink -> {
+            for (SyntheticCorpus.CorpusFile file : corpus.files()) {
+                sink.accept(new FileSource(file.name(), null, file.size(), () -> corpus.open(file)));
+            }
+        });
+    }
+
+    private IngestStats run(Consumer<Consumer<FileSource>> discovery) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        Map<String, FileCatalogEntry> catalog = storageSystem.isPersistent() ? storageSystem.loadFileCatalog() : null;
+
+        BlockingQueue<FileSource> fileQueue = new ArrayBlockingQueue<>(config.queueCapacity());
+        BlockingQueue<ChunkTask> hashQueue = new ArrayBlockingQueue<>(config.queueCapacity());
+        BlockingQueue<ChunkTask> lookupQueue = new ArrayBlockingQueue<>(config.queueCapacity());
+        BlockingQueue<ChunkTask> compressionQueue = new ArrayBlockingQueue<>(config.queueCapacity());
+        BlockingQueue<ChunkTask> persistenceQueue = new ArrayBlockingQueue<>(config.queueCapacity());
+
+        int totalThreads = 1 + config.chunkingThreads() + config.hashingThreads() + config.lookupThreads()
+                + config.compressionThreads() + config.persistenceThreads();
+        ExecutorService executor = Executors.newFixedThreadPool(totalThreads, namedThreads());
+        CountDownLatch finished = new CountDownLatch(1);
+
+        try {
+            executor.submit(() -> {
+                try {
+                    discovery.accept(file -> put(fileQueue, file));
+                } finally {
+                    sendEnd(fileQueue, END_OF_FILES, config.chunkingThreads());
+                }
+            });
+
+            // Un échec du découpage est enregistré par chunkFile : avant, le fichier n'a pas été touché
+            startStage(executor, config.chunkingThreads(), 1, fileQueue, END_OF_FILES, source -> null,
+                batch -> ingestFile(batch.get(0), catalog, hashQueue),
+                () -> sendEnd(hashQueue, END_OF_CHUNKS, config.hashingThreads()));
+
+            startStage(executor, config.hashingThreads(), 1, hashQueue, END_OF_CHUNKS, task -> task.fileName,
+                batch -> {
+                    ChunkTask task = batch.get(0);
+                    task.hash = storageSystem.hashChunk(task.data);
+                    put(lookupQueue, task);
+                },
+                () -> sendEnd(lookupQueue, END_OF_CHUNKS, config.lookupThreads()));
+
+            startStage(executor, config.lookupThreads(), config.batchSize(), lookupQueue, END_OF_CHUNKS,
+                task -> task.fileName,
+                batch -> {
+                    List<ChunkId> hashes = new ArrayList<>(batch.size());
+                    for (ChunkTask task : batch) {
+                        hashes.add(task.hash);
+                    }
+                    Set<ChunkId> existing = storageSystem.findExistingChunks(hashes);
+                    if (storageSystem.requiresMatchVerification()) {
+                        confirmMatches(batch, existing);
+                    }
+                    for (ChunkTask task : batch) {
+                        if (existing.contains(task.hash)) {
+                            task.data = null; // Le chunk est connu : rien à compresser ni à écrire
+                            put(persistenceQueue, task);
+                        } else if (storageSystem.getClaims().tryClaim(task.hash)) {
+                            put(compressionQueue, task);
+                        } else {
+                            // Déjà en cours d'écriture par une autre tâche : seule la référence est à écrire
+                            task.data = null;
+                            put(persistenceQueue, task);
+                        }
+                    }
+                },
+                () -> sendEnd(compressionQueue, END_OF_CHUNKS, config.compressionThreads()));
+
+            // Les doublons vont directement en persistance : la fin n'y est signalée
+            // qu'après la compression, elle-même terminée après la recherche
+            startStage(executor, config.compressionThreads(), 1, compressionQueue, END_OF_CHUNKS, task -> task.fileName,
+                batch -> {
+                    ChunkTask task = batch.get(0);
+                    try {
+                        task.encoded = storageSystem.encodeChunk(task.data, task.fileName);
+                        task.verifyDigest = storageSystem.verificationDigest(task.data);
+                    } catch (RuntimeException e) {
+                        storageSystem.getClaims().abandon(task.hash, e);
+                        throw e;
+                    }
+                    task.data = null;
+                    put(persistenceQueue, task);
+                },
+                () -> sendEnd(persistenceQueue, END_OF_CHUNKS, config.persistenceThreads()));
+
+            // Les lots sont écrits de façon asynchrone ; le nombre de lots dont les buffers encodés
+            // ne sont pas encore dans les packs borne la mémoire
+            Semaphore inFlight = new Semaphore(IN_FLIGHT_BATCHES_PER_THREAD * config.persistenceThreads());
+            Set<CompletableFuture<?>> committing = ConcurrentHashMap.newKeySet();
+            startStage(executor, config.persistenceThreads(), config.batchSize(), persistenceQueue, END_OF_CHUNKS,
+                task -> task.fileName,
+                batch -> {
+                    List<PendingChunk> pending = new ArrayList<>(batch.size());
+                    for (ChunkTask task : batch) {
+                        pending.add(new PendingChunk(task.hash, task.encoded, task.verifyDigest,
+                                task.originalSize, task.fileName, task.chunkNumber));
+                        if (task.encoded != null) {
+                            newChunks.incrementAndGet();
+                        }
+                    }
+                    inFlight.acquire();
+                    CompletableFuture<?> commit;
+                    try {
+                        commit = storageSystem.addEncodedChunksAsync(pending, () -> releaseEncoded(batch, inFlight))
+                                .whenComplete((metadata, error) -> completeBatch(batch, error));
+                    } catch (RuntimeException e) {
+                        releaseEncoded(batch, inFlight);
+                        throw e;
+                    }
+                    committing.add(commit);
+                    commit.whenComplete((metadata, error) -> committing.remove(commit));
+                },
+                () -> {
+                    // Fin signalée seulement quand les références de tous les lots sont validées
+                    CompletableFuture.allOf(committing.toArray(CompletableFuture[]::new))
+                            .exceptionally(error -> null)
+                            .join();
+                    finished.countDown();
+                });
+
+            // Le dernier thread de persistance libère le latch en s'arrêtant
+            finished.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        forgetFailedFiles();
+
+        return new IngestStats(files.get() - failedFiles.size(), skippedFiles.get(), chunks.get(), newChunks.get(), bytes.get(), failures.get(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Les buffers encodés ne sont rendus au pool qu'une fois copiés dans les packs ; le lot
+     * libère alors sa place parmi les lots en vol, même s'il attend encore ses références.
+     */
+    private void releaseEncoded(List<ChunkTask> batch, Semaphore inFlight) {
+        for (ChunkTask task : batch) {
+            storageSystem.releaseEncoded(task.encoded);
+            task.encoded = null;
+        }
+        inFlight.release();
+    }
+
+    /**
+     * Fin d'un lot persisté de façon asynchrone : un fichier n'est enregistré au catalogue
+     * qu'une fois les références de tous ses chunks validées.
+     */
+    private void completeBatch(List<ChunkTask> batch, Throwable error) {
+        if (error != null) {
+            failures.addAndGet(batch.size());
+            for (ChunkTask task : batch) {
+                failedFiles.add(task.fileName);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            System.err.println("Erreur dans le pipeline d'ingestion : " + cause.getMessage());
+            return;
+        }
+        for (ChunkTask task : batch) {
+            if (task.file != null) {
+                task.file.release();
+            }
+        }
+    }
+
+    /**
+     * Retire les références déjà validées des fichiers en échec, une fois tous les lots terminés.
+     * Le fichier n'a pas d'entrée de catalogue (elle n'est écrite qu'après tous ses chunks) :
+     * sur un dépôt persistant, il est ré-ingéré en entier à la prochaine exécution.
+     */
+    private void forgetFailedFiles() {
+        for (String fileName : failedFiles) {
+            System.err.println("Fichier non ingéré, ses chunks déjà enregistrés sont retirés : " + fileName);
+            try {
+                storageSystem.forgetFile(fileName);
+            } catch (RuntimeException e) {
+                System.err.println("Erreur lors du retrait de " + fileName + " : " + e.getMessage());
+            }
+        }
+    }
+
+    private void confirmMatches(List<ChunkTask> batch, Set<ChunkId> existing) {
+        List<ChunkId> hashes = new ArrayList<>();
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (ChunkTask task : batch) {
+            if (existing.contains(task.hash)) {
+                hashes.add(task.hash);
+                chunks.add(task.data);
+            }
+        }
+        storageSystem.confirmMatches(hashes, chunks);
+    }
+
+    /**
+     * Compare le fichier à son entrée de catalogue (dépôt persistant) puis le découpe s'il a changé.
+     */
+    private void ingestFile(FileSource source, Map<String, FileCatalogEntry> catalog,
+                            BlockingQueue<ChunkTask> hashQueue) throws Exception {
+        if (catalog == null) {
+            chunkFile(source, null, hashQueue);
+            return;
+        }
+
+        Path filePath = source.path();
+        long size = filePath == null ? source.size() : Files.size(filePath);
+        long modifiedTime = filePath == null ? 0 : Files.getLastModifiedTime(filePath).toMillis();
+        FileCatalogEntry known = catalog.get(source.name());
+        if (known != null && known.size() == size) {
+            // Sans date de modification (flux), seule l'empreinte fait foi
+            if (filePath != null && known.modifiedTime() == modifiedTime) {
+                skippedFiles.incrementAndGet();
+                return;
+            }
+            if (known.digest() != null && Arrays.equals(known.digest(), digestOf(source))) {
+                storageSystem.recordFile(known.withModifiedTime(modifiedTime));
+                skippedFiles.incrementAndGet();
+                return;
+            }
+        }
+        ResumePoint resume = known != null && filePath != null && size > known.size()
+                ? findResumePoint(filePath, known, size)
+                : ResumePoint.START;
+        // Y compris sans entrée de catalogue : une ingestion interrompue a pu laisser des chunks de fichier
+        storageSystem.forgetFile(source.name(), resume.chunkNumber());
+        chunkFile(source, resume, new FileProgress(source.name(), size, modifiedTime, resume == ResumePoint.START),
+                hashQueue);
+    }
+
+    /**
+     * Fichier agrandi (journal, WAL...) : si le début est inchangé, le découpage reprend à la
+     * dernière frontière connue. Le dernier chunk de l'ancienne version, coupé par la fin du
+     * fichier et non par le contenu, est redécoupé. Le début est vérifié par échantillonnage :
+     * quelques chunks stockés, dont le premier et le dernier conservé, sont relus et rehashés.
+     * Au moindre écart, ou si la nouvelle taille change les paramètres de découpage, le fichier
+     * est redécoupé en entier (les chunks inchangés restent dédupliqués).
+     */
+    private ResumePoint findResumePoint(Path filePath, FileCatalogEntry known, long size) throws IOException {
+        if (!chunker.sameChunkingTier(known.size(), size)) {
+            return ResumePoint.START;
+        }
+        List<ChunkMetadata> previous = storageSystem.getFileChunks(known.filename());
+        if (previous.size() < 2) {
+            return ResumePoint.START;
+        }
+        long[] offsets = new long[previous.size() + 1];
+        for (int i = 0; i < previous.size(); i++) {
+            offsets[i + 1] = offsets[i] + previous.get(i).getSize();
+        }
+        if (offsets[previous.size()] != known.size()) {
+            return ResumePoint.START;
+        }
+
+        int kept = previous.size() - 1;
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            int checks = Math.min(SPOT_CHECKS, kept);
+            for (int i = 0; i < checks; i++) {
+                int index = checks == 1 ? 0 : (int) ((long) i * (kept - 1) / (checks - 1));
+                ByteBuffer chunk = ByteBuffer.allocate((int) previous.get(index).getSize());
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, offsets[index] + chunk.position()) < 0) {
+                        return ResumePoint.START;
+                    }
+                }
+                if (!storageSystem.hashChunk(chunk.flip()).equals(previous.get(index).getId())) {
+                    return ResumePoint.START;
+                }
+            }
+        }
+        System.out.printf("Reprise du découpage de %s au chunk %d (offset %d)%n", known.filename(), kept, offsets[kept]);
+        return new ResumePoint(kept, offsets[kept]);
+    }
+
+    private void chunkFile(FileSource source, FileProgress progress, BlockingQueue<ChunkTask> hashQueue) throws Exception {
+        chunkFile(source, ResumePoint.START, progress, hashQueue);
+    }
+
+    private void chunkFile(FileSource source, ResumePoint resume, FileProgress progress,
+                           BlockingQueue<ChunkTask> hashQueue) throws Exception {
+        String fileName = source.name();
+        files.incrementAndGet();
+        try {
+            emitChunks(source, resume, progress, hashQueue);
+        } catch (Exception e) {
+            failedFiles.add(fileName);
+            throw e;
+        }
+
+        if (progress != null) {
+            progress.contentDigest = progress.digest == null ? null : progress.digest.digest();
+            progress.release();
+        }
+        System.out.println("Découpage terminé pour : " + fileName);
+    }
+
+    private void emitChunks(FileSource source, ResumePoint resume, FileProgress progress,
+                            BlockingQueue<ChunkTask> hashQueue) throws Exception {
+        String fileName = source.name();
+        Path filePath = source.path();
+
+        if (filePath == null) {
+            try (InputStream in = source.opener().call()) {
+                chunker.streamChunks(in, source.size(), (chunk, chunkNumber) ->
+                        emitChunk(hashQueue, new ChunkTask(fileName, chunkNumber, ByteBuffer.wrap(chunk)), progress));
+            }
+        } else if (Files.size(filePath) >= MAPPING_THRESHOLD) {
+            try {
+                // La tranche projetée n'est valable que pendant l'appel : copie avant la file des hashs
+                chunker.streamMappedChunks(String.valueOf(filePath), resume.offset(), resume.chunkNumber(),
+                        (chunk, fileOffset, chunkNumber) -> {
+                            byte[] copy = new byte[chunk.remaining()];
+                            chunk.get(copy);
+                            emitChunk(hashQueue, new ChunkTask(fileName, chunkNumber, ByteBuffer.wrap(copy)), progress);
+                        });
+            } catch (InternalError e) {
+                // Accès à une page projetée d'un fichier tronqué entre-temps : seul ce fichier échoue
+                throw new IOException("Fichier modifié pendant son découpage : " + fileName, e);
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(filePath)) {
+                in.skipNBytes(resume.offset());
+                chunker.streamChunks(in, Files.size(filePath), resume.chunkNumber(), (chunk, chunkNumber) ->
+                        emitChunk(hashQueue, new ChunkTask(fileName, chunkNumber, ByteBuffer.wrap(chunk)), progress));
+            }
+        }
+    }
+
+    private void emitChunk(BlockingQueue<ChunkTask> queue, ChunkTask task, FileProgress progress) {
+        if (progress != null) {
+            // Les chunks arrivent dans l'ordre du fichier : l'empreinte complète se calcule au passage
+            if (progress.digest != null) {
+                progress.digest.update(task.data.duplicate());
+            }
+            progress.pending.incrementAndGet();
+            task.file = progress;
+        }
+        chunks.incrementAndGet();
+        bytes.addAndGet(task.originalSize);
+        put(queue, task);
+    }
+
+    /**
+     * Lance {@code parallelism} threads qui consomment {@code input} par lots d'au plus
+     * {@code batchSize} éléments jusqu'au marqueur de fin. Le dernier thread à s'arrêter
+     * exécute {@code onStageDone}, qui propage la fin vers l'aval. Un lot en échec marque les
+     * fichiers de ses éléments ({@code fileOf}, null si aucun fichier n'est concerné).
+     */
+    private <T> void startStage(ExecutorService executor, int parallelism, int batchSize, BlockingQueue<T> input,
+                                T end, Function<T, String> fileOf, StageWorker<T> worker, Runnable onStageDone) {
+        AtomicInteger running = new AtomicInteger(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            executor.submit(() -> {
+                try {
+                    boolean ended = false;
+                    while (!ended) {
+                        List<T> batch = new ArrayList<>(batchSize);
+                        batch.add(input.take());
+                        if (batchSize > 1) {
+                            input.drainTo(batch, batchSize - 1);
+                        }
+                        // Garder un seul marqueur de fin : les autres reviennent aux threads voisins
+                        while (batch.remove(end)) {
+                            if (ended) {
+                                put(input, end);
+                            }
+                            ended = true;
+                        }
+                        if (batch.isEmpty()) {
+                            continue;
+                        }
+                        try {
+                            worker.process(batch);
+                        } catch (Exception e) {
+                            failures.addAndGet(batch.size());
+                            for (T item : batch) {
+                                String fileName = fileOf.apply(item);
+                                if (fileName != null) {
+                                    failedFiles.add(fileName);
+                                }
+                            }
+                            System.err.println("Erreur dans le pipeline d'ingestion : " + e.getMessage());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (running.decrementAndGet() == 0) {
+                        onStageDone.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private static byte[] digestOf(FileSource source) throws Exception {
+        MessageDigest digest = contentDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = source.path() == null ? source.opener().call() : Files.newInputStream(source.path())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest contentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    private static <T> void sendEnd(BlockingQueue<T> queue, T end, int consumers) {
+        for (int i = 0; i < consumers; i++) {
+            put(queue, end);
+        }
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Pipeline d'ingestion interrompu", e);
+        }
+    }
+
+    private static ThreadFactory namedThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "ingest-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
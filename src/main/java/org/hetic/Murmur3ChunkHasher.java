@@ -0,0 +1,106 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Empreinte rapide non cryptographique sur 128 bits (MurmurHash3 x64_128, graine 0).
+ * Les 16 octets de poids faible de l'identifiant sont à zéro. À utiliser avec la
+ * vérification SHA-256 des correspondances si le corpus n'est pas de confiance.
+ */
+public final class Murmur3ChunkHasher implements ChunkHasher {
+    public static final String NAME = "murmur3-128";
+    public static final Murmur3ChunkHasher INSTANCE = new Murmur3ChunkHasher();
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3ChunkHasher() {
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isCryptographic() {
+        return false;
+    }
+
+    @Override
+    public ChunkId hash(ByteBuffer chunk) {
+        ByteBuffer data = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int length = data.remaining();
+        long h1 = 0;
+        long h2 = 0;
+
+        while (data.remaining() >= 16) {
+            long k1 = data.getLong();
+            long k2 = data.getLong();
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = data.remaining();
+        if (tail > 0) {
+            long k1 = 0;
+            long k2 = 0;
+            int base = data.position();
+            for (int i = tail - 1; i >= 8; i--) {
+                k2 = (k2 << 8) | (data.get(base + i) & 0xFFL);
+            }
+            for (int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (data.get(base + i) & 0xFFL);
+            }
+            if (tail > 8) {
+                k2 *= C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= C1;
+                h2 ^= k2;
+            }
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        byte[] id = new byte[ChunkId.BYTES];
+        ByteBuffer.wrap(id).putLong(h1).putLong(h2);
+        return ChunkId.fromBytes(id);
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
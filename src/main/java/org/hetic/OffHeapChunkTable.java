@@ -0,0 +1,397 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.PackLocation;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Table de hachage à adressage ouvert (sondage linéaire) empreinte → emplacement, hors du tas Java :
+ * chaque segment est un fichier ({@code shard-00.tbl}, ...) projeté en mémoire ({@link MemorySegment}).
+ * <p>
+ * Un emplacement fait 64 octets (une ligne de cache) : [empreinte (32)][offset (8)][position dans
+ * le journal (8)][pack (4)][longueur stockée (4)][taille d'origine (4)][occupé (4)], soit environ
+ * 90 octets par chunk au facteur de charge maximal de 0,7, sans objet ni pression sur le ramasse-miettes.
+ * <p>
+ * Les segments sont choisis par les bits de poids fort du deuxième mot de l'empreinte et ont
+ * chacun leur verrou : les insertions dans des segments différents sont concurrentes, les
+ * lectures ne bloquent que pendant l'insertion dans leur propre segment.
+ * <p>
+ * Après une fermeture propre ({@link #close(long)}), la table est rouverte telle quelle : il
+ * suffit de projeter les fichiers. Tant qu'elle est ouverte elle est marquée « à reconstruire »
+ * sur disque : après un arrêt brutal, {@link #coveredLogSize()} vaut -1 et le propriétaire la
+ * reconstruit depuis son journal.
+ */
+public class OffHeapChunkTable {
+    static final int SLOT_SIZE = 64;
+    private static final int HEADER_SIZE = 64;
+    private static final long MAGIC = 0x4843484B54424C31L;
+    private static final int DEFAULT_SHARD_BITS = 6;
+    private static final long INITIAL_SLOTS = 1024;
+    private static final String META_FILE_NAME = "table.meta";
+
+    // Disposition d'un emplacement
+    private static final long OFFSET = 32;
+    private static final long RECORD_POSITION = 40;
+    private static final long PACK_ID = 48;
+    private static final long LENGTH = 52;
+    private static final long ORIGINAL_SIZE = 56;
+    private static final long USED = 60;
+
+    // En-tête d'un segment : [magic][nombre d'emplacements][entrées]
+    private static final long HEADER_CAPACITY = 8;
+    private static final long HEADER_COUNT = 16;
+
+    /**
+     * Entrée de la table ; {@code recordPosition} est la position de l'enregistrement complet
+     * dans le journal du propriétaire.
+     */
+    public record Entry(ChunkId hash, PackLocation location, int originalSize, long recordPosition) {}
+
+    private final Path directory;
+    private final int shardBits;
+    private final Shard[] shards;
+    private final FileChannel meta;
+    private long coveredLogSize;
+
+    public OffHeapChunkTable(Path directory) throws IOException {
+        this(directory, DEFAULT_SHARD_BITS);
+    }
+
+    /**
+     * @param shardBits log2 du nombre de segments (et donc de verrous)
+     */
+    public OffHeapChunkTable(Path directory, int shardBits) throws IOException {
+        if (shardBits < 1 || shardBits > 16) {
+            throw new IllegalArgumentException("Nombre de segments invalide: 2^" + shardBits);
+        }
+        this.directory = directory;
+        this.shardBits = shardBits;
+        this.shards = new Shard[1 << shardBits];
+        Files.createDirectories(directory);
+        this.meta = FileChannel.open(directory.resolve(META_FILE_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long covered = readCleanMeta();
+        for (int i = 0; i < shards.length && covered >= 0; i++) {
+            if (!isValidShard(shardPath(i))) {
+                covered = -1;
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = covered >= 0 ? Shard.open(shardPath(i)) : Shard.create(shardPath(i), INITIAL_SLOTS);
+        }
+        this.coveredLogSize = covered;
+        // Toute modification à venir rend la table à reconstruire en cas d'arrêt brutal
+        writeMeta(false, -1);
+    }
+
+    /**
+     * Taille du journal déjà reflétée par la table à sa dernière fermeture propre,
+     * ou -1 si la table a été recréée vide et doit être reconstruite.
+     */
+    public long coveredLogSize() {
+        return coveredLogSize;
+    }
+
+    public Entry get(ChunkId hash) {
+        Shard shard = shard(hash);
+        shard.lock.readLock().lock();
+        try {
+            long slot = shard.find(hash);
+            return slot < 0 ? null : shard.entry(slot);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return false si l'empreinte était déjà présente (l'entrée existante est conservée)
+     */
+    public boolean putIfAbsent(ChunkId hash, PackLocation location, int originalSize, long recordPosition) {
+        Shard shard = shard(hash);
+        shard.lock.writeLock().lock();
+        try {
+            if (shard.find(hash) >= 0) {
+                return false;
+            }
+            if ((shard.count + 1) * 10 > shard.capacity * 7) {
+                shard.grow();
+            }
+            shard.insert(hash.word(0), hash.word(1), hash.word(2), hash.word(3), location.offset(),
+                    recordPosition, location.packId(), location.length(), originalSize);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Erreur lors de l'agrandissement de " + shard.path, e);
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                size += shard.count;
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Parcourt les entrées segment par segment, sous le verrou de lecture du segment :
+     * l'action ne doit pas modifier la table.
+     */
+    public void forEach(Consumer<Entry> action) {
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                for (long slot = 0; slot < shard.capacity; slot++) {
+                    if (shard.isUsed(slot)) {
+                        action.accept(shard.entry(slot));
+                    }
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Vide tous les segments, avant une reconstruction depuis le journal.
+     */
+    public void clear() throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            shard.lock.writeLock().lock();
+            try {
+                shard.close();
+                shards[i] = Shard.create(shard.path, INITIAL_SLOTS);
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+        coveredLogSize = -1;
+    }
+
+    /**
+     * Écrit les segments sur disque puis marque la table comme reflétant le journal jusqu'à
+     * {@code coveredLogSize} : elle sera rouverte sans reconstruction.
+     */
+    public void close(long coveredLogSize) throws IOException {
+        for (Shard shard : shards) {
+            shard.lock.writeLock().lock();
+            try {
+                shard.segment.set(ValueLayout.JAVA_LONG, HEADER_COUNT, shard.count);
+                shard.segment.force();
+                shard.close();
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+        writeMeta(true, coveredLogSize);
+        meta.close();
+    }
+
+    private Shard shard(ChunkId hash) {
+        return shards[(int) (hash.word(1) >>> (64 - shardBits))];
+    }
+
+    private Path shardPath(int index) {
+        return directory.resolve(String.format("shard-%02d.tbl", index));
+    }
+
+    /**
+     * Métadonnées : [magic][segments (4)][fermeture propre (4)][taille du journal couverte (8)].
+     *
+     * @return la taille de journal couverte si la dernière fermeture a été propre, sinon -1
+     */
+    private long readCleanMeta() throws IOException {
+        if (meta.size() < 24) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(24);
+        while (buffer.hasRemaining() && meta.read(buffer, buffer.position()) >= 0) {
+            // Lecture de l'en-tête complet
+        }
+        buffer.flip();
+        boolean valid = buffer.getLong() == MAGIC && buffer.getInt() == shardBits && buffer.getInt() == 1;
+        return valid ? buffer.getLong() : -1;
+    }
+
+    private void writeMeta(boolean clean, long covered) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(24).putLong(MAGIC).putInt(shardBits).putInt(clean ? 1 : 0).putLong(covered).flip();
+        while (buffer.hasRemaining()) {
+            meta.write(buffer, buffer.position());
+        }
+        meta.force(true);
+    }
+
+    private static boolean isValidShard(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Les segments sont écrits dans l'ordre natif des octets, comme les accès à MemorySegment
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Lecture de l'en-tête complet
+            }
+            header.flip();
+            long capacity = header.getLong((int) HEADER_CAPACITY);
+            return header.getLong(0) == MAGIC && Long.bitCount(capacity) == 1
+                    && channel.size() == HEADER_SIZE + capacity * SLOT_SIZE;
+        }
+    }
+
+    private static final class Shard {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Path path;
+        private FileChannel channel;
+        private Arena arena;
+        private MemorySegment segment;
+        private long capacity;
+        private long mask;
+        private long count;
+
+        private Shard(Path path) {
+            this.path = path;
+        }
+
+        static Shard open(Path path) throws IOException {
+            Shard shard = new Shard(path);
+            shard.map(path, -1);
+            shard.capacity = shard.segment.get(ValueLayout.JAVA_LONG, HEADER_CAPACITY);
+            shard.mask = shard.capacity - 1;
+            shard.count = shard.segment.get(ValueLayout.JAVA_LONG, HEADER_COUNT);
+            return shard;
+        }
+
+        static Shard create(Path path, long capacity) throws IOException {
+            Files.deleteIfExists(path);
+            Shard shard = new Shard(path);
+            shard.map(path, capacity);
+            return shard;
+        }
+
+        /**
+         * @param newCapacity nombre d'emplacements d'un nouveau fichier, -1 pour un fichier existant
+         */
+        private void map(Path file, long newCapacity) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = newCapacity < 0 ? channel.size() : HEADER_SIZE + newCapacity * SLOT_SIZE;
+            arena = Arena.ofShared();
+            // Un fichier agrandi par la projection est rempli de zéros : tous les emplacements sont libres
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+            if (newCapacity >= 0) {
+                segment.set(ValueLayout.JAVA_LONG, 0, MAGIC);
+                segment.set(ValueLayout.JAVA_LONG, HEADER_CAPACITY, newCapacity);
+                capacity = newCapacity;
+                mask = newCapacity - 1;
+                count = 0;
+            }
+        }
+
+        long find(ChunkId hash) {
+            long w0 = hash.word(0);
+            long slot = w0 & mask;
+            while (isUsed(slot)) {
+                long base = HEADER_SIZE + slot * SLOT_SIZE;
+                if (segment.get(ValueLayout.JAVA_LONG, base) == w0
+                        && segment.get(ValueLayout.JAVA_LONG, base + 8) == hash.word(1)
+                        && segment.get(ValueLayout.JAVA_LONG, base + 16) == hash.word(2)
+                        && segment.get(ValueLayout.JAVA_LONG, base + 24) == hash.word(3)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        boolean isUsed(long slot) {
+            return segment.get(ValueLayout.JAVA_INT, HEADER_SIZE + slot * SLOT_SIZE + USED) != 0;
+        }
+
+        Entry entry(long slot) {
+            long base = HEADER_SIZE + slot * SLOT_SIZE;
+            ChunkId hash = ChunkId.readFrom(ByteBuffer.allocate(ChunkId.BYTES)
+                    .putLong(segment.get(ValueLayout.JAVA_LONG, base))
+                    .putLong(segment.get(ValueLayout.JAVA_LONG, base + 8))
+                    .putLong(segment.get(ValueLayout.JAVA_LONG, base + 16))
+                    .putLong(segment.get(ValueLayout.JAVA_LONG, base + 24)).flip());
+            PackLocation location = new PackLocation(segment.get(ValueLayout.JAVA_INT, base + PACK_ID),
+                    segment.get(ValueLayout.JAVA_LONG, base + OFFSET), segment.get(ValueLayout.JAVA_INT, base + LENGTH));
+            return new Entry(hash, location, segment.get(ValueLayout.JAVA_INT, base + ORIGINAL_SIZE),
+                    segment.get(ValueLayout.JAVA_LONG, base + RECORD_POSITION));
+        }
+
+        void insert(long w0, long w1, long w2, long w3, long offset, long recordPosition,
+                    int packId, int length, int originalSize) {
+            long slot = w0 & mask;
+            while (isUsed(slot)) {
+                slot = (slot + 1) & mask;
+            }
+            long base = HEADER_SIZE + slot * SLOT_SIZE;
+            segment.set(ValueLayout.JAVA_LONG, base, w0);
+            segment.set(ValueLayout.JAVA_LONG, base + 8, w1);
+            segment.set(ValueLayout.JAVA_LONG, base + 16, w2);
+            segment.set(ValueLayout.JAVA_LONG, base + 24, w3);
+            segment.set(ValueLayout.JAVA_LONG, base + OFFSET, offset);
+            segment.set(ValueLayout.JAVA_LONG, base + RECORD_POSITION, recordPosition);
+            segment.set(ValueLayout.JAVA_INT, base + PACK_ID, packId);
+            segment.set(ValueLayout.JAVA_INT, base + LENGTH, length);
+            segment.set(ValueLayout.JAVA_INT, base + ORIGINAL_SIZE, originalSize);
+            segment.set(ValueLayout.JAVA_INT, base + USED, 1);
+            count++;
+        }
+
+        /**
+         * Double la capacité dans un nouveau fichier, puis le substitue à l'ancien.
+         * Appelé sous le verrou d'écriture du segment.
+         */
+        void grow() throws IOException {
+            Path grown = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.deleteIfExists(grown);
+            MemorySegment old = segment;
+            long oldCapacity = capacity;
+            FileChannel oldChannel = channel;
+            Arena oldArena = arena;
+
+            map(grown, 2 * oldCapacity);
+            for (long slot = 0; slot < oldCapacity; slot++) {
+                long base = HEADER_SIZE + slot * SLOT_SIZE;
+                if (old.get(ValueLayout.JAVA_INT, base + USED) != 0) {
+                    long target = old.get(ValueLayout.JAVA_LONG, base) & mask;
+                    while (isUsed(target)) {
+                        target = (target + 1) & mask;
+                    }
+                    MemorySegment.copy(old, base, segment, HEADER_SIZE + target * SLOT_SIZE, SLOT_SIZE);
+                    count++;
+                }
+            }
+            oldArena.close();
+            oldChannel.close();
+            Files.move(grown, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void close() throws IOException {
+            arena.close();
+            channel.close();
+        }
+    }
+}
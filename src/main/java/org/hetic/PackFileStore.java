@@ -0,0 +1,248 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.PackLocation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Stockage des chunks en fichiers pack à ajout seul : les chunks sont écrits les uns
+ * à la suite des autres dans de gros segments ({@code pack-000001.pack}, ...), ce qui
+ * remplace un fichier (et une entrée de répertoire) par chunk par des écritures séquentielles.
+ * <p>
+ * Chaque enregistrement est précédé d'un en-tête [identifiant (32 octets)][longueur (4 octets)]
+ * qui permet de reparcourir un pack sans la base (compactage, reprise après incident).
+ * Les écritures sont sérialisées ; les lectures sont positionnelles et concurrentes.
+ * <p>
+ * Un ajout n'est pas durable à son retour : {@link #awaitDurable()} le force sur disque, en
+ * regroupant les appels concurrents sur un même {@code force} (validation groupée), sans
+ * bloquer les ajouts pendant ce temps.
+ */
+public class PackFileStore implements Closeable {
+    public static final int RECORD_HEADER_SIZE = ChunkId.BYTES + Integer.BYTES;
+    private static final long DEFAULT_MAX_PACK_SIZE = 256L * 1024 * 1024;
+
+    private final Path directory;
+    private final long maxPackSize;
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+
+    private final Object forceLock = new Object();
+
+    private int currentPackId;
+    private FileChannel currentPack;
+    private long currentSize;
+    // Nombre d'ajouts effectués, et nombre d'ajouts déjà forcés sur disque
+    private volatile long appended;
+    private volatile long durable;
+
+    public PackFileStore(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_PACK_SIZE);
+    }
+
+    public PackFileStore(Path directory, long maxPackSize) throws IOException {
+        this.directory = directory;
+        this.maxPackSize = maxPackSize;
+        Files.createDirectories(directory);
+        // Les packs existants ne sont jamais rouverts en écriture : on commence un nouveau segment
+        this.currentPackId = highestPackId() + 1;
+        openCurrentPack();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path packPath(int packId) {
+        return directory.resolve(String.format("pack-%06d.pack", packId));
+    }
+
+    /**
+     * Ajoute un chunk encodé à la fin du pack courant.
+     *
+     * @return l'emplacement des données (après l'en-tête)
+     */
+    public synchronized PackLocation append(ChunkId id, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (currentSize > 0 && currentSize + RECORD_HEADER_SIZE + length > maxPackSize) {
+            rollPack();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        id.writeTo(header);
+        header.putInt(length);
+        header.flip();
+
+        ByteBuffer source = data.duplicate();
+        long recordStart = currentSize;
+        ByteBuffer[] record = {header, source};
+        while (header.hasRemaining() || source.hasRemaining()) {
+            currentPack.write(record);
+        }
+        currentSize += RECORD_HEADER_SIZE + length;
+        appended++;
+
+        return new PackLocation(currentPackId, recordStart + RECORD_HEADER_SIZE, length);
+    }
+
+    public byte[] read(PackLocation location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length());
+        read(location, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Lecture positionnelle dans {@code target} (à partir de sa position courante).
+     */
+    public void read(PackLocation location, ByteBuffer target) throws IOException {
+        FileChannel channel = reader(location.packId());
+        ByteBuffer slice = target.slice(target.position(), location.length());
+        long position = location.offset();
+        while (slice.hasRemaining()) {
+            int read = channel.read(slice, position);
+            if (read < 0) {
+                throw new IOException("Fin de pack inattendue pour " + location);
+            }
+            position += read;
+        }
+        target.position(target.position() + location.length());
+    }
+
+    /**
+     * Numéro du pack en cours d'écriture ; les packs précédents ne reçoivent plus d'ajouts.
+     */
+    public synchronized int currentPackId() {
+        return currentPackId;
+    }
+
+    /**
+     * Numéros de tous les packs présents dans le dossier, dans l'ordre.
+     */
+    public int[] packIds() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(PackFileStore::isPackName)
+                    .mapToInt(PackFileStore::packIdOf)
+                    .sorted()
+                    .toArray();
+        }
+    }
+
+    /**
+     * Supprime un pack qui ne contient plus aucun chunk référencé. Le pack courant ne peut pas être supprimé.
+     */
+    public void deletePack(int packId) throws IOException {
+        synchronized (this) {
+            if (packId == currentPackId) {
+                throw new IllegalArgumentException("Le pack courant ne peut pas être supprimé: " + packId);
+            }
+        }
+        FileChannel reader = readers.remove(packId);
+        if (reader != null) {
+            reader.close();
+        }
+        Files.deleteIfExists(packPath(packId));
+    }
+
+    /** Force l'écriture du pack courant sur le disque. */
+    public synchronized void sync() throws IOException {
+        currentPack.force(false);
+        durable = appended;
+    }
+
+    /**
+     * Attend que tous les ajouts terminés avant l'appel soient sur disque. Un seul appelant
+     * force le pack à la fois ; ceux qui attendaient derrière lui n'ont souvent plus rien à forcer.
+     */
+    public void awaitDurable() throws IOException {
+        long target = appended;
+        if (durable >= target) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (durable >= target) {
+                return;
+            }
+            FileChannel pack;
+            long covered;
+            synchronized (this) {
+                pack = currentPack;
+                covered = appended;
+            }
+            try {
+                pack.force(false);
+            } catch (ClosedChannelException e) {
+                // Pack fermé entre-temps par un changement de segment, qui l'a forcé avant de le fermer
+            }
+            durable = Math.max(durable, covered);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        currentPack.close();
+        for (FileChannel channel : readers.values()) {
+            channel.close();
+        }
+        readers.clear();
+    }
+
+    private FileChannel reader(int packId) throws IOException {
+        FileChannel channel = readers.get(packId);
+        if (channel != null) {
+            return channel;
+        }
+        try {
+            return readers.computeIfAbsent(packId, id -> {
+                try {
+                    return FileChannel.open(packPath(id), StandardOpenOption.READ);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw new IOException("Pack illisible: " + packPath(packId), ioException);
+            }
+            throw e;
+        }
+    }
+
+    private void rollPack() throws IOException {
+        currentPack.force(false);
+        currentPack.close();
+        currentPackId++;
+        openCurrentPack();
+    }
+
+    private void openCurrentPack() throws IOException {
+        currentPack = FileChannel.open(packPath(currentPackId),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        currentSize = currentPack.size();
+    }
+
+    private int highestPackId() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(PackFileStore::isPackName)
+                    .mapToInt(PackFileStore::packIdOf)
+                    .max()
+                    .orElse(0);
+        }
+    }
+
+    private static boolean isPackName(String name) {
+        return name.startsWith("pack-") && name.endsWith(".pack");
+    }
+
+    private static int packIdOf(String name) {
+        return Integer.parseInt(name.substring(5, name.length() - 5));
+    }
+}
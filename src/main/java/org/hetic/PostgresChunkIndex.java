@@ -0,0 +1,200 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkRecord;
+import org.hetic.models.PackLocation;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Index des chunks dans la table {@code chunks} : une recherche de doublons est une requête
+ * {@code = ANY(?)} par lot, un ajout un {@code INSERT ... ON CONFLICT DO NOTHING} multi-lignes.
+ */
+public class PostgresChunkIndex implements ChunkIndex {
+    // Reste sous la limite de 32767 paramètres d'une requête PostgreSQL
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
+    private final DataSource dataSource;
+
+    public PostgresChunkIndex(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Map<ChunkId, ChunkRecord> lookup(Collection<ChunkId> hashes) {
+        Map<ChunkId, ChunkRecord> records = new HashMap<>();
+        if (hashes.isEmpty()) {
+            return records;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("""
+                 SELECT chunk_hash, pack_id, pack_offset, stored_length, original_size, verify_digest
+                 FROM chunks WHERE chunk_hash = ANY(?)
+                 """)) {
+            Array hashArray = SQLChunkStorageSystem.toByteaArray(conn, hashes);
+            stmt.setArray(1, hashArray);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                ChunkRecord record = readRecord(rs);
+                records.put(record.hash(), record);
+            }
+            hashArray.free();
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la recherche des chunks", e);
+        }
+        return records;
+    }
+
+    /**
+     * Un chunk orphelin perd sa date {@code orphaned_at} : le {@link GarbageCollector} ne pourra
+     * le marquer de nouveau qu'avec la date courante, et attendra le délai de grâce avant de le
+     * supprimer. La mise à jour attend un balayage qui aurait déjà verrouillé ces lignes ; la
+     * lecture qui suit ne voit donc plus un chunk qu'il vient de supprimer.
+     */
+    @Override
+    public Set<ChunkId> retain(Collection<ChunkId> hashes) {
+        Set<ChunkId> retained = new HashSet<>();
+        if (hashes.isEmpty()) {
+            return retained;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement revive = conn.prepareStatement("""
+                 UPDATE chunks SET orphaned_at = NULL
+                 WHERE chunk_hash = ANY(?) AND orphaned_at IS NOT NULL
+                 """);
+             PreparedStatement select = conn.prepareStatement("SELECT chunk_hash FROM chunks WHERE chunk_hash = ANY(?)")) {
+            Array hashArray = SQLChunkStorageSystem.toByteaArray(conn, hashes);
+            revive.setArray(1, hashArray);
+            revive.executeUpdate();
+            select.setArray(1, hashArray);
+            ResultSet rs = select.executeQuery();
+            while (rs.next()) {
+                retained.add(ChunkId.fromBytes(rs.getBytes(1)));
+            }
+            hashArray.free();
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la protection des chunks retrouvés", e);
+        }
+        return retained;
+    }
+
+    /**
+     * Les lignes sont insérées dans l'ordre des empreintes : deux processus qui ajoutent des
+     * chunks communs verrouillent les entrées d'index dans le même ordre et ne peuvent pas
+     * s'interbloquer.
+     */
+    @Override
+    public Set<ChunkId> insertIfAbsent(List<ChunkRecord> records) {
+        Set<ChunkId> inserted = new HashSet<>();
+        if (records.isEmpty()) {
+            return inserted;
+        }
+        records = new ArrayList<>(records);
+        records.sort(Comparator.comparing(ChunkRecord::hash));
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < records.size(); from += MAX_ROWS_PER_INSERT) {
+                    inserted.addAll(insertRows(conn, records.subList(from, Math.min(records.size(), from + MAX_ROWS_PER_INSERT))));
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de l'ajout des chunks", e);
+        }
+        return inserted;
+    }
+
+    /**
+     * @return les hashs réellement insérés (les autres existaient déjà)
+     */
+    private List<ChunkId> insertRows(Connection conn, List<ChunkRecord> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO chunks (chunk_hash, pack_id, pack_offset, stored_length, original_size, verify_digest) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+        }
+        sql.append(" ON CONFLICT (chunk_hash) DO NOTHING RETURNING chunk_hash");
+
+        List<ChunkId> inserted = new ArrayList<>();
+        try (PreparedStatement insertChunkStmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (ChunkRecord row : rows) {
+                insertChunkStmt.setBytes(index++, row.hash().toBytes());
+                insertChunkStmt.setInt(index++, row.location().packId());
+                insertChunkStmt.setLong(index++, row.location().offset());
+                insertChunkStmt.setInt(index++, row.location().length());
+                insertChunkStmt.setInt(index++, row.originalSize());
+                insertChunkStmt.setBytes(index++, row.verifyDigest());
+            }
+            ResultSet rs = insertChunkStmt.executeQuery();
+            while (rs.next()) {
+                inserted.add(ChunkId.fromBytes(rs.getBytes(1)));
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    public long size() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM chunks");
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors du comptage des chunks", e);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM chunks)");
+            rs.next();
+            return !rs.getBoolean(1);
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors du comptage des chunks", e);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<ChunkRecord> action) {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            // Lecture par curseur pour ne pas charger toute la table en mémoire
+            conn.setAutoCommit(false);
+            stmt.setFetchSize(10_000);
+            ResultSet rs = stmt.executeQuery(
+                    "SELECT chunk_hash, pack_id, pack_offset, stored_length, original_size, verify_digest FROM chunks");
+            while (rs.next()) {
+                action.accept(readRecord(rs));
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors du parcours des chunks", e);
+        }
+    }
+
+    private static ChunkRecord readRecord(ResultSet rs) throws SQLException {
+        return new ChunkRecord(ChunkId.fromBytes(rs.getBytes(1)),
+                new PackLocation(rs.getInt(2), rs.getLong(3), rs.getInt(4)), rs.getInt(5), rs.getBytes(6));
+    }
+
+    /**
+     * Le pool de connexions appartient au système de stockage.
+     */
+    @Override
+    public void close() {
+    }
+}
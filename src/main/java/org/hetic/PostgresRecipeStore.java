@@ -0,0 +1,321 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.DeduplicationStats;
+import org.hetic.models.FileCatalogEntry;
+import org.hetic.models.PendingChunk;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Recettes, catalogue et métadonnées dans PostgreSQL. Les tables sont créées et migrées par
+ * {@link SQLChunkStorageSystem}, sauf {@code compression_dictionaries}, créée au premier chargement.
+ */
+public class PostgresRecipeStore implements RecipeStore {
+    private final DataSource dataSource;
+
+    public PostgresRecipeStore(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Les références sont insérées en batch JDBC ({@code ON CONFLICT DO NOTHING}), puis une seule
+     * requête compare le lot aux lignes en place, dans la même transaction : une ligne existante
+     * vers un autre chunk annule le lot.
+     */
+    @Override
+    public void addReferences(List<PendingChunk> batch) {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insertFileChunkStmt = conn.prepareStatement("""
+                    INSERT INTO file_chunks (filename, chunk_hash, chunk_number) VALUES (?, ?, ?)
+                    ON CONFLICT (filename, chunk_number) DO NOTHING
+                    """)) {
+                for (PendingChunk chunk : batch) {
+                    insertFileChunkStmt.setString(1, chunk.filename());
+                    insertFileChunkStmt.setBytes(2, chunk.hash().toBytes());
+                    insertFileChunkStmt.setInt(3, chunk.chunkNumber());
+                    insertFileChunkStmt.addBatch();
+                }
+                insertFileChunkStmt.executeBatch();
+                checkReferences(conn, batch);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de l'ajout des chunks", e);
+        }
+    }
+
+    private static void checkReferences(Connection conn, List<PendingChunk> batch) throws SQLException {
+        String[] filenames = new String[batch.size()];
+        Integer[] chunkNumbers = new Integer[batch.size()];
+        byte[][] hashes = new byte[batch.size()][];
+        for (int i = 0; i < batch.size(); i++) {
+            filenames[i] = batch.get(i).filename();
+            chunkNumbers[i] = batch.get(i).chunkNumber();
+            hashes[i] = batch.get(i).hash().toBytes();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT b.filename, b.chunk_number
+                FROM unnest(?::text[], ?::int[], ?::bytea[]) AS b(filename, chunk_number, chunk_hash)
+                JOIN file_chunks fc ON fc.filename = b.filename AND fc.chunk_number = b.chunk_number
+                WHERE fc.chunk_hash <> b.chunk_hash
+                LIMIT 1
+                """)) {
+            stmt.setArray(1, conn.createArrayOf("text", filenames));
+            stmt.setArray(2, conn.createArrayOf("int4", chunkNumbers));
+            stmt.setArray(3, conn.createArrayOf("bytea", hashes));
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                throw new IllegalStateException("Le chunk " + rs.getInt(2) + " de " + rs.getString(1)
+                        + " est déjà référencé avec un autre contenu");
+            }
+        }
+    }
+
+    @Override
+    public List<ChunkId> fileChunks(String filename) {
+        List<ChunkId> hashes = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT chunk_number, chunk_hash FROM file_chunks WHERE filename = ? ORDER BY chunk_number")) {
+            stmt.setString(1, filename);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                if (rs.getInt(1) != hashes.size()) {
+                    return List.of();
+                }
+                hashes.add(ChunkId.fromBytes(rs.getBytes(2)));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la lecture des chunks de " + filename, e);
+        }
+        return hashes;
+    }
+
+    @Override
+    public boolean containsFile(String filename) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT EXISTS (SELECT 1 FROM file_chunks WHERE filename = ?)")) {
+            stmt.setString(1, filename);
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            return rs.getBoolean(1);
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la recherche de " + filename, e);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> listFiles() {
+        Map<String, Integer> files = new LinkedHashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("""
+                SELECT filename, COUNT(chunk_number) as chunks
+                FROM file_chunks
+                GROUP BY filename
+                ORDER BY MIN(id)
+            """);
+            while (rs.next()) {
+                files.put(rs.getString(1), rs.getInt(2));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la liste des fichiers disponibles", e);
+        }
+        return files;
+    }
+
+    @Override
+    public void forgetFile(String filename, int fromChunkNumber) {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement deleteChunks = conn.prepareStatement(
+                     "DELETE FROM file_chunks WHERE filename = ? AND chunk_number >= ?");
+                 PreparedStatement deleteEntry = conn.prepareStatement("DELETE FROM file_catalog WHERE filename = ?")) {
+                deleteChunks.setString(1, filename);
+                deleteChunks.setInt(2, fromChunkNumber);
+                deleteChunks.executeUpdate();
+                deleteEntry.setString(1, filename);
+                deleteEntry.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la suppression de l'ancienne version de " + filename, e);
+        }
+    }
+
+    @Override
+    public Map<String, FileCatalogEntry> loadCatalog() {
+        Map<String, FileCatalogEntry> catalog = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(
+                    "SELECT filename, file_size, modified_time, content_digest FROM file_catalog");
+            while (rs.next()) {
+                catalog.put(rs.getString(1), new FileCatalogEntry(rs.getString(1), rs.getLong(2),
+                        rs.getLong(3), rs.getBytes(4)));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors du chargement du catalogue de fichiers", e);
+        }
+        return catalog;
+    }
+
+    @Override
+    public void recordFile(FileCatalogEntry entry) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("""
+                 INSERT INTO file_catalog (filename, file_size, modified_time, content_digest) VALUES (?, ?, ?, ?)
+                 ON CONFLICT (filename) DO UPDATE SET file_size = EXCLUDED.file_size,
+                     modified_time = EXCLUDED.modified_time, content_digest = EXCLUDED.content_digest,
+                     ingested_at = CURRENT_TIMESTAMP
+                 """)) {
+            stmt.setString(1, entry.filename());
+            stmt.setLong(2, entry.size());
+            stmt.setLong(3, entry.modifiedTime());
+            stmt.setBytes(4, entry.digest());
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de l'enregistrement du fichier " + entry.filename(), e);
+        }
+    }
+
+    @Override
+    public String getMeta(String key) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement select = conn.prepareStatement("SELECT value FROM repository_meta WHERE key = ?")) {
+            select.setString(1, key);
+            ResultSet meta = select.executeQuery();
+            return meta.next() ? meta.getString(1) : null;
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de la lecture de la métadonnée " + key, e);
+        }
+    }
+
+    @Override
+    public void putMeta(String key, String value) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement upsert = conn.prepareStatement("""
+                 INSERT INTO repository_meta (key, value) VALUES (?, ?)
+                 ON CONFLICT (key) DO UPDATE SET value = EXCLUDED.value
+                 """)) {
+            upsert.setString(1, key);
+            upsert.setString(2, value);
+            upsert.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de l'enregistrement de la métadonnée " + key, e);
+        }
+    }
+
+    /**
+     * Les dictionnaires ne sont jamais supprimés : un chunk qui en référence un doit rester lisible.
+     */
+    @Override
+    public List<StoredDictionary> loadDictionaries() {
+        List<StoredDictionary> dictionaries = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS compression_dictionaries (
+                    id SERIAL PRIMARY KEY,
+                    file_type TEXT NOT NULL,
+                    content BYTEA NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+            """);
+            ResultSet rs = stmt.executeQuery("SELECT id, file_type, content FROM compression_dictionaries ORDER BY id");
+            while (rs.next()) {
+                dictionaries.add(new StoredDictionary(rs.getInt("id"), rs.getString("file_type"), rs.getBytes("content")));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors du chargement des dictionnaires de compression", e);
+        }
+        return dictionaries;
+    }
+
+    @Override
+    public int saveDictionary(String fileType, byte[] content) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                 "INSERT INTO compression_dictionaries (file_type, content) VALUES (?, ?) RETURNING id")) {
+            stmt.setString(1, fileType);
+            stmt.setBytes(2, content);
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de l'enregistrement d'un dictionnaire de compression", e);
+        }
+    }
+
+    @Override
+    public DeduplicationStats referenceStats() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            ResultSet rs = stmt.executeQuery("""
+                WITH chunk_stats AS (
+                    SELECT chunk_hash,
+                           COUNT(id) as ref_count
+                    FROM file_chunks
+                    GROUP BY chunk_hash
+                ),
+                summary AS (
+                    SELECT
+                        COUNT(*) as total_unique_chunks,
+                        SUM(ref_count) as total_references,
+                        COUNT(CASE WHEN ref_count > 1 THEN 1 END) as duplicated_chunks
+                    FROM chunk_stats
+                )
+                SELECT
+                    total_references as total_chunks,
+                    total_unique_chunks as unique_chunks,
+                    duplicated_chunks as duplicate_chunks,
+                    CASE
+                        WHEN total_references > 0
+                        THEN ROUND(CAST((total_references - total_unique_chunks)::FLOAT / total_references * 100 as NUMERIC), 2)
+                        ELSE 0.0
+                    END as deduplication_ratio
+                FROM summary
+            """);
+
+            if (rs.next()) {
+                long totalChunks = rs.getLong("total_chunks");
+                long uniqueChunks = rs.getLong("unique_chunks");
+                long duplicateChunks = rs.getLong("duplicate_chunks");
+
+                return new DeduplicationStats(
+                    totalChunks,
+                    uniqueChunks,
+                    duplicateChunks,
+                    rs.getDouble("deduplication_ratio")
+                );
+            }
+
+            // Aucun résultat trouvé
+            return new DeduplicationStats(0, 0, 0, 0.0);
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors du calcul des statistiques", e);
+        }
+    }
+
+    /**
+     * Le pool de connexions appartient au système de stockage.
+     */
+    @Override
+    public void close() {
+    }
+}
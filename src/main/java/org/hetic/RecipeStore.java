@@ -0,0 +1,85 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+import org.hetic.models.DeduplicationStats;
+import org.hetic.models.FileCatalogEntry;
+import org.hetic.models.PendingChunk;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tout ce que le dépôt garde en dehors des packs et de l'index des chunks : la liste de chunks
+ * de chaque fichier (sa recette), le catalogue des fichiers ingérés, les métadonnées du dépôt
+ * et les dictionnaires de compression.
+ * <ul>
+ *   <li>{@link PostgresRecipeStore} : les tables {@code file_chunks}, {@code file_catalog},
+ *   {@code repository_meta} et {@code compression_dictionaries} ;</li>
+ *   <li>{@link EmbeddedRecipeStore} : un journal à ajout seul à côté des packs, rejoué en mémoire
+ *   à l'ouverture, pour un dépôt sans base de données.</li>
+ * </ul>
+ * Les implémentations peuvent être appelées depuis plusieurs threads.
+ */
+public interface RecipeStore extends AutoCloseable {
+
+    /**
+     * Dictionnaire de compression enregistré, avec l'identifiant référencé par les chunks.
+     */
+    record StoredDictionary(int id, String fileType, byte[] content) {
+    }
+
+    /**
+     * Écrit les références d'un lot de chunks (éventuellement de plusieurs fichiers), de façon
+     * atomique et durable au retour. Une référence déjà écrite à l'identique (lot rejoué) est
+     * conservée ; une référence existante vers un autre chunk (deux fichiers de même nom ingérés
+     * ensemble) fait échouer tout le lot.
+     *
+     * @throws IllegalStateException si une référence existante désigne un autre chunk
+     */
+    void addReferences(List<PendingChunk> batch);
+
+    /**
+     * Empreintes des chunks d'un fichier dans l'ordre, vide si le fichier est inconnu ou si sa
+     * numérotation présente un trou.
+     */
+    List<ChunkId> fileChunks(String filename);
+
+    boolean containsFile(String filename);
+
+    /**
+     * @return le nombre de chunks de chaque fichier, dans l'ordre d'ingestion
+     */
+    Map<String, Integer> listFiles();
+
+    /**
+     * Retire les chunks du fichier à partir de {@code fromChunkNumber} et son entrée de catalogue,
+     * ensemble.
+     */
+    void forgetFile(String filename, int fromChunkNumber);
+
+    Map<String, FileCatalogEntry> loadCatalog();
+
+    void recordFile(FileCatalogEntry entry);
+
+    /**
+     * @return null si la clé est absente
+     */
+    String getMeta(String key);
+
+    void putMeta(String key, String value);
+
+    List<StoredDictionary> loadDictionaries();
+
+    /**
+     * @return l'identifiant attribué au dictionnaire
+     */
+    int saveDictionary(String fileType, byte[] content);
+
+    /**
+     * Statistiques de déduplication calculées sur les références des fichiers.
+     */
+    DeduplicationStats referenceStats();
+
+    @Override
+    void close();
+}
@@ -2,23 +2,96 @@ package org.hetic;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.hetic.models.ChunkId;
 import org.hetic.models.ChunkMetadata;
+import org.hetic.models.ChunkRecord;
+import org.hetic.models.DedupCacheStats;
 import org.hetic.models.DeduplicationStats;
+import org.hetic.models.FileCatalogEntry;
+import org.hetic.models.PackLocation;
+import org.hetic.models.PendingChunk;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
 import java.nio.file.Paths;
-import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import static org.hetic.ChunkStorageUtils.hashChunk;
-
-public class SQLChunkStorageSystem {
+public class SQLChunkStorageSystem implements AutoCloseable {
     protected static final String STORAGE_BASE_PATH = "storage";
+    // Les batchs JDBC sont réécrits en INSERT multi-lignes par le driver
+    public static final String DEFAULT_JDBC_URL = "jdbc:postgresql://localhost:5432/filecompressor?reWriteBatchedInserts=true";
+    protected static final String DEFAULT_USERNAME = "postgres";
+    protected static final String DEFAULT_PASSWORD = "root";
+    // Les étapes de migration sont décrites dans upgradeSchema
+    private static final int SCHEMA_VERSION = 8;
+    // Version 6 : dépôt persistant ; les migrations à partir de cette version conservent les données
+    private static final int FIRST_PERSISTENT_VERSION = 6;
+    private static final int DEDUP_CACHE_CAPACITY = 100_000;
+    private static final long EXPECTED_CHUNKS = 10_000_000L;
+    // Null pour un dépôt embarqué
     private final HikariDataSource dataSource;
+    private final DedupIndexCache dedupCache;
+    private final ChunkHasher hasher;
+    private final boolean verifyMatches;
+    private final PackFileStore packStore;
+    private final ChunkIndex chunkIndex;
+    private final RecipeStore recipes;
+    private final boolean persistent;
+    // Écritures asynchrones : un thread virtuel par lot, bloqué sur le disque ou le pool sans coût
+    private final ExecutorService storageWriters = Executors.newVirtualThreadPerTaskExecutor();
+    private final ChunkClaims claims = new ChunkClaims();
 
     public SQLChunkStorageSystem() {
+        this(Sha256ChunkHasher.INSTANCE, false);
+    }
+
+    /**
+     * @param hasher        algorithme d'empreinte du dépôt
+     * @param verifyMatches confirmer par SHA-256 chaque doublon trouvé avec un algorithme non cryptographique
+     */
+    public SQLChunkStorageSystem(ChunkHasher hasher, boolean verifyMatches) {
+        this(DEFAULT_JDBC_URL, DEFAULT_USERNAME, DEFAULT_PASSWORD, hasher, verifyMatches);
+    }
+
+    /**
+     * Base de données explicite (bancs d'essai, base embarquée...).
+     * Ajouter {@code reWriteBatchedInserts=true} à l'URL pour des insertions en lot efficaces.
+     */
+    public SQLChunkStorageSystem(String jdbcUrl, String username, String password,
+                                 ChunkHasher hasher, boolean verifyMatches) {
+        this(jdbcUrl, username, password, hasher, verifyMatches, false);
+    }
+
+    /**
+     * @param persistent conserver la base et les packs d'une exécution à l'autre (ingestion
+     *                   incrémentale) au lieu de repartir d'un dépôt vide
+     */
+    public SQLChunkStorageSystem(String jdbcUrl, String username, String password,
+                                 ChunkHasher hasher, boolean verifyMatches, boolean persistent) {
+        this(jdbcUrl, username, password, hasher, verifyMatches, persistent, ChunkIndex.Backend.POSTGRES);
+    }
+
+    public SQLChunkStorageSystem(ChunkHasher hasher, boolean verifyMatches, boolean persistent,
+                                 ChunkIndex.Backend indexBackend) {
+        this(DEFAULT_JDBC_URL, DEFAULT_USERNAME, DEFAULT_PASSWORD, hasher, verifyMatches, persistent, indexBackend);
+    }
+
+    /**
+     * @param indexBackend {@code POSTGRES} : index des chunks, listes de chunks des fichiers et
+     *                     catalogue dans PostgreSQL ; {@code EMBEDDED} : dépôt entièrement local,
+     *                     à côté des packs, sans base de données (l'URL JDBC est alors ignorée)
+     */
+    public SQLChunkStorageSystem(String jdbcUrl, String username, String password, ChunkHasher hasher,
+                                 boolean verifyMatches, boolean persistent, ChunkIndex.Backend indexBackend) {
+        this.hasher = hasher;
+        this.persistent = persistent;
+        this.verifyMatches = verifyMatches && !hasher.isCryptographic();
 
         ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) 
             org.slf4j.LoggerFactory.getLogger(ch.qos.logback.classic.Logger.ROOT_LOGGER_NAME);
@@ -29,55 +102,203 @@ public class SQLChunkStorageSystem {
             org.slf4j.LoggerFactory.getLogger("com.zaxxer.hikari");
         hikariLogger.setLevel(ch.qos.logback.classic.Level.ERROR);
 
-        this.dataSource = setupDataSource();
-        initializeDatabase();
-        resetDatabase();
-        initializeStorage();
+        if (indexBackend == ChunkIndex.Backend.POSTGRES) {
+            this.dataSource = setupDataSource(jdbcUrl, username, password);
+            initializeDatabase();
+            if (!persistent) {
+                resetDatabase();
+            }
+        } else {
+            this.dataSource = null;
+        }
+        this.packStore = initializeStorage();
+        this.chunkIndex = openChunkIndex(indexBackend);
+        this.recipes = openRecipeStore(indexBackend);
+        registerHasher();
+        if (dataSource != null) {
+            registerIndexBackend();
+        }
+        // Un index local répond déjà en mémoire : pas de cache à reconstruire au démarrage
+        this.dedupCache = chunkIndex.isLocal() ? null : loadDedupCache();
     }
 
-    private HikariDataSource setupDataSource() {
+    private HikariDataSource setupDataSource(String jdbcUrl, String username, String password) {
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:postgresql://localhost:5432/filecompressor");
-        config.setUsername("postgres");
-        config.setPassword("root");
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(username);
+        config.setPassword(password);
         config.setMaximumPoolSize(10);
         return new HikariDataSource(config);
     }
 
+    /**
+     * @throws IllegalStateException pour un dépôt embarqué, sans base de données
+     */
     public Connection getConnection() throws SQLException {
+        if (dataSource == null) {
+            throw new IllegalStateException("Dépôt embarqué : aucune base de données");
+        }
         return dataSource.getConnection();
     }
 
+    private ChunkIndex openChunkIndex(ChunkIndex.Backend backend) {
+        return switch (backend) {
+            case POSTGRES -> new PostgresChunkIndex(dataSource);
+            case EMBEDDED -> {
+                try {
+                    // Le journal vit avec les packs : il est vidé avec eux hors mode persistant
+                    yield new EmbeddedChunkIndex(packStore.getDirectory());
+                } catch (IOException e) {
+                    throw new RuntimeException("Erreur lors de l'ouverture de l'index des chunks", e);
+                }
+            }
+        };
+    }
+
+    private RecipeStore openRecipeStore(ChunkIndex.Backend backend) {
+        return switch (backend) {
+            case POSTGRES -> new PostgresRecipeStore(dataSource);
+            case EMBEDDED -> {
+                try {
+                    yield new EmbeddedRecipeStore(packStore.getDirectory());
+                } catch (IOException e) {
+                    throw new RuntimeException("Erreur lors de l'ouverture du journal des fichiers", e);
+                }
+            }
+        };
+    }
+
+    public ChunkIndex getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public RecipeStore getRecipeStore() {
+        return recipes;
+    }
+
+    /**
+     * Attend les lots en cours d'écriture asynchrone, puis ferme les packs, l'index des chunks,
+     * le journal des fichiers et le pool de connexions.
+     */
+    @Override
+    public void close() {
+        storageWriters.close();
+        try {
+            packStore.close();
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la fermeture des packs : " + e.getMessage());
+        } finally {
+            chunkIndex.close();
+            recipes.close();
+            if (dataSource != null) {
+                dataSource.close();
+            }
+        }
+    }
+
     private void initializeDatabase() {
         try (Connection conn = dataSource.getConnection();
              Statement stmt = conn.createStatement()) {
-            
+
+            migrateSchema(stmt);
+
             stmt.execute("""
                 CREATE TABLE IF NOT EXISTS chunks (
-                    chunk_hash VARCHAR(64) PRIMARY KEY,
-                    file_path TEXT NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    chunk_hash BYTEA PRIMARY KEY,
+                    pack_id INT NOT NULL,
+                    pack_offset BIGINT NOT NULL,
+                    stored_length INT NOT NULL,
+                    original_size INT NOT NULL,
+                    verify_digest BYTEA,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    orphaned_at TIMESTAMP
                 )
             """);
+            // Chunks sans référence, repérés par le ramasse-miettes, et contenu de chaque pack
+            stmt.execute("CREATE INDEX IF NOT EXISTS chunks_orphaned_idx ON chunks (orphaned_at) WHERE orphaned_at IS NOT NULL");
+            stmt.execute("CREATE INDEX IF NOT EXISTS chunks_pack_idx ON chunks (pack_id)");
             
             stmt.execute("""
                 CREATE TABLE IF NOT EXISTS file_chunks (
                     id SERIAL PRIMARY KEY,
                     filename TEXT NOT NULL,
-                    chunk_hash VARCHAR(64) REFERENCES chunks(chunk_hash),
+                    chunk_hash BYTEA REFERENCES chunks(chunk_hash),
                     chunk_number INT NOT NULL,
                     UNIQUE(filename, chunk_number)
                 )
             """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS file_chunks_hash_idx ON file_chunks (chunk_hash)");
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS file_catalog (
+                    filename TEXT PRIMARY KEY,
+                    file_size BIGINT NOT NULL,
+                    modified_time BIGINT NOT NULL,
+                    content_digest BYTEA,
+                    ingested_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+            """);
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS repository_meta (
+                    key TEXT PRIMARY KEY,
+                    value TEXT NOT NULL
+                )
+            """);
             
         } catch (SQLException e) {
             throw new RuntimeException("Erreur d'initialisation de la base de données", e);
         }
     }
 
+    /**
+     * Met le schéma à jour. Les tables des versions antérieures au dépôt persistant (empreintes
+     * hexadécimales, un fichier par chunk...) ne contiennent qu'une analyse jetable : elles sont
+     * supprimées puis recréées. À partir de la version 6, les migrations sont additives et un
+     * dépôt persistant garde ses fichiers et ses chunks.
+     */
+    private void migrateSchema(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS schema_info (version INT NOT NULL)");
+        ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_info");
+        int version = rs.next() ? rs.getInt(1) : 0;
+        if (version == SCHEMA_VERSION) {
+            return;
+        }
+        if (version > SCHEMA_VERSION) {
+            throw new IllegalStateException("Schéma de base de données en version " + version
+                    + ", plus récente que celle de l'application (" + SCHEMA_VERSION + ")");
+        }
+        if (version < FIRST_PERSISTENT_VERSION) {
+            stmt.execute("DROP TABLE IF EXISTS file_catalog CASCADE");
+            stmt.execute("DROP TABLE IF EXISTS file_chunks CASCADE");
+            stmt.execute("DROP TABLE IF EXISTS chunks CASCADE");
+        } else {
+            upgradeSchema(stmt, version);
+        }
+        stmt.execute("DELETE FROM schema_info");
+        stmt.execute("INSERT INTO schema_info (version) VALUES (" + SCHEMA_VERSION + ")");
+        System.out.println("Schéma de base de données mis à jour en version " + SCHEMA_VERSION);
+    }
+
+    /**
+     * Étapes de migration d'un dépôt persistant, appliquées dans l'ordre depuis sa version. Les
+     * index ajoutés par une version sont créés par {@link #initializeDatabase} ({@code IF NOT EXISTS}).
+     */
+    private void upgradeSchema(Statement stmt, int version) throws SQLException {
+        // Version 7 : empreinte complète facultative, inconnue après une reprise du découpage
+        if (version < 7) {
+            stmt.execute("ALTER TABLE file_catalog ALTER COLUMN content_digest DROP NOT NULL");
+        }
+        // Version 8 : date à laquelle le ramasse-miettes a trouvé le chunk sans référence
+        if (version < 8) {
+            stmt.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS orphaned_at TIMESTAMP");
+        }
+    }
+
     private void resetDatabase() {
         try (Connection conn = dataSource.getConnection();
              Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE file_catalog");
             stmt.execute("TRUNCATE TABLE file_chunks CASCADE");
             stmt.execute("TRUNCATE TABLE chunks CASCADE");
             System.out.println("Base de données réinitialisée pour une nouvelle analyse.");
@@ -86,14 +307,204 @@ public class SQLChunkStorageSystem {
         }
     }
 
-    protected String generateStoragePath(String hash) {
-        return Paths.get(STORAGE_BASE_PATH, hash).toString();
+    /**
+     * Enregistre l'algorithme d'empreinte du dépôt. Un dépôt qui contient déjà des chunks
+     * ne peut pas changer d'algorithme : ses identifiants ne seraient plus comparables.
+     */
+    private void registerHasher() {
+        String registered = recipes.getMeta("chunk_hasher");
+        if (registered != null && !registered.equals(hasher.name()) && !chunkIndex.isEmpty()) {
+            throw new IllegalStateException("Le dépôt utilise l'empreinte " + registered
+                    + ", impossible de l'ouvrir avec " + hasher.name());
+        }
+        recipes.putMeta("chunk_hasher", hasher.name());
+    }
+
+    /**
+     * Une base dont {@code file_chunks} référence des chunks d'un index embarqué (versions où seul
+     * l'index pouvait quitter PostgreSQL) ne peut pas passer à la table {@code chunks} : ces
+     * chunks y seraient introuvables. Sinon, la clé étrangère de {@code file_chunks} est rétablie
+     * si une telle version l'avait retirée.
+     */
+    private void registerIndexBackend() {
+        String name = ChunkIndex.Backend.POSTGRES.name().toLowerCase();
+        String registered = recipes.getMeta("chunk_index");
+        if (registered != null && !registered.equals(name) && !recipes.listFiles().isEmpty()) {
+            throw new IllegalStateException("Le dépôt utilise l'index de chunks " + registered
+                    + ", impossible de l'ouvrir avec " + name);
+        }
+        recipes.putMeta("chunk_index", name);
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            ResultSet constraint = stmt.executeQuery(
+                    "SELECT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'file_chunks_chunk_hash_fkey')");
+            constraint.next();
+            if (!constraint.getBoolean(1)) {
+                stmt.execute("""
+                    ALTER TABLE file_chunks ADD CONSTRAINT file_chunks_chunk_hash_fkey
+                    FOREIGN KEY (chunk_hash) REFERENCES chunks(chunk_hash)
+                """);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Erreur lors de l'enregistrement de l'index des chunks", e);
+        }
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * État de tous les fichiers déjà ingérés, par nom de fichier.
+     */
+    public Map<String, FileCatalogEntry> loadFileCatalog() {
+        return recipes.loadCatalog();
+    }
+
+    /**
+     * Enregistre l'état d'un fichier dont tous les chunks sont persistés.
+     */
+    public void recordFile(FileCatalogEntry entry) {
+        recipes.recordFile(entry);
+    }
+
+    /**
+     * Oublie la version ingérée d'un fichier avant de le ré-ingérer : sa liste de chunks et
+     * son entrée de catalogue disparaissent ensemble, si bien qu'une ingestion interrompue
+     * est simplement reprise à la prochaine exécution. Les chunks eux-mêmes restent stockés.
+     */
+    public void forgetFile(String filename) {
+        forgetFile(filename, 0);
+    }
+
+    /**
+     * Comme {@link #forgetFile(String)}, mais ne retire que les chunks du fichier à partir de
+     * {@code fromChunkNumber} : le début, inchangé, est conservé pour une reprise du découpage.
+     */
+    public void forgetFile(String filename, int fromChunkNumber) {
+        recipes.forgetFile(filename, fromChunkNumber);
+    }
+
+    /**
+     * Supprime un fichier du dépôt. Ses chunks qui ne sont plus référencés par aucun autre
+     * fichier sont récupérés plus tard par le {@link GarbageCollector}.
+     *
+     * @return false si le fichier était inconnu
+     */
+    public boolean deleteFile(String filename) {
+        if (!recipes.containsFile(filename)) {
+            return false;
+        }
+        forgetFile(filename);
+        return true;
+    }
+
+    /**
+     * @return le nombre de chunks de chaque fichier, dans l'ordre d'ingestion
+     */
+    public Map<String, Integer> listFiles() {
+        return recipes.listFiles();
+    }
+
+    /**
+     * Chunks d'un fichier dans l'ordre, avec leur taille d'origine.
+     * La liste est vide si le fichier est inconnu ou si sa numérotation présente un trou.
+     */
+    public List<ChunkMetadata> getFileChunks(String filename) {
+        List<ChunkId> hashes = recipes.fileChunks(filename);
+
+        // Emplacements et tailles depuis l'index, en une seule recherche pour tout le fichier
+        Map<ChunkId, ChunkRecord> records = chunkIndex.lookup(new HashSet<>(hashes));
+        List<ChunkMetadata> fileChunks = new ArrayList<>(hashes.size());
+        for (ChunkId hash : hashes) {
+            ChunkRecord record = records.get(hash);
+            if (record == null) {
+                throw new IllegalStateException("Chunk " + hash + " de " + filename + " absent de l'index");
+            }
+            fileChunks.add(new ChunkMetadata(hash, record.originalSize(), describeLocation(record.location()),
+                    record.location()));
+        }
+        return fileChunks;
+    }
+
+    public ChunkHasher getHasher() {
+        return hasher;
+    }
+
+    public ChunkId hashChunk(ByteBuffer chunk) {
+        return hasher.hash(chunk);
+    }
+
+    public boolean requiresMatchVerification() {
+        return verifyMatches;
+    }
+
+    /**
+     * Empreinte SHA-256 à stocker avec un nouveau chunk pour confirmer ses futurs doublons,
+     * ou null si la vérification n'est pas active.
+     */
+    public byte[] verificationDigest(ByteBuffer chunk) {
+        return verifyMatches ? Sha256ChunkHasher.INSTANCE.digest(chunk) : null;
+    }
+
+    /**
+     * Confirme par SHA-256 que des chunks trouvés par une empreinte rapide sont bien
+     * identiques aux chunks stockés : une différence signale une collision et interrompt l'ajout.
+     */
+    public void confirmMatches(List<ChunkId> hashes, List<ByteBuffer> chunks) {
+        if (!verifyMatches || hashes.isEmpty()) {
+            return;
+        }
+
+        Map<ChunkId, byte[]> storedDigests = chunkIndex.verifyDigests(new LinkedHashSet<>(hashes));
+
+        for (int i = 0; i < hashes.size(); i++) {
+            byte[] stored = storedDigests.get(hashes.get(i));
+            if (stored != null && !Arrays.equals(stored, Sha256ChunkHasher.INSTANCE.digest(chunks.get(i)))) {
+                throw new IllegalStateException("Collision d'empreinte " + hasher.name() + " détectée pour " + hashes.get(i));
+            }
+        }
+    }
+
+    static Array toByteaArray(Connection conn, Collection<ChunkId> hashes) throws SQLException {
+        byte[][] keys = new byte[hashes.size()][];
+        int i = 0;
+        for (ChunkId hash : hashes) {
+            keys[i++] = hash.toBytes();
+        }
+        return conn.createArrayOf("bytea", keys);
+    }
+
+    /**
+     * Construit le filtre de présence à partir des hashs déjà indexés.
+     */
+    private DedupIndexCache loadDedupCache() {
+        long existingChunks = chunkIndex.size();
+        DedupIndexCache cache = new DedupIndexCache(DEDUP_CACHE_CAPACITY, Math.max(EXPECTED_CHUNKS, 2 * existingChunks));
+        chunkIndex.forEach(record -> cache.markPresent(record.hash(), record.location()));
+        return cache;
+    }
+
+    /**
+     * @return null quand l'index est local
+     */
+    DedupIndexCache getDedupCache() {
+        return dedupCache;
     }
 
-    private void initializeStorage() {
+    public DedupCacheStats getDedupCacheStats() {
+        return dedupCache != null ? dedupCache.getStats() : new DedupCacheStats(0, 0, 0, 0, 0);
+    }
+
+    protected String describeLocation(PackLocation location) {
+        return Paths.get(STORAGE_BASE_PATH, location.toString()).toString();
+    }
+
+    private PackFileStore initializeStorage() {
         try {
             Path storagePath = Paths.get(STORAGE_BASE_PATH);
-            if (Files.exists(storagePath)) {
+            if (!persistent && Files.exists(storagePath)) {
                 Files.walk(storagePath)
                         .sorted((a, b) -> b.compareTo(a))
                         .forEach(path -> {
@@ -106,149 +517,362 @@ public class SQLChunkStorageSystem {
             }
             Files.createDirectories(storagePath);
             System.out.println("Dossier de stockage initialisé : " + storagePath.toAbsolutePath());
+            return new PackFileStore(storagePath);
         } catch (IOException e) {
             throw new RuntimeException("Erreur lors de l'initialisation du stockage", e);
         }
     }
 
-    protected void saveChunkToStorage(byte[] chunk, String storagePath) throws IOException {
-        Path path = Paths.get(storagePath);
-        Files.createDirectories(path.getParent());
-        Files.write(path, chunk);
-        System.out.println("Chunk sauvegardé : " + path.toAbsolutePath());
+    /**
+     * Représentation du chunk telle qu'elle est écrite dans le stockage.
+     * Brute ici ; {@link CompressedChunkStorageSystem} la compresse.
+     * Elle peut être appelée depuis plusieurs threads.
+     *
+     * @param filename fichier d'origine du chunk (son type peut orienter l'encodage)
+     */
+    public ByteBuffer encodeChunk(ByteBuffer chunk, String filename) {
+        return chunk.duplicate();
     }
 
-    protected byte[] readChunkFromStorage(String storagePath) throws IOException {
-        return Files.readAllBytes(Paths.get(storagePath));
+    /**
+     * Rend un buffer produit par {@link #encodeChunk} une fois le chunk persisté.
+     */
+    public void releaseEncoded(ByteBuffer encoded) {
+        // Rien à libérer : le buffer encodé est une vue du chunk d'origine
     }
 
-    public ChunkMetadata addChunk(byte[] chunk, String filename, int chunkNumber) throws NoSuchAlgorithmException {
-        String hash = hashChunk(chunk);
-        String storagePath = generateStoragePath(hash);
-        
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
-            try {
-                boolean chunkExists = false;
-                try (PreparedStatement checkStmt = conn.prepareStatement(
-                    "SELECT 1 FROM chunks WHERE chunk_hash = ?")) {
-                    checkStmt.setString(1, hash);
-                    ResultSet rs = checkStmt.executeQuery();
-                    chunkExists = rs.next();
-                }
+    protected PackLocation writeToStorage(ChunkId hash, ByteBuffer data) throws IOException {
+        // Écriture directe depuis le buffer (éventuellement projeté), sans copie sur le tas
+        return packStore.append(hash, data);
+    }
+
+    /**
+     * Représentation stockée d'un chunk, telle que produite par {@link #encodeChunk}.
+     */
+    public byte[] readStoredChunk(PackLocation location) throws IOException {
+        return packStore.read(location);
+    }
 
-                if (!chunkExists) {
-                    try (PreparedStatement insertChunkStmt = conn.prepareStatement(
-                        "INSERT INTO chunks (chunk_hash, file_path) VALUES (?, ?)")) {
-                        insertChunkStmt.setString(1, hash);
-                        insertChunkStmt.setString(2, storagePath);
-                        insertChunkStmt.executeUpdate();
-
-                        try {
-                            saveChunkToStorage(chunk, storagePath);
-                        } catch (IOException e) {
-                            throw new SQLException("Erreur lors de la sauvegarde physique du chunk", e);
-                        }
+    protected byte[] readChunkFromStorage(PackLocation location) throws IOException {
+        return readStoredChunk(location);
+    }
+
+    public PackFileStore getPackStore() {
+        return packStore;
+    }
+
+    public ChunkMetadata addChunk(byte[] chunk, String filename, int chunkNumber) {
+        return addChunk(ByteBuffer.wrap(chunk), filename, chunkNumber);
+    }
+
+    /**
+     * Ajoute un chunk lu depuis un buffer : un chunk déjà connu n'est jamais copié,
+     * seul un nouveau chunk est lu pour être écrit dans le stockage.
+     */
+    public ChunkMetadata addChunk(ByteBuffer chunk, String filename, int chunkNumber) {
+        return addChunks(List.of(chunk), filename, chunkNumber).get(0);
+    }
+
+    /**
+     * Ajoute des chunks consécutifs d'un même fichier, numérotés à partir de {@code firstChunkNumber},
+     * avec une seule recherche de doublons et une seule transaction. Un nouveau chunk n'est encodé
+     * que par le premier thread à le réserver ({@link ChunkClaims}).
+     */
+    public List<ChunkMetadata> addChunks(List<ByteBuffer> chunks, String filename, int firstChunkNumber) {
+        List<ChunkId> hashes = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            hashes.add(hashChunk(chunk));
+        }
+
+        Set<ChunkId> existing = findExistingChunks(hashes);
+        List<ChunkId> matchedHashes = new ArrayList<>();
+        List<ByteBuffer> matchedChunks = new ArrayList<>();
+        List<PendingChunk> batch = new ArrayList<>(chunks.size());
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                ByteBuffer chunk = chunks.get(i);
+                ChunkId hash = hashes.get(i);
+                if (existing.contains(hash)) {
+                    matchedHashes.add(hash);
+                    matchedChunks.add(chunk);
+                    batch.add(new PendingChunk(hash, null, null, chunk.remaining(), filename, firstChunkNumber + i));
+                } else if (claims.tryClaim(hash)) {
+                    try {
+                        batch.add(new PendingChunk(hash, encodeChunk(chunk, filename), verificationDigest(chunk),
+                                chunk.remaining(), filename, firstChunkNumber + i));
+                    } catch (RuntimeException e) {
+                        claims.abandon(hash, e);
+                        throw e;
                     }
+                } else {
+                    // Déjà réservé, par ce lot ou par un autre thread : seule la référence est à écrire
+                    batch.add(new PendingChunk(hash, null, null, chunk.remaining(), filename, firstChunkNumber + i));
                 }
+            }
+            confirmMatches(matchedHashes, matchedChunks);
+        } catch (RuntimeException e) {
+            abandonClaims(batch, e);
+            for (PendingChunk chunk : batch) {
+                releaseEncoded(chunk.encoded());
+            }
+            throw e;
+        }
+        try {
+            return addEncodedChunks(batch);
+        } finally {
+            for (PendingChunk chunk : batch) {
+                releaseEncoded(chunk.encoded());
+            }
+        }
+    }
+
+    /**
+     * Recherche de doublons pour tout un lot en une seule interrogation de l'index. Les doublons
+     * trouvés, y compris ceux que le cache annonce sans requête, sont protégés du ramasse-miettes
+     * jusqu'à l'écriture de leurs références ({@link ChunkIndex#retain}) ; un chunk supprimé
+     * entre-temps est traité comme nouveau.
+     *
+     * @return les hashs déjà indexés
+     */
+    public Set<ChunkId> findExistingChunks(Collection<ChunkId> hashes) {
+        if (dedupCache == null) {
+            Set<ChunkId> existing = chunkIndex.lookup(new LinkedHashSet<>(hashes)).keySet();
+            return existing.isEmpty() ? new HashSet<>() : chunkIndex.retain(existing);
+        }
+        Set<ChunkId> existing = new HashSet<>();
+        List<ChunkId> toQuery = new ArrayList<>();
+        for (ChunkId hash : new LinkedHashSet<>(hashes)) {
+            switch (dedupCache.classify(hash)) {
+                case PRESENT -> existing.add(hash);
+                case UNKNOWN -> toQuery.add(hash);
+                case ABSENT -> { } // Nouveau à coup sûr : pas de requête
+            }
+        }
+        if (!toQuery.isEmpty()) {
+            Map<ChunkId, ChunkRecord> found = chunkIndex.lookup(toQuery);
+            for (ChunkRecord record : found.values()) {
+                existing.add(record.hash());
+                dedupCache.markPresent(record.hash(), record.location());
+            }
+            for (int i = found.size(); i < toQuery.size(); i++) {
+                dedupCache.recordFalsePositive();
+            }
+        }
+        if (existing.isEmpty()) {
+            return existing;
+        }
+
+        Set<ChunkId> retained = chunkIndex.retain(existing);
+        for (ChunkId hash : existing) {
+            if (!retained.contains(hash)) {
+                dedupCache.invalidate(hash);
+            }
+        }
+        return retained;
+    }
+
+    public boolean chunkExists(ChunkId hash) {
+        return !findExistingChunks(List.of(hash)).isEmpty();
+    }
+
+    public ChunkMetadata addEncodedChunk(ChunkId hash, ByteBuffer encoded, long originalSize,
+                                         String filename, int chunkNumber) {
+        return addEncodedChunks(List.of(new PendingChunk(hash, encoded, null, originalSize, filename, chunkNumber))).get(0);
+    }
+
+    /**
+     * Réservations des nouveaux chunks en cours d'écriture : un chunk découvert en même temps par
+     * plusieurs threads n'est compressé et écrit qu'une fois.
+     */
+    public ChunkClaims getClaims() {
+        return claims;
+    }
+
+    /**
+     * Persiste un lot de chunks déjà hashés et encodés (éventuellement de plusieurs fichiers) :
+     * {@link #storeNewChunks} puis {@link #commitReferences}.
+     * <p>
+     * Cohérence après un arrêt brutal, selon le moment de l'arrêt :
+     * <ul>
+     *   <li>avant la mise sur disque des packs : rien ne référence les octets perdus ;</li>
+     *   <li>avant l'index : des octets inutilisés dans le pack (récupérables par compactage) ;</li>
+     *   <li>avant les références : des chunks indexés sans référence, que le
+     *   {@link GarbageCollector} récupère ;</li>
+     * </ul>
+     * un chunk indexé est donc toujours lisible. Rejouer un lot est sans effet de bord : l'index
+     * garde sa première entrée et les références déjà écrites sont conservées. Une référence
+     * existante vers un autre chunk, elle, fait échouer le lot ({@link RecipeStore#addReferences}).
+     */
+    public List<ChunkMetadata> addEncodedChunks(List<PendingChunk> batch) {
+        return commitReferences(batch, storeNewChunks(batch));
+    }
 
-                try (PreparedStatement insertFileChunkStmt = conn.prepareStatement(
-                    "INSERT INTO file_chunks (filename, chunk_hash, chunk_number) VALUES (?, ?, ?)")) {
-                    insertFileChunkStmt.setString(1, filename);
-                    insertFileChunkStmt.setString(2, hash);
-                    insertFileChunkStmt.setInt(3, chunkNumber);
-                    insertFileChunkStmt.executeUpdate();
+    /**
+     * Première étape : les nouveaux chunks du lot (ceux qui ont un buffer encodé) sont ajoutés au
+     * pack courant, forcés sur disque, puis ajoutés à l'index en un seul lot. Leurs réservations
+     * sont alors libérées, ou abandonnées en cas d'erreur. Aucune connexion n'est tenue pendant
+     * l'écriture des packs, et les buffers encodés ne servent plus au retour.
+     * Si un autre processus a indexé le même chunk entre-temps, l'entrée existante est conservée
+     * et les octets ajoutés restent inutilisés dans le pack.
+     *
+     * @return l'emplacement des chunks ajoutés à l'index par ce lot
+     */
+    public Map<ChunkId, PackLocation> storeNewChunks(List<PendingChunk> batch) {
+        Map<ChunkId, PendingChunk> newChunks = new LinkedHashMap<>();
+        for (PendingChunk chunk : batch) {
+            if (chunk.encoded() != null) {
+                newChunks.putIfAbsent(chunk.hash(), chunk);
+            }
+        }
+
+        Map<ChunkId, PackLocation> locations = new HashMap<>();
+        try {
+            List<ChunkRecord> toIndex = new ArrayList<>(newChunks.size());
+            for (PendingChunk chunk : newChunks.values()) {
+                try {
+                    PackLocation written = writeToStorage(chunk.hash(), chunk.encoded());
+                    toIndex.add(new ChunkRecord(chunk.hash(), written, Math.toIntExact(chunk.originalSize()),
+                            chunk.verifyDigest()));
+                } catch (IOException e) {
+                    throw new RuntimeException("Erreur lors de la sauvegarde physique du chunk", e);
                 }
+            }
+            if (!toIndex.isEmpty()) {
+                try {
+                    packStore.awaitDurable();
+                } catch (IOException e) {
+                    throw new RuntimeException("Erreur lors de la mise sur disque des packs", e);
+                }
+            }
+            Set<ChunkId> inserted = chunkIndex.insertIfAbsent(toIndex);
+            for (ChunkRecord record : toIndex) {
+                if (inserted.contains(record.hash())) {
+                    locations.put(record.hash(), record.location());
+                }
+            }
+        } catch (RuntimeException e) {
+            abandonClaims(batch, e);
+            throw e;
+        }
+        // Indexés (par ce lot ou ailleurs) : les threads qui attendaient ces chunks peuvent continuer
+        for (ChunkId hash : newChunks.keySet()) {
+            claims.release(hash);
+        }
+        return locations;
+    }
 
-                conn.commit();
-                return new ChunkMetadata(hash, chunk.length, storagePath);
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            } finally {
-                conn.setAutoCommit(true);
+    /**
+     * Seconde étape : les références du lot sont écrites d'un bloc par le {@link RecipeStore}
+     * (un batch JDBC dans une seule transaction avec PostgreSQL). Un chunk réservé par un autre
+     * thread est d'abord attendu jusqu'à ce qu'il soit indexé ; un lot n'attend jamais avant
+     * d'avoir indexé ses propres chunks, si bien que deux lots qui s'attendent mutuellement
+     * progressent toujours.
+     *
+     * @param stored emplacements retournés par {@link #storeNewChunks} pour ce lot
+     * @throws IllegalStateException si un chunk attendu n'a pas pu être indexé
+     */
+    public List<ChunkMetadata> commitReferences(List<PendingChunk> batch, Map<ChunkId, PackLocation> stored) {
+        Map<ChunkId, PackLocation> locations = new HashMap<>(stored);
+
+        // Doublons (et nouveaux chunks indexés entre-temps ailleurs) : emplacement depuis le cache ou l'index
+        Set<ChunkId> unresolved = new LinkedHashSet<>();
+        for (PendingChunk chunk : batch) {
+            if (!locations.containsKey(chunk.hash())) {
+                PackLocation cached = dedupCache != null ? dedupCache.location(chunk.hash()) : null;
+                if (cached != null) {
+                    locations.put(chunk.hash(), cached);
+                } else {
+                    unresolved.add(chunk.hash());
+                }
+            }
+        }
+        if (!unresolved.isEmpty()) {
+            for (ChunkId hash : unresolved) {
+                claims.await(hash);
+            }
+            for (ChunkRecord record : chunkIndex.lookup(unresolved).values()) {
+                locations.put(record.hash(), record.location());
+            }
+            for (ChunkId hash : unresolved) {
+                if (!locations.containsKey(hash)) {
+                    throw new IllegalStateException("Chunk absent de l'index: " + hash);
+                }
+            }
+        }
+
+        recipes.addReferences(batch);
+
+        // Seulement après le commit : le cache ne doit jamais annoncer un chunk absent de l'index
+        if (dedupCache != null) {
+            for (PendingChunk chunk : batch) {
+                dedupCache.markPresent(chunk.hash(), locations.get(chunk.hash()));
+            }
+        }
+
+        List<ChunkMetadata> metadata = new ArrayList<>(batch.size());
+        for (PendingChunk chunk : batch) {
+            PackLocation location = locations.get(chunk.hash());
+            metadata.add(new ChunkMetadata(chunk.hash(), chunk.originalSize(), describeLocation(location), location));
+        }
+        return metadata;
+    }
+
+    /**
+     * {@link #addEncodedChunks} sur des threads virtuels : l'appelant enchaîne avec le lot suivant
+     * pendant l'écriture des packs et les transactions de celui-ci.
+     *
+     * @param onStored appelé une fois {@link #storeNewChunks} terminé, avec ou sans erreur : les
+     *                 buffers encodés du lot peuvent alors être rendus ({@link #releaseEncoded})
+     *                 sans attendre les références
+     */
+    public CompletableFuture<List<ChunkMetadata>> addEncodedChunksAsync(List<PendingChunk> batch, Runnable onStored) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return storeNewChunks(batch);
+                    } finally {
+                        onStored.run();
+                    }
+                }, storageWriters)
+                .thenApplyAsync(stored -> commitReferences(batch, stored), storageWriters);
+    }
+
+    private void abandonClaims(List<PendingChunk> batch, Throwable cause) {
+        for (PendingChunk chunk : batch) {
+            if (chunk.encoded() != null) {
+                claims.abandon(chunk.hash(), cause);
             }
-        } catch (SQLException e) {
-            throw new RuntimeException("Erreur lors de l'ajout du chunk", e);
         }
     }
 
     public void printChunkDetails() {
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            ResultSet rs = stmt.executeQuery("""
-                SELECT c.chunk_hash, 
-                       c.file_path,
-                       COUNT(fc.id) as reference_count
-                FROM chunks c
-                JOIN file_chunks fc ON c.chunk_hash = fc.chunk_hash
-                GROUP BY c.chunk_hash, c.file_path
-                ORDER BY reference_count DESC
-            """);
+        System.out.println("\nDétails des chunks en base de données :");
+        System.out.println("----------------------------------------");
+        if (dataSource != null) {
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
 
-            System.out.println("\nDétails des chunks en base de données :");
-            System.out.println("----------------------------------------");
-            // while (rs.next()) {
-            //     System.out.printf("Hash: %-10s | Stockage: %-40s | Références: %d%n",
-            //         rs.getString("chunk_hash").substring(0, 8) + "...",
-            //         rs.getString("file_path"),
-            //         rs.getInt("reference_count")
-            //     );
-            // }
-            System.out.println("----------------------------------------\n");
-        } catch (SQLException e) {
-            throw new RuntimeException("Erreur lors de l'affichage des détails des chunks", e);
+                ResultSet rs = stmt.executeQuery("""
+                    SELECT chunk_hash,
+                           COUNT(id) as reference_count
+                    FROM file_chunks
+                    GROUP BY chunk_hash
+                    ORDER BY reference_count DESC
+                """);
+
+                // while (rs.next()) {
+                //     System.out.printf("Hash: %-10s | Références: %d%n",
+                //         ChunkId.fromBytes(rs.getBytes("chunk_hash")).toHex().substring(0, 8) + "...",
+                //         rs.getInt("reference_count")
+                //     );
+                // }
+            } catch (SQLException e) {
+                throw new RuntimeException("Erreur lors de l'affichage des détails des chunks", e);
+            }
         }
+        System.out.println("----------------------------------------\n");
     }
+
     public DeduplicationStats calculateDetailedStats() {
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            ResultSet rs = stmt.executeQuery("""
-                WITH chunk_stats AS (
-                    SELECT c.chunk_hash,
-                           COUNT(fc.id) as ref_count
-                    FROM chunks c
-                    JOIN file_chunks fc ON c.chunk_hash = fc.chunk_hash
-                    GROUP BY c.chunk_hash
-                ),
-                summary AS (
-                    SELECT 
-                        COUNT(*) as total_unique_chunks,
-                        SUM(ref_count) as total_references,
-                        COUNT(CASE WHEN ref_count > 1 THEN 1 END) as duplicated_chunks
-                    FROM chunk_stats
-                )
-                SELECT 
-                    total_references as total_chunks,
-                    total_unique_chunks as unique_chunks,
-                    duplicated_chunks as duplicate_chunks,
-                    CASE 
-                        WHEN total_references > 0 
-                        THEN ROUND(CAST((total_references - total_unique_chunks)::FLOAT / total_references * 100 as NUMERIC), 2)
-                        ELSE 0.0 
-                    END as deduplication_ratio
-                FROM summary
-            """);
-    
-            if (rs.next()) {
-                long totalChunks = rs.getLong("total_chunks");
-                long uniqueChunks = rs.getLong("unique_chunks");
-                long duplicateChunks = rs.getLong("duplicate_chunks");
-    
-                return new DeduplicationStats(
-                    totalChunks,
-                    uniqueChunks,
-                    duplicateChunks,
-                    rs.getDouble("deduplication_ratio")
-                );
-            }
-    
-            // Aucun résultat trouvé
-            return new DeduplicationStats(0, 0, 0, 0.0);
-        } catch (SQLException e) {
-            throw new RuntimeException("Erreur lors du calcul des statistiques", e);
-        }
+        return recipes.referenceStats();
     }
-}
\ No newline at end of file
+}
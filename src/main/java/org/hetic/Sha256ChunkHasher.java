@@ -0,0 +1,49 @@
+package org.hetic;
+
+import org.hetic.models.ChunkId;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 avec un {@link MessageDigest} réutilisé par thread : la recherche du provider
+ * n'a lieu qu'une fois par thread au lieu d'une fois par chunk.
+ */
+public final class Sha256ChunkHasher implements ChunkHasher {
+    public static final String NAME = "sha256";
+    public static final Sha256ChunkHasher INSTANCE = new Sha256ChunkHasher();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    });
+
+    private Sha256ChunkHasher() {
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isCryptographic() {
+        return true;
+    }
+
+    @Override
+    public ChunkId hash(ByteBuffer chunk) {
+        return ChunkId.fromBytes(digest(chunk));
+    }
+
+    /** Empreinte brute, utilisée aussi pour confirmer les correspondances d'un hash rapide. */
+    public byte[] digest(ByteBuffer chunk) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(chunk.duplicate());
+        return digest.digest();
+    }
+}
@@ -0,0 +1,418 @@
+package org.hetic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Corpus de test synthétique et reproductible : à configuration et graine égales, les mêmes
+ * fichiers octet pour octet sur toutes les machines, pour comparer les mesures entre exécutions.
+ * <p>
+ * Chaque fichier est décrit par une recette (suite de segments). Le contenu d'un segment est
+ * une fonction de sa graine et de la position : deux fichiers qui partagent un segment partagent
+ * exactement les mêmes octets, et un fichier peut être lu en flux sans être matérialisé.
+ * <ul>
+ *   <li>{@link Profile#VERSIONED_BACKUP} : versions successives de documents, avec des plages
+ *   modifiées et des insertions de quelques octets qui décalent tout le reste du fichier ;</li>
+ *   <li>{@link Profile#LOG_APPEND} : instantanés de journaux qui ne font que grandir ;</li>
+ *   <li>{@link Profile#VM_IMAGE} : gros fichiers faits d'extents partagés entre images,
+ *   de zones de zéros et de données propres à chaque image.</li>
+ * </ul>
+ */
+public class SyntheticCorpus {
+    private static final int BLOCK_SIZE = 64;
+    private static final int PHRASE_COUNT = 32;
+    // Graine réservée aux zones de zéros (disques virtuels)
+    private static final long ZERO_SEED = 0;
+    private static final int VERSIONS_PER_DOCUMENT = 4;
+    private static final int SNAPSHOTS_PER_LOG = 5;
+    private static final int VM_EXTENT_SIZE = 1024 * 1024;
+    private static final int VM_SHARED_EXTENTS = 32;
+    private static final byte[][] PHRASES = buildPhrases();
+
+    public enum Profile {
+        VERSIONED_BACKUP, LOG_APPEND, VM_IMAGE;
+
+        public static Profile fromName(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /**
+     * @param duplicateRatio  part du contenu d'un fichier déjà présente dans un autre fichier du corpus
+     * @param shiftInsertions nombre de petites insertions (décalages) par nouvelle version
+     * @param compressibility part des blocs de texte répétitif, le reste étant aléatoire
+     */
+    public record Config(
+        Profile profile,
+        long seed,
+        int fileCount,
+        long minFileSize,
+        long maxFileSize,
+        double duplicateRatio,
+        int shiftInsertions,
+        double compressibility
+    ) {
+        public Config {
+            if (fileCount < 1 || minFileSize < 1 || maxFileSize < minFileSize) {
+                throw new IllegalArgumentException("Nombre de fichiers ou tailles invalides");
+            }
+            if (duplicateRatio < 0 || duplicateRatio > 1 || compressibility < 0 || compressibility > 1) {
+                throw new IllegalArgumentException("Les ratios doivent être compris entre 0 et 1");
+            }
+        }
+
+        public static Config defaults(Profile profile, long seed) {
+            return switch (profile) {
+                case VERSIONED_BACKUP -> new Config(profile, seed, 20, 256 * 1024, 8 * 1024 * 1024, 0.9, 5, 0.5);
+                case LOG_APPEND -> new Config(profile, seed, 20, 64 * 1024, 4 * 1024 * 1024, 0.8, 0, 0.95);
+                case VM_IMAGE -> new Config(profile, seed, 6, 16L * 1024 * 1024, 64L * 1024 * 1024, 0.6, 0, 0.3);
+            };
+        }
+    }
+
+    /**
+     * Plage {@code [offset, offset + length)} du flux de contenu de graine {@code seed}.
+     */
+    record Segment(long seed, long offset, long length) {
+        Segment slice(long from, long sliceLength) {
+            return new Segment(seed, offset + from, sliceLength);
+        }
+    }
+
+    /**
+     * Fichier du corpus : seuls son nom et sa taille sont publics, son contenu se lit avec
+     * {@link #open}.
+     */
+    public static final class CorpusFile {
+        private final String name;
+        private final long size;
+        private final List<Segment> segments;
+
+        CorpusFile(String name, long size, List<Segment> segments) {
+            this.name = name;
+            this.size = size;
+            this.segments = segments;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        List<Segment> segments() {
+            return segments;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + size + " octets)";
+        }
+    }
+
+    private final Config config;
+    private final List<CorpusFile> files;
+    private long nextSeed;
+
+    public SyntheticCorpus(Config config) {
+        this.config = config;
+        this.nextSeed = config.seed() * 1_000_003L + 1;
+        Random random = new Random(config.seed());
+        List<CorpusFile> generated = switch (config.profile()) {
+            case VERSIONED_BACKUP -> versionedBackups(random);
+            case LOG_APPEND -> logSnapshots(random);
+            case VM_IMAGE -> vmImages(random);
+        };
+        this.files = Collections.unmodifiableList(generated);
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public List<CorpusFile> files() {
+        return files;
+    }
+
+    public long totalSize() {
+        long total = 0;
+        for (CorpusFile file : files) {
+            total += file.size();
+        }
+        return total;
+    }
+
+    /**
+     * Contenu d'un fichier généré à la volée, sans passer par le disque.
+     */
+    public InputStream open(CorpusFile file) {
+        return new SegmentInputStream(file.segments(), config.compressibility());
+    }
+
+    public byte[] readAllBytes(CorpusFile file) {
+        try (InputStream in = open(file)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Lecture impossible d'un fichier synthétique", e);
+        }
+    }
+
+    /**
+     * Matérialise le corpus dans {@code directory}.
+     */
+    public void writeTo(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (CorpusFile file : files) {
+            try (InputStream in = open(file);
+                 OutputStream out = Files.newOutputStream(directory.resolve(file.name()))) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    private long freshSeed() {
+        long seed = nextSeed++;
+        return seed == ZERO_SEED ? nextSeed++ : seed;
+    }
+
+    private long drawSize(Random random) {
+        // Distribution log-uniforme : autant de petits que de gros fichiers
+        double min = Math.log(config.minFileSize());
+        double max = Math.log(config.maxFileSize());
+        return Math.round(Math.exp(min + random.nextDouble() * (max - min)));
+    }
+
+    private List<CorpusFile> versionedBackups(Random random) {
+        List<CorpusFile> result = new ArrayList<>();
+        int documents = Math.max(1, (config.fileCount() + VERSIONS_PER_DOCUMENT - 1) / VERSIONS_PER_DOCUMENT);
+        for (int document = 0; document < documents && result.size() < config.fileCount(); document++) {
+            long size = drawSize(random);
+            List<Segment> segments = new ArrayList<>(List.of(new Segment(freshSeed(), 0, size)));
+            for (int version = 0; version < VERSIONS_PER_DOCUMENT && result.size() < config.fileCount(); version++) {
+                if (version > 0) {
+                    segments = mutate(segments, random);
+                }
+                result.add(new CorpusFile(String.format("backup-d%03d-v%02d.bin", document, version),
+                        lengthOf(segments), List.copyOf(segments)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Nouvelle version : environ {@code 1 - duplicateRatio} du contenu réécrit en quelques plages,
+     * puis les insertions de décalage.
+     */
+    private List<Segment> mutate(List<Segment> segments, Random random) {
+        long size = lengthOf(segments);
+        long changed = Math.round(size * (1 - config.duplicateRatio()));
+        int edits = 1 + random.nextInt(4);
+        for (int i = 0; i < edits && changed > 0; i++) {
+            long length = Math.max(1, changed / edits);
+            long at = (long) (random.nextDouble() * Math.max(1, size - length));
+            segments = replace(segments, at, Math.min(length, size - at), new Segment(freshSeed(), 0, length));
+        }
+        for (int i = 0; i < config.shiftInsertions(); i++) {
+            long at = (long) (random.nextDouble() * lengthOf(segments));
+            segments = replace(segments, at, 0, new Segment(freshSeed(), 0, 1 + random.nextInt(64)));
+        }
+        return segments;
+    }
+
+    private List<CorpusFile> logSnapshots(Random random) {
+        List<CorpusFile> result = new ArrayList<>();
+        int logs = Math.max(1, (config.fileCount() + SNAPSHOTS_PER_LOG - 1) / SNAPSHOTS_PER_LOG);
+        for (int log = 0; log < logs && result.size() < config.fileCount(); log++) {
+            List<Segment> segments = new ArrayList<>(List.of(new Segment(freshSeed(), 0, drawSize(random))));
+            for (int snapshot = 0; snapshot < SNAPSHOTS_PER_LOG && result.size() < config.fileCount(); snapshot++) {
+                if (snapshot > 0) {
+                    // Les lignes ajoutées représentent 1 - duplicateRatio du nouvel instantané
+                    long previous = lengthOf(segments);
+                    long appended = Math.max(1, Math.round(previous * (1 - config.duplicateRatio())
+                            / Math.max(0.01, config.duplicateRatio())));
+                    segments.add(new Segment(freshSeed(), 0, appended));
+                }
+                result.add(new CorpusFile(String.format("app%02d-%03d.log", log, snapshot),
+                        lengthOf(segments), List.copyOf(segments)));
+            }
+        }
+        return result;
+    }
+
+    private List<CorpusFile> vmImages(Random random) {
+        long[] sharedSeeds = new long[VM_SHARED_EXTENTS];
+        for (int i = 0; i < sharedSeeds.length; i++) {
+            sharedSeeds[i] = freshSeed();
+        }
+
+        List<CorpusFile> result = new ArrayList<>();
+        for (int image = 0; image < config.fileCount(); image++) {
+            long size = drawSize(random);
+            List<Segment> segments = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += VM_EXTENT_SIZE) {
+                long length = Math.min(VM_EXTENT_SIZE, size - offset);
+                double draw = random.nextDouble();
+                long seed;
+                if (draw < config.duplicateRatio()) {
+                    seed = sharedSeeds[random.nextInt(sharedSeeds.length)];
+                } else if (draw < config.duplicateRatio() + (1 - config.duplicateRatio()) / 3) {
+                    seed = ZERO_SEED;
+                } else {
+                    seed = freshSeed();
+                }
+                segments.add(new Segment(seed, 0, length));
+            }
+            result.add(new CorpusFile(String.format("vm%02d.img", image), size, List.copyOf(segments)));
+        }
+        return result;
+    }
+
+    /**
+     * Remplace la plage {@code [at, at + length)} par {@code inserted} (insertion pure si length vaut 0).
+     */
+    static List<Segment> replace(List<Segment> segments, long at, long length, Segment inserted) {
+        List<Segment> result = new ArrayList<>(segments.size() + 2);
+        // Tout ce qui précède la plage, dans l'ordre
+        long position = 0;
+        for (Segment segment : segments) {
+            if (position < at) {
+                result.add(segment.slice(0, Math.min(segment.length(), at - position)));
+            }
+            position += segment.length();
+        }
+        result.add(inserted);
+        // Puis tout ce qui la suit
+        long resumeAt = at + length;
+        position = 0;
+        for (Segment segment : segments) {
+            long end = position + segment.length();
+            if (end > resumeAt) {
+                long from = Math.max(0, resumeAt - position);
+                result.add(segment.slice(from, segment.length() - from));
+            }
+            position = end;
+        }
+        return result;
+    }
+
+    static long lengthOf(List<Segment> segments) {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.length();
+        }
+        return total;
+    }
+
+    /**
+     * Bloc de 64 octets numéro {@code block} du flux de graine {@code seed} : une phrase de texte
+     * légèrement variée (compressible) ou des octets aléatoires, selon {@code compressibility}.
+     */
+    static void fillBlock(long seed, long block, double compressibility, byte[] out) {
+        if (seed == ZERO_SEED) {
+            java.util.Arrays.fill(out, 0, BLOCK_SIZE, (byte) 0);
+            return;
+        }
+        long state = mix(seed * 0x9E3779B97F4A7C15L + mix(block));
+        double draw = (state >>> 11) * 0x1.0p-53;
+        if (draw < compressibility) {
+            System.arraycopy(PHRASES[(int) (mix(state) >>> 59)], 0, out, 0, BLOCK_SIZE);
+            long digits = mix(state + 1);
+            for (int i = 0; i < 4; i++) {
+                out[BLOCK_SIZE - 6 + i] = (byte) ('0' + (int) Long.remainderUnsigned(digits >>> (i * 8), 10));
+            }
+            return;
+        }
+        for (int i = 0; i < BLOCK_SIZE; i += Long.BYTES) {
+            state = mix(state + 0x9E3779B97F4A7C15L);
+            for (int b = 0; b < Long.BYTES; b++) {
+                out[i + b] = (byte) (state >>> (b * 8));
+            }
+        }
+    }
+
+    private static long mix(long z) {
+        // Finaliseur de SplitMix64
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static byte[][] buildPhrases() {
+        String[] words = {"INFO", "WARN", "request", "user", "session", "commit", "backup", "chunk",
+                "storage", "latency=", "status=200", "GET", "/api/v1/files", "ok", "retry", "id="};
+        Random random = new Random(0x5EEDL);
+        byte[][] phrases = new byte[PHRASE_COUNT][];
+        for (int p = 0; p < PHRASE_COUNT; p++) {
+            StringBuilder builder = new StringBuilder();
+            while (builder.length() < BLOCK_SIZE) {
+                builder.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            builder.setLength(BLOCK_SIZE - 1);
+            builder.append('\n');
+            phrases[p] = builder.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        return phrases;
+    }
+
+    private static final class SegmentInputStream extends InputStream {
+        private final List<Segment> segments;
+        private final double compressibility;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private int segmentIndex;
+        private long segmentPosition;
+        private long cachedSeed = -1;
+        private long cachedBlock = -1;
+
+        SegmentInputStream(List<Segment> segments, double compressibility) {
+            this.segments = segments;
+            this.compressibility = compressibility;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int written = 0;
+            while (written < length && segmentIndex < segments.size()) {
+                Segment segment = segments.get(segmentIndex);
+                if (segmentPosition >= segment.length()) {
+                    segmentIndex++;
+                    segmentPosition = 0;
+                    continue;
+                }
+                long streamPosition = segment.offset() + segmentPosition;
+                long blockIndex = streamPosition / BLOCK_SIZE;
+                if (segment.seed() != cachedSeed || blockIndex != cachedBlock) {
+                    fillBlock(segment.seed(), blockIndex, compressibility, block);
+                    cachedSeed = segment.seed();
+                    cachedBlock = blockIndex;
+                }
+                int inBlock = (int) (streamPosition % BLOCK_SIZE);
+                int count = (int) Math.min(Math.min(BLOCK_SIZE - inBlock, length - written),
+                        segment.length() - segmentPosition);
+                System.arraycopy(block, inBlock, buffer, offset + written, count);
+                written += count;
+                segmentPosition += count;
+            }
+            return written == 0 ? -1 : written;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.hetic.models;
+
+public record ChunkCacheStats(
+    long hits,
+    long misses,
+    long evictions,
+    long evictedBytes,
+    long rejections,
+    long cachedChunks,
+    long cachedBytes
+) {
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total * 100;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("""
+            Cache des chunks décodés :
+            - Lectures servies par le cache : %d sur %d (%.2f%%)
+            - Chunks évincés : %d (%.2f MB), dont %d refusés à l'admission
+            - En cache : %d chunks (%.2f MB)
+            """,
+            hits, hits + misses, hitRatio(),
+            evictions, evictedBytes / 1024.0 / 1024.0, rejections,
+            cachedChunks, cachedBytes / 1024.0 / 1024.0
+        );
+    }
+}
@@ -0,0 +1,94 @@
+package org.hetic.models;
+
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+
+/**
+ * Identifiant d'un chunk : les 32 octets bruts de son empreinte, stockés dans quatre longs.
+ * Comparaison et hachage se font sur les longs, sans passer par une chaîne hexadécimale ;
+ * l'hexadécimal ne sert qu'aux noms de fichiers et à l'affichage.
+ */
+public final class ChunkId implements Comparable<ChunkId> {
+    public static final int BYTES = 32;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final long w0;
+    private final long w1;
+    private final long w2;
+    private final long w3;
+
+    private ChunkId(long w0, long w1, long w2, long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    public static ChunkId fromBytes(byte[] bytes) {
+        if (bytes.length != BYTES) {
+            throw new IllegalArgumentException("Un identifiant de chunk fait " + BYTES + " octets, reçu: " + bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new ChunkId(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    public static ChunkId fromHex(String hex) {
+        return fromBytes(HEX.parseHex(hex));
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(BYTES).putLong(w0).putLong(w1).putLong(w2).putLong(w3).array();
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(w0).putLong(w1).putLong(w2).putLong(w3);
+    }
+
+    public static ChunkId readFrom(ByteBuffer buffer) {
+        return new ChunkId(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    public String toHex() {
+        return HEX.toHexDigits(w0) + HEX.toHexDigits(w1) + HEX.toHexDigits(w2) + HEX.toHexDigits(w3);
+    }
+
+    /**
+     * Mot de 64 bits de l'empreinte (0 à 3), déjà uniformément distribué :
+     * utilisable directement comme hash pour les filtres et tables.
+     */
+    public long word(int index) {
+        return switch (index) {
+            case 0 -> w0;
+            case 1 -> w1;
+            case 2 -> w2;
+            case 3 -> w3;
+            default -> throw new IndexOutOfBoundsException(index);
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ChunkId other)) return false;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (w0 ^ (w0 >>> 32));
+    }
+
+    @Override
+    public int compareTo(ChunkId other) {
+        int cmp = Long.compareUnsigned(w0, other.w0);
+        if (cmp == 0) cmp = Long.compareUnsigned(w1, other.w1);
+        if (cmp == 0) cmp = Long.compareUnsigned(w2, other.w2);
+        if (cmp == 0) cmp = Long.compareUnsigned(w3, other.w3);
+        return cmp;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
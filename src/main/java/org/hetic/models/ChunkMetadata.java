@@ -1,15 +1,17 @@
 package org.hetic.models;
 
 public class ChunkMetadata {
-        private final String hash;
+        private final ChunkId id;
         private final long size;
         private final String location;
+        private final PackLocation packLocation;
         private int referenceCount;
 
-        public ChunkMetadata(String hash, long size, String location) {
-            this.hash = hash;
+        public ChunkMetadata(ChunkId id, long size, String location, PackLocation packLocation) {
+            this.id = id;
             this.size = size;
             this.location = location;
+            this.packLocation = packLocation;
             this.referenceCount = 1;
         }
 
@@ -17,19 +19,33 @@ public class ChunkMetadata {
             this.referenceCount++;
         }
 
+        public ChunkId getId() {
+            return id;
+        }
+
+        /**
+         * Empreinte en hexadécimal, calculée à la demande (affichage uniquement).
+         */
         public String getHash() {
-            return hash;
+            return id.toHex();
         }
 
         public long getSize() {
             return size;
         }
 
+        /**
+         * Emplacement lisible : {@code storage/pack-000001.pack@offset+longueur}.
+         */
         public String getLocation() {
             return location;
         }
 
+        public PackLocation getPackLocation() {
+            return packLocation;
+        }
+
         public int getReferenceCount() {
             return referenceCount;
         }
-    }
\ No newline at end of file
+    }
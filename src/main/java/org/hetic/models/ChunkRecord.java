@@ -0,0 +1,14 @@
+package org.hetic.models;
+
+/**
+ * Entrée de l'index des chunks : emplacement des données encodées, taille d'origine
+ * (pour placer le chunk dans un fichier sans le décompresser) et empreinte SHA-256 de
+ * confirmation, null si la vérification des doublons n'est pas active.
+ */
+public record ChunkRecord(
+    ChunkId hash,
+    PackLocation location,
+    int originalSize,
+    byte[] verifyDigest
+) {
+}
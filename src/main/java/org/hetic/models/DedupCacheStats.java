@@ -0,0 +1,29 @@
+package org.hetic.models;
+
+public record DedupCacheStats(
+    long cacheHits,
+    long bloomNegatives,
+    long databaseLookups,
+    long bloomFalsePositives,
+    long cachedHashes
+) {
+    public double avoidedLookupRatio() {
+        long total = cacheHits + bloomNegatives + databaseLookups;
+        return total == 0 ? 0.0 : (double) (cacheHits + bloomNegatives) / total * 100;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("""
+            Cache de déduplication :
+            - Doublons connus en mémoire : %d
+            - Nouveaux chunks certifiés par le filtre de Bloom : %d
+            - Recherches en base : %d (faux positifs du filtre : %d)
+            - Hashs en cache : %d
+            - Recherches évitées : %.2f%%
+            """,
+            cacheHits, bloomNegatives, databaseLookups, bloomFalsePositives,
+            cachedHashes, avoidedLookupRatio()
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package org.hetic.models;
+
+/**
+ * Dernier état ingéré d'un fichier : taille, date de modification (0 si inconnue)
+ * et empreinte SHA-256 du contenu complet, null si le fichier a été ingéré par reprise du
+ * découpage (seule la fin a été relue).
+ */
+public record FileCatalogEntry(String filename, long size, long modifiedTime, byte[] digest) {
+
+    public FileCatalogEntry withModifiedTime(long newModifiedTime) {
+        return new FileCatalogEntry(filename, size, newModifiedTime, digest);
+    }
+}
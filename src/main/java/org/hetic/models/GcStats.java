@@ -0,0 +1,26 @@
+package org.hetic.models;
+
+public record GcStats(
+    long orphansMarked,
+    long chunksDeleted,
+    long bytesReleased,
+    long chunksMoved,
+    long packsCompacted,
+    long packsDeleted,
+    long timeInMs
+) {
+    @Override
+    public String toString() {
+        return String.format("""
+            Ramasse-miettes :
+            - Chunks devenus orphelins : %d
+            - Chunks supprimés : %d (%.2f MB libérés dans les packs)
+            - Packs compactés : %d (%d chunks déplacés)
+            - Packs supprimés : %d
+            - Durée : %d ms
+            """,
+            orphansMarked, chunksDeleted, bytesReleased / (1024.0 * 1024.0),
+            packsCompacted, chunksMoved, packsDeleted, timeInMs
+        );
+    }
+}
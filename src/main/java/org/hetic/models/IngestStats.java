@@ -0,0 +1,29 @@
+package org.hetic.models;
+
+public record IngestStats(
+    long files,
+    long skippedFiles,
+    long chunks,
+    long newChunks,
+    long bytes,
+    long failures,
+    long timeInMs
+) {
+    @Override
+    public String toString() {
+        double seconds = Math.max(timeInMs, 1) / 1000.0;
+        return String.format("""
+            Statistiques d'ingestion :
+            - Fichiers traités : %d (inchangés, ignorés : %d)
+            - Chunks : %d (nouveaux : %d)
+            - Volume lu : %.2f MB
+            - Erreurs : %d
+            - Débit : %.2f MB/s
+            """,
+            files, skippedFiles, chunks, newChunks,
+            bytes / (1024.0 * 1024.0),
+            failures,
+            bytes / (1024.0 * 1024.0) / seconds
+        );
+    }
+}
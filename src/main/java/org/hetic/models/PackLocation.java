@@ -0,0 +1,16 @@
+package org.hetic.models;
+
+/**
+ * Emplacement d'un chunk stocké : fichier pack, position des données et longueur stockée.
+ */
+public record PackLocation(int packId, long offset, int length) {
+
+    public String fileName() {
+        return String.format("pack-%06d.pack", packId);
+    }
+
+    @Override
+    public String toString() {
+        return fileName() + "@" + offset + "+" + length;
+    }
+}
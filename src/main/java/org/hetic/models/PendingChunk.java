@@ -0,0 +1,19 @@
+package org.hetic.models;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Chunk prêt à être persisté : déjà hashé et, s'il est nouveau, déjà encodé
+ * pour le stockage. {@code encoded} vaut null pour un chunk déjà connu.
+ * {@code verifyDigest} est l'empreinte SHA-256 de confirmation, null si la vérification
+ * des doublons n'est pas active.
+ */
+public record PendingChunk(
+    ChunkId hash,
+    ByteBuffer encoded,
+    byte[] verifyDigest,
+    long originalSize,
+    String filename,
+    int chunkNumber
+) {
+}
@@ -0,0 +1,50 @@
+import org.hetic.BufferPool;
+import org.junit.jupiter.api.*;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+    @Test
+    void testReusesReleasedBuffers() {
+        BufferPool pool = new BufferPool(64 * 1024, 4);
+
+        ByteBuffer first = pool.acquire(3000);
+        assertTrue(first.isDirect());
+        assertEquals(4096, first.capacity(), "La capacité devrait être arrondie à la puissance de deux supérieure");
+        first.put(new byte[100]).flip();
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire(4000);
+        assertSame(first, second, "Le buffer rendu devrait être réutilisé");
+        assertEquals(0, second.position());
+        assertEquals(second.capacity(), second.limit());
+        assertEquals(1, pool.getReuses());
+    }
+
+    @Test
+    void testOversizedAndForeignBuffersAreNotPooled() {
+        BufferPool pool = new BufferPool(8 * 1024, 4);
+
+        ByteBuffer large = pool.acquire(100_000);
+        assertEquals(100_000, large.capacity());
+        pool.release(large);
+        pool.release(ByteBuffer.allocate(4096));
+
+        assertNotSame(large, pool.acquire(100_000));
+        assertEquals(0, pool.getReuses());
+    }
+
+    @Test
+    void testPoolIsBoundedPerSize() {
+        BufferPool pool = new BufferPool(8 * 1024, 1);
+        ByteBuffer a = pool.acquire(2048);
+        ByteBuffer b = pool.acquire(2048);
+        pool.release(a);
+        pool.release(b);
+
+        assertSame(a, pool.acquire(2048));
+        assertNotSame(b, pool.acquire(2048), "Au-delà de la limite, les buffers rendus sont abandonnés");
+    }
+}
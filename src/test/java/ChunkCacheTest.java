@@ -0,0 +1,94 @@
+import org.hetic.ChunkCache;
+import org.hetic.Murmur3ChunkHasher;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkCacheStats;
+import org.hetic.models.ChunkId;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkCacheTest {
+    @Test
+    void testReturnsCopyOfCachedChunk() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ChunkCache cache = new ChunkCache(1024 * 1024, offHeap);
+            byte[] chunk = "Contenu du chunk".getBytes();
+            ChunkId id = Sha256ChunkHasher.INSTANCE.hash(chunk);
+
+            assertNull(cache.get(id));
+            cache.put(id, chunk);
+            byte[] cached = cache.get(id);
+            assertArrayEquals(chunk, cached);
+            cached[0] = 'X';
+            assertArrayEquals(chunk, cache.get(id), "Modifier la copie ne doit pas altérer le cache");
+
+            ChunkCacheStats stats = cache.getStats();
+            assertEquals(2, stats.hits());
+            assertEquals(1, stats.misses());
+            assertEquals(1, stats.cachedChunks());
+            assertEquals(chunk.length, stats.cachedBytes());
+        }
+    }
+
+    @Test
+    void testCapacityIsBoundedInBytes() {
+        ChunkCache cache = new ChunkCache(1024 * 1024, false);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(chunkId(i), new byte[8 * 1024]);
+        }
+
+        ChunkCacheStats stats = cache.getStats();
+        assertTrue(stats.cachedBytes() <= 1024 * 1024, "Taille en cache : " + stats.cachedBytes());
+        assertTrue(stats.evictions() > 0);
+        assertEquals(1000 * 8 * 1024L, stats.cachedBytes() + stats.evictedBytes());
+    }
+
+    @Test
+    void testFrequentChunksSurviveScan() {
+        ChunkCache cache = new ChunkCache(1024 * 1024, false);
+        // Blocs communs lus à chaque restauration
+        List<ChunkId> shared = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            shared.add(chunkId(i));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (ChunkId id : shared) {
+                if (cache.get(id) == null) {
+                    cache.put(id, new byte[8 * 1024]);
+                }
+            }
+        }
+
+        // Un gros fichier lu une seule fois, quatre fois plus grand que le cache
+        for (int i = 1000; i < 1512; i++) {
+            ChunkId id = chunkId(i);
+            if (cache.get(id) == null) {
+                cache.put(id, new byte[8 * 1024]);
+            }
+        }
+
+        long survivors = shared.stream().filter(id -> cache.get(id) != null).count();
+        assertTrue(survivors >= 28, "Seulement " + survivors + " blocs communs encore en cache");
+        assertTrue(cache.getStats().rejections() > 0, "Les chunks lus une fois devraient être refusés");
+    }
+
+    @Test
+    void testWholeCapacityUsedWith128BitHashes() {
+        ChunkCache cache = new ChunkCache(1024 * 1024, false);
+        // Un huitième de la capacité : tout devrait tenir, quelle que soit la largeur de l'empreinte
+        for (int i = 0; i < 64; i++) {
+            cache.put(Murmur3ChunkHasher.INSTANCE.hash(("chunk-" + i).getBytes()), new byte[2 * 1024]);
+        }
+
+        ChunkCacheStats stats = cache.getStats();
+        assertEquals(0, stats.evictions());
+        assertEquals(64 * 2 * 1024L, stats.cachedBytes());
+    }
+
+    private static ChunkId chunkId(int i) {
+        return Sha256ChunkHasher.INSTANCE.hash(("chunk-" + i).getBytes());
+    }
+}
@@ -0,0 +1,76 @@
+import org.hetic.ChunkClaims;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkId;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkClaimsTest {
+    private static final ChunkId HASH = Sha256ChunkHasher.INSTANCE.hash("chunk partagé".getBytes());
+
+    @Test
+    void testSingleOwnerAmongConcurrentWriters() throws Exception {
+        ChunkClaims claims = new ChunkClaims();
+        AtomicInteger owners = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    if (claims.tryClaim(HASH)) {
+                        owners.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        }
+        assertEquals(1, owners.get(), "Un seul thread devrait écrire le chunk");
+        assertEquals(1, claims.size());
+    }
+
+    @Test
+    void testAwaitUntilReleased() throws Exception {
+        ChunkClaims claims = new ChunkClaims();
+        assertTrue(claims.tryClaim(HASH));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> follower = executor.submit(() -> claims.await(HASH));
+            assertThrows(java.util.concurrent.TimeoutException.class, () -> follower.get(100, TimeUnit.MILLISECONDS));
+
+            claims.release(HASH);
+            follower.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(0, claims.size());
+        // Libéré : un nouveau propriétaire peut le réserver, et l'attente est immédiate sans réservation
+        claims.await(HASH);
+        assertTrue(claims.tryClaim(HASH));
+    }
+
+    @Test
+    void testAbandonFailsFollowers() throws Exception {
+        ChunkClaims claims = new ChunkClaims();
+        assertTrue(claims.tryClaim(HASH));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> follower = executor.submit(() -> claims.await(HASH));
+            Thread.sleep(50);
+            claims.abandon(HASH, new RuntimeException("disque plein"));
+
+            Exception error = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+        }
+        assertTrue(claims.tryClaim(HASH), "Un chunk abandonné devrait pouvoir être réservé à nouveau");
+    }
+}
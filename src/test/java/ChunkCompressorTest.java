@@ -0,0 +1,162 @@
+import org.hetic.ChunkCompressor;
+import org.hetic.CompressionDictionaries;
+import org.hetic.CompressionPolicy;
+import org.junit.jupiter.api.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkCompressorTest {
+    private ChunkCompressor compressor;
+
+    @BeforeEach
+    void setUp() {
+        compressor = new ChunkCompressor(new CompressionPolicy(3, 0));
+    }
+
+    private static byte[] textChunk(int size) {
+        return textChunk(size, 42);
+    }
+
+    private static byte[] textChunk(int size, long seed) {
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(seed);
+        while (builder.length() < size) {
+            builder.append("2024-01-01 INFO user=").append(random.nextInt(1000)).append(" action=login ok\n");
+        }
+        return builder.substring(0, size).getBytes();
+    }
+
+    private static byte[] randomChunk(int size) {
+        byte[] data = new byte[size];
+        new Random(7).nextBytes(data);
+        return data;
+    }
+
+    private static ChunkCompressor.Codec codecOf(byte[] encoded) {
+        return ChunkCompressor.Codec.fromId(encoded[Long.BYTES]);
+    }
+
+    @Test
+    void testCompressibleChunkUsesZstd() {
+        byte[] chunk = textChunk(16 * 1024);
+        byte[] encoded = compressor.createCompressedChunkWithMetadata(chunk);
+
+        assertEquals(ChunkCompressor.Codec.ZSTD, codecOf(encoded));
+        assertTrue(encoded.length < chunk.length, "Le texte devrait être compressé");
+        assertArrayEquals(chunk, compressor.decompressChunkWithMetadata(encoded));
+    }
+
+    @Test
+    void testIncompressibleChunkIsStoredRaw() {
+        byte[] chunk = randomChunk(16 * 1024);
+        byte[] encoded = compressor.createCompressedChunkWithMetadata(chunk);
+
+        assertEquals(ChunkCompressor.Codec.RAW, codecOf(encoded), "Des données aléatoires ne devraient pas passer par Zstd");
+        assertEquals(chunk.length + ChunkCompressor.HEADER_SIZE, encoded.length);
+        assertArrayEquals(chunk, compressor.decompressChunkWithMetadata(encoded));
+    }
+
+    @Test
+    void testTinyChunkRoundTrip() {
+        byte[] chunk = "abc".getBytes();
+        byte[] encoded = compressor.createCompressedChunkWithMetadata(chunk);
+
+        assertEquals(ChunkCompressor.Codec.RAW, codecOf(encoded));
+        assertArrayEquals(chunk, compressor.decompressChunkWithMetadata(encoded));
+    }
+
+    @Test
+    void testDirectBufferRoundTrip() {
+        byte[] chunk = textChunk(8 * 1024);
+        ByteBuffer direct = ByteBuffer.allocateDirect(chunk.length + 10);
+        direct.position(10);
+        direct.put(chunk);
+        direct.position(10);
+
+        byte[] encoded = compressor.createCompressedChunkWithMetadata(direct);
+
+        assertEquals(10, direct.position(), "La position du buffer source ne devrait pas changer");
+        assertArrayEquals(chunk, compressor.decompressChunkWithMetadata(encoded));
+    }
+
+    @Test
+    void testEncodeIntoCallerBuffers() {
+        byte[] text = textChunk(8 * 1024);
+        byte[] random = randomChunk(8 * 1024);
+        ByteBuffer directSource = ByteBuffer.allocateDirect(text.length).put(text).flip();
+
+        for (ByteBuffer target : new ByteBuffer[]{
+                ByteBuffer.allocate(3 + 2 * ChunkCompressor.maxEncodedSize(text.length)),
+                ByteBuffer.allocateDirect(3 + 2 * ChunkCompressor.maxEncodedSize(text.length))}) {
+            target.position(3);
+            int first = compressor.encode(ByteBuffer.wrap(random), "", target);
+            int second = compressor.encode(directSource, "", target);
+            assertEquals(3 + first + second, target.position());
+
+            // Chaque encodage est identique à la version tableau
+            byte[] encodedRandom = new byte[first];
+            byte[] encodedText = new byte[second];
+            target.get(3, encodedRandom);
+            target.get(3 + first, encodedText);
+            assertArrayEquals(random, compressor.decompressChunkWithMetadata(encodedRandom));
+            assertArrayEquals(text, compressor.decompressChunkWithMetadata(encodedText));
+            assertArrayEquals(compressor.createCompressedChunkWithMetadata(text), encodedText);
+        }
+        assertEquals(0, directSource.position(), "La source ne devrait pas être consommée");
+    }
+
+    @Test
+    void testEncodeRejectsTooSmallTarget() {
+        assertThrows(IllegalArgumentException.class,
+            () -> compressor.encode(ByteBuffer.wrap(textChunk(1024)), "", ByteBuffer.allocate(100)));
+    }
+
+    @Test
+    void testTargetThroughputLowersLevel() {
+        // Cible inatteignable : le niveau doit descendre jusqu'au mode rapide
+        CompressionPolicy policy = new CompressionPolicy(19, 1_000_000);
+        ChunkCompressor adaptive = new ChunkCompressor(policy);
+        byte[] chunk = textChunk(4 * 1024);
+
+        for (int i = 0; i < 256 * 20; i++) {
+            adaptive.createCompressedChunkWithMetadata(chunk);
+        }
+
+        assertEquals(0, policy.getCurrentLevel());
+        byte[] encoded = adaptive.createCompressedChunkWithMetadata(chunk);
+        assertEquals(ChunkCompressor.Codec.FAST, codecOf(encoded));
+        assertArrayEquals(chunk, adaptive.decompressChunkWithMetadata(encoded));
+    }
+
+    @Test
+    void testSmallChunksUseTrainedDictionary() {
+        AtomicInteger ids = new AtomicInteger();
+        CompressionDictionaries dictionaries = new CompressionDictionaries((fileType, content) -> ids.incrementAndGet());
+        ChunkCompressor withDictionaries = new ChunkCompressor(new CompressionPolicy(3, 0), dictionaries);
+
+        // Les premiers petits chunks servent d'échantillons d'entraînement
+        for (int i = 0; i < 5000 && dictionaries.forFileType("log") == null; i++) {
+            withDictionaries.createCompressedChunkWithMetadata(ByteBuffer.wrap(textChunk(1024, i)), "log");
+        }
+        assertNotNull(dictionaries.forFileType("log"), "Un dictionnaire devrait être entraîné pour le type log");
+
+        byte[] chunk = textChunk(1024, -1);
+        byte[] encoded = withDictionaries.createCompressedChunkWithMetadata(ByteBuffer.wrap(chunk), "log");
+        byte[] withoutDictionary = compressor.createCompressedChunkWithMetadata(chunk);
+
+        assertEquals(ChunkCompressor.Codec.ZSTD_DICT, codecOf(encoded));
+        assertTrue(encoded.length < withoutDictionary.length, "Le dictionnaire devrait améliorer le ratio");
+        assertArrayEquals(chunk, withDictionaries.decompressChunkWithMetadata(encoded));
+    }
+
+    @Test
+    void testFileTypeOf() {
+        assertEquals("csv", CompressionDictionaries.fileTypeOf("data/Export.CSV"));
+        assertEquals("", CompressionDictionaries.fileTypeOf("dir.d/README"));
+        assertEquals("", CompressionDictionaries.fileTypeOf(null));
+    }
+}
@@ -0,0 +1,67 @@
+import org.hetic.Blake3ChunkHasher;
+import org.hetic.ChunkHasher;
+import org.hetic.Murmur3ChunkHasher;
+import org.hetic.Sha256ChunkHasher;
+import org.junit.jupiter.api.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkHasherTest {
+
+    private static byte[] officialInput(int length) {
+        // Entrée des vecteurs de test officiels BLAKE3 : l'octet i vaut i % 251
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    @Test
+    void testBlake3OfficialVectors() {
+        ChunkHasher blake3 = Blake3ChunkHasher.INSTANCE;
+
+        assertEquals("af1349b9f5f9a1a6a0404dea36dcc9499bcb25c9adc112b7cc9a93cae41f3262",
+                blake3.hash(new byte[0]).toHex());
+        assertEquals("2d3adedff11b61f14c886e35afa036736dcd87a74d27b5c1510225d0f592e213",
+                blake3.hash(officialInput(1)).toHex());
+        assertEquals("42214739f095a406f3fc83deb889744ac00df831c10daa55189b5d121c855af7",
+                blake3.hash(officialInput(1024)).toHex());
+        assertEquals("d00278ae47eb27b34faecf67b4fe263f82d5412916c1ffd97c8cb7fb814b8444",
+                blake3.hash(officialInput(1025)).toHex());
+        assertEquals("bc3e3d41a1146b069abffad3c0d44860cf664390afce4d9661f7902e7943e085",
+                blake3.hash(officialInput(102400)).toHex());
+    }
+
+    @Test
+    void testMurmur3KnownVector() {
+        String hex = Murmur3ChunkHasher.INSTANCE.hash("hello".getBytes(StandardCharsets.UTF_8)).toHex();
+        assertTrue(hex.startsWith("cbd8a7b341bd9b025b1e906a48ae1d19"), "Empreinte MurmurHash3 inattendue: " + hex);
+    }
+
+    @Test
+    void testSha256MatchesJdk() throws Exception {
+        byte[] data = officialInput(5000);
+        byte[] expected = java.security.MessageDigest.getInstance("SHA-256").digest(data);
+        assertArrayEquals(expected, Sha256ChunkHasher.INSTANCE.hash(data).toBytes());
+    }
+
+    @Test
+    void testHashIgnoresBufferPositionAndType() {
+        byte[] data = officialInput(3000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 10);
+        direct.position(10);
+        direct.put(data);
+        direct.position(10);
+
+        for (ChunkHasher hasher : new ChunkHasher[]{
+                Sha256ChunkHasher.INSTANCE, Blake3ChunkHasher.INSTANCE, Murmur3ChunkHasher.INSTANCE}) {
+            assertEquals(hasher.hash(data), hasher.hash(direct), "Empreinte différente pour " + hasher.name());
+            assertEquals(10, direct.position(), "Le calcul ne devrait pas déplacer la position du buffer");
+            assertSame(hasher, ChunkHasher.forName(hasher.name()));
+        }
+    }
+}
@@ -1,10 +1,16 @@
 import org.hetic.SQLChunkStorageSystem;
+import org.hetic.Sha256ChunkHasher;
 import org.hetic.models.ChunkMetadata;
 import org.hetic.models.DeduplicationStats;
 import org.junit.jupiter.api.*;
 import java.nio.file.*;
 import java.io.*;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -62,19 +68,33 @@ public class ChunkStorageSystemTest {
                 "Les hashs devraient être différents pour des contenus différents");
     }
 
+    @Test
+    void testConflictingReferenceIsRejected() {
+        // Même fichier et même numéro : un lot rejoué passe, un autre contenu échoue sans rien écraser
+        byte[] chunk1 = TEST_CONTENT_1.getBytes();
+        deduplicationSystem.addChunk(chunk1, TEST_FILENAME, 0);
+        deduplicationSystem.addChunk(chunk1, TEST_FILENAME, 0);
+
+        assertThrows(IllegalStateException.class,
+                () -> deduplicationSystem.addChunk(TEST_CONTENT_2.getBytes(), TEST_FILENAME, 0));
+        List<ChunkMetadata> chunks = deduplicationSystem.getFileChunks(TEST_FILENAME);
+        assertEquals(1, chunks.size());
+        assertEquals(TEST_CONTENT_1.length(), chunks.get(0).getSize());
+    }
+
     @Test
     void testPhysicalStorage() throws IOException, NoSuchAlgorithmException {
         // Créer un chunk et vérifier son stockage physique
         byte[] chunk = TEST_CONTENT_1.getBytes();
         ChunkMetadata metadata = deduplicationSystem.addChunk(chunk, TEST_FILENAME, 0);
 
-        // Vérifier que le fichier existe
-        Path storagePath = Paths.get(metadata.getLocation());
-        assertTrue(Files.exists(storagePath),
-                "Le fichier devrait exister dans le stockage");
+        // Vérifier que le pack existe
+        Path packPath = Paths.get("storage", metadata.getPackLocation().fileName());
+        assertTrue(Files.exists(packPath),
+                "Le pack devrait exister dans le stockage");
 
         // Vérifier le contenu
-        byte[] storedContent = Files.readAllBytes(storagePath);
+        byte[] storedContent = deduplicationSystem.readStoredChunk(metadata.getPackLocation());
         assertArrayEquals(chunk, storedContent,
                 "Le contenu stocké devrait être identique au chunk original");
     }
@@ -121,6 +141,25 @@ public class ChunkStorageSystemTest {
         assertTrue(output.contains("Références: 2"), "Les détails devraient montrer 2 références");
     }
 
+    @Test
+    void testConcurrentDuplicateChunks() throws Exception {
+        // Le même nouveau chunk ajouté en parallèle : un seul chunk indexé, sans erreur de transaction
+        List<Future<ChunkMetadata>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                String filename = "parallel" + i + ".txt";
+                results.add(executor.submit(() -> deduplicationSystem.addChunk(TEST_CONTENT_1.getBytes(), filename, 0)));
+            }
+        }
+        String location = results.get(0).get().getLocation();
+        for (Future<ChunkMetadata> result : results) {
+            assertEquals(location, result.get().getLocation(), "Tous les fichiers devraient référencer le même chunk");
+        }
+        assertEquals(1, deduplicationSystem.getChunkIndex().size());
+        assertEquals(0, deduplicationSystem.getClaims().size(), "Aucune réservation ne devrait rester");
+        assertEquals(8, deduplicationSystem.calculateDetailedStats().totalChunks());
+    }
+
     @AfterEach
     void tearDown() {
         // Nettoyage du storage
@@ -0,0 +1,249 @@
+import org.hetic.ChunkCompressor;
+import org.hetic.ChunkNode;
+import org.hetic.ClusterClient;
+import org.hetic.ClusterIngest;
+import org.hetic.ContentDefinedChunking;
+import org.hetic.Murmur3ChunkHasher;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkId;
+import org.hetic.models.IngestStats;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClusterIngestTest {
+    private static final int NODE_COUNT = 3;
+    private static final int WORKER_COUNT = 2;
+
+    private final ContentDefinedChunking chunker = new ContentDefinedChunking();
+    private final ChunkCompressor compressor = new ChunkCompressor();
+
+    @Test
+    void testWorkersPartitionChunksAcrossOwners(@TempDir Path directory) throws Exception {
+        Path data = writeFiles(directory.resolve("data"));
+        Set<ChunkId> expected = new HashSet<>();
+        for (Path file : listFiles(data)) {
+            chunker.streamChunks(file.toString(),
+                    (chunk, chunkNumber) -> expected.add(Sha256ChunkHasher.INSTANCE.hash(chunk)));
+        }
+
+        List<ChunkNode> nodes = startNodes(directory);
+        try {
+            List<IngestStats> stats = runWorkers(addresses(nodes), data);
+            assertEquals(listFiles(data).size(), stats.stream().mapToLong(IngestStats::files).sum());
+            assertEquals(0, stats.stream().mapToLong(IngestStats::failures).sum());
+            assertEquals(expected.size(), stats.stream().mapToLong(IngestStats::newChunks).sum(),
+                    "Chaque chunk distinct devrait être écrit une seule fois dans le cluster");
+
+            // Chaque chunk est chez son propriétaire, et seulement chez lui
+            assertEquals(expected.size(), nodes.stream().mapToLong(ChunkNode::chunkCount).sum());
+            for (ChunkId hash : expected) {
+                assertTrue(nodes.get(ClusterClient.ownerOf(hash, NODE_COUNT)).hasChunk(hash));
+            }
+            assertAllFilesRestored(addresses(nodes), data);
+        } finally {
+            closeNodes(nodes);
+        }
+
+        // Après redémarrage des nœuds, tout est retrouvé et une nouvelle ingestion n'écrit rien
+        nodes = startNodes(directory);
+        try {
+            assertEquals(expected.size(), nodes.stream().mapToLong(ChunkNode::chunkCount).sum());
+            List<IngestStats> stats = runWorkers(addresses(nodes), data);
+            assertEquals(0, stats.stream().mapToLong(IngestStats::newChunks).sum());
+            assertAllFilesRestored(addresses(nodes), data);
+        } finally {
+            closeNodes(nodes);
+        }
+    }
+
+    @Test
+    void testClaimOfDisconnectedWorkerIsTakenOver(@TempDir Path directory) throws Exception {
+        ChunkId hash = Sha256ChunkHasher.INSTANCE.hash("chunk partagé".getBytes());
+        List<ChunkNode> nodes = startNodes(directory);
+        try (ClusterClient survivor = new ClusterClient(addresses(nodes), Sha256ChunkHasher.INSTANCE)) {
+            try (ClusterClient first = new ClusterClient(addresses(nodes), Sha256ChunkHasher.INSTANCE)) {
+                assertEquals(Set.of(hash), first.lookup(List.of(hash)).claimed());
+                assertEquals(Set.of(hash), survivor.lookup(List.of(hash)).pending());
+            }
+            // La connexion du premier worker est coupée : sa réservation revient au survivant
+            ClusterClient.LookupResult result = survivor.await(List.of(hash));
+            assertEquals(Set.of(hash), result.claimed());
+
+            byte[] chunk = "chunk partagé".getBytes();
+            assertEquals(1, survivor.store(List.of(new ClusterClient.EncodedChunk(hash, chunk.length,
+                    compressor.createCompressedChunkWithMetadata(chunk)))));
+            assertTrue(survivor.lookup(List.of(hash)).claimed().isEmpty());
+            assertArrayEquals(chunk, compressor.decompressChunkWithMetadata(survivor.read(List.of(hash)).get(hash)));
+        } finally {
+            closeNodes(nodes);
+        }
+    }
+
+    @Test
+    void testFailedWorkerReleasesItsClaims(@TempDir Path directory) throws Exception {
+        // Deux workers ingèrent le même contenu : le premier réserve ses chunks puis échoue
+        Random random = new Random(7);
+        byte[] shared = new byte[256 * 1024];
+        byte[] unique = new byte[64 * 1024];
+        random.nextBytes(shared);
+        random.nextBytes(unique);
+        Path first = Files.createDirectories(directory.resolve("first"));
+        Path second = Files.createDirectories(directory.resolve("second"));
+        Files.write(first.resolve("1-shared.bin"), shared);
+        Files.write(first.resolve("2-unique.bin"), unique);
+        Files.write(second.resolve("shared.bin"), shared);
+
+        CountDownLatch claimed = new CountDownLatch(1);
+        CountDownLatch secondDone = new CountDownLatch(1);
+        ChunkCompressor failing = new ChunkCompressor() {
+            private int calls;
+
+            @Override
+            public byte[] createCompressedChunkWithMetadata(ByteBuffer chunk) {
+                if (calls++ == 0) {
+                    claimed.countDown();
+                    throw new IllegalStateException("échec de compression simulé");
+                }
+                // Le fichier suivant n'avance qu'une fois le second worker terminé
+                try {
+                    if (!secondDone.await(60, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("Le second worker n'a pas terminé");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+                return super.createCompressedChunkWithMetadata(chunk);
+            }
+        };
+
+        List<ChunkNode> nodes = startNodes(directory);
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            ClusterIngest failingIngest = new ClusterIngest(addresses(nodes), Sha256ChunkHasher.INSTANCE, failing,
+                    chunker, new ClusterIngest.Config(0, 1, 1, 1024));
+            Future<IngestStats> failingWorker = executor.submit(() -> failingIngest.run(first));
+            assertTrue(claimed.await(30, TimeUnit.SECONDS));
+
+            ClusterIngest otherIngest = new ClusterIngest(addresses(nodes), Sha256ChunkHasher.INSTANCE, compressor,
+                    chunker, new ClusterIngest.Config(0, 1, 1, 1024));
+            IngestStats other = executor.submit(() -> otherIngest.run(second)).get(30, TimeUnit.SECONDS);
+            secondDone.countDown();
+            assertEquals(1, other.files());
+            assertEquals(0, other.failures());
+
+            IngestStats failed = failingWorker.get(30, TimeUnit.SECONDS);
+            assertEquals(1, failed.files());
+            assertEquals(1, failed.failures());
+
+            try (ClusterClient client = new ClusterClient(addresses(nodes), Sha256ChunkHasher.INSTANCE)) {
+                ByteArrayOutputStream restored = new ByteArrayOutputStream();
+                assertTrue(client.readFile("shared.bin", compressor, restored, 32));
+                assertArrayEquals(shared, restored.toByteArray());
+            }
+        } finally {
+            secondDone.countDown();
+            closeNodes(nodes);
+        }
+    }
+
+    @Test
+    void testRejectsWorkerWithAnotherHasher(@TempDir Path directory) throws Exception {
+        List<ChunkNode> nodes = startNodes(directory);
+        try {
+            new ClusterClient(addresses(nodes), Sha256ChunkHasher.INSTANCE).close();
+            assertThrows(IOException.class,
+                    () -> new ClusterClient(addresses(nodes), Murmur3ChunkHasher.INSTANCE));
+        } finally {
+            closeNodes(nodes);
+        }
+    }
+
+    private List<IngestStats> runWorkers(List<InetSocketAddress> addresses, Path data) throws Exception {
+        List<IngestStats> stats = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(WORKER_COUNT)) {
+            List<Future<IngestStats>> workers = new ArrayList<>();
+            for (int worker = 0; worker < WORKER_COUNT; worker++) {
+                ClusterIngest ingest = new ClusterIngest(addresses, Sha256ChunkHasher.INSTANCE, compressor, chunker,
+                        new ClusterIngest.Config(worker, WORKER_COUNT, 2, 16));
+                workers.add(executor.submit(() -> ingest.run(data)));
+            }
+            for (Future<IngestStats> worker : workers) {
+                stats.add(worker.get(60, TimeUnit.SECONDS));
+            }
+        }
+        return stats;
+    }
+
+    private void assertAllFilesRestored(List<InetSocketAddress> addresses, Path data) throws IOException {
+        try (ClusterClient client = new ClusterClient(addresses, Sha256ChunkHasher.INSTANCE)) {
+            for (Path file : listFiles(data)) {
+                ByteArrayOutputStream restored = new ByteArrayOutputStream();
+                assertTrue(client.readFile(ClusterIngest.fileNameOf(data, file), compressor, restored, 32));
+                assertArrayEquals(Files.readAllBytes(file), restored.toByteArray(), "Fichier différent : " + file);
+            }
+            assertFalse(client.readFile("inconnu.bin", compressor, new ByteArrayOutputStream(), 32));
+        }
+    }
+
+    /**
+     * Fichiers faits de blocs aléatoires partagés : beaucoup de chunks communs entre fichiers et entre workers.
+     */
+    private static Path writeFiles(Path data) throws IOException {
+        Random random = new Random(42);
+        byte[][] blocks = new byte[12][];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new byte[64 * 1024];
+            random.nextBytes(blocks[i]);
+        }
+        Files.createDirectories(data.resolve("sub"));
+        for (int i = 0; i < 8; i++) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (int j = 0; j < 16; j++) {
+                content.write(blocks[random.nextInt(blocks.length)]);
+            }
+            Files.write(data.resolve(i % 2 == 0 ? "file-" + i + ".bin" : "sub/file-" + i + ".bin"), content.toByteArray());
+        }
+        return data;
+    }
+
+    private static List<Path> listFiles(Path data) throws IOException {
+        try (var paths = Files.walk(data)) {
+            return paths.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private static List<ChunkNode> startNodes(Path directory) throws IOException {
+        List<ChunkNode> nodes = new ArrayList<>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            nodes.add(new ChunkNode(directory.resolve("node-" + i),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+        }
+        return nodes;
+    }
+
+    private static List<InetSocketAddress> addresses(List<ChunkNode> nodes) {
+        return nodes.stream().map(ChunkNode::getAddress).toList();
+    }
+
+    private static void closeNodes(List<ChunkNode> nodes) throws IOException {
+        for (ChunkNode node : nodes) {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import org.hetic.ContentDefinedChunking;
+import org.hetic.GearBoundaryDetector;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentDefinedChunkingTest {
+    private ContentDefinedChunking chunker;
+
+    @BeforeEach
+    void setUp() {
+        chunker = new ContentDefinedChunking();
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private List<byte[]> chunk(byte[] data) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        chunker.streamChunks(new ByteArrayInputStream(data), data.length, (chunk, chunkNumber) -> {
+            assertEquals(chunks.size(), chunkNumber, "Les chunks devraient être numérotés dans l'ordre");
+            chunks.add(chunk);
+        });
+        return chunks;
+    }
+
+    @Test
+    void testChunksReassembleToOriginal() throws IOException {
+        byte[] data = randomData(3 * 1024 * 1024, 42);
+
+        ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+        for (byte[] chunk : chunk(data)) {
+            reassembled.write(chunk);
+        }
+
+        assertArrayEquals(data, reassembled.toByteArray(), "La concaténation des chunks devrait redonner le fichier");
+    }
+
+    @Test
+    void testChunkSizesRespectBounds() throws IOException {
+        // Fichier entre 1 MB et 10 MB : chunks de 4096 à 16384 octets
+        byte[] data = randomData(2 * 1024 * 1024, 7);
+        List<byte[]> chunks = chunk(data);
+
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            int size = chunks.get(i).length;
+            assertTrue(size >= 4096 && size <= 16384, "Taille de chunk hors bornes: " + size);
+        }
+        assertTrue(chunks.get(chunks.size() - 1).length <= 16384, "Le dernier chunk ne devrait pas dépasser le max");
+    }
+
+    @Test
+    void testBoundariesSurviveInsertion() throws IOException {
+        byte[] data = randomData(2 * 1024 * 1024, 11);
+        byte[] shifted = new byte[data.length + 1];
+        shifted[0] = 0x5A;
+        System.arraycopy(data, 0, shifted, 1, data.length);
+
+        List<String> original = new ArrayList<>();
+        for (byte[] chunk : chunk(data)) {
+            original.add(Arrays.toString(chunk));
+        }
+        int shared = 0;
+        List<byte[]> shiftedChunks = chunk(shifted);
+        for (byte[] chunk : shiftedChunks) {
+            if (original.contains(Arrays.toString(chunk))) {
+                shared++;
+            }
+        }
+
+        assertTrue(shared >= shiftedChunks.size() - 2,
+                "Seuls les chunks proches de l'insertion devraient changer (" + shared + "/" + shiftedChunks.size() + ")");
+    }
+
+    @Test
+    void testDetectorIsDeterministicAcrossBuffers() {
+        byte[] data = randomData(64 * 1024, 3);
+        GearBoundaryDetector detector = new GearBoundaryDetector((1 << 12) - 1, 1024, 4096);
+
+        int fromArray = detector.nextBoundary(data, 0, data.length);
+        int fromDirect = detector.nextBoundary(
+                ByteBuffer.allocateDirect(data.length).put(data).flip(), 0, data.length);
+
+        assertEquals(fromArray, fromDirect, "Les frontières ne devraient pas dépendre du type de buffer");
+    }
+
+    @Test
+    void testMappedChunkingMatchesStreaming() throws IOException {
+        byte[] data = randomData(3 * 1024 * 1024 + 123, 5);
+        Path file = Files.createTempFile("cdc", ".bin");
+        try {
+            Files.write(file, data);
+            List<byte[]> streamed = chunk(data);
+
+            // Fenêtre volontairement petite pour exercer la reprojection glissante
+            ContentDefinedChunking mappedChunker = new ContentDefinedChunking(100 * 1024);
+            List<byte[]> mapped = new ArrayList<>();
+            long[] expectedOffset = {0};
+            mappedChunker.streamMappedChunks(file.toString(), (chunk, fileOffset, chunkNumber) -> {
+                assertEquals(expectedOffset[0], fileOffset, "L'offset devrait suivre la fin du chunk précédent");
+                byte[] copy = new byte[chunk.remaining()];
+                chunk.get(copy);
+                mapped.add(copy);
+                expectedOffset[0] += copy.length;
+            });
+
+            assertEquals(streamed.size(), mapped.size(), "Les deux modes devraient produire le même nombre de chunks");
+            for (int i = 0; i < streamed.size(); i++) {
+                assertArrayEquals(streamed.get(i), mapped.get(i), "Chunk " + i + " différent entre les deux modes");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import org.hetic.EmbeddedChunkIndex;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkRecord;
+import org.hetic.models.PackLocation;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddedChunkIndexTest {
+    @Test
+    void testInsertAndLookup(@TempDir Path directory) throws Exception {
+        try (EmbeddedChunkIndex index = new EmbeddedChunkIndex(directory)) {
+            ChunkRecord first = record(1, null);
+            ChunkRecord second = record(2, new byte[32]);
+
+            Set<ChunkId> inserted = index.insertIfAbsent(List.of(first, second, first));
+            assertEquals(Set.of(first.hash(), second.hash()), inserted);
+
+            // Un chunk déjà indexé garde son emplacement
+            ChunkRecord moved = new ChunkRecord(first.hash(), new PackLocation(9, 0, 10), 10, null);
+            assertTrue(index.insertIfAbsent(List.of(moved)).isEmpty());
+
+            Map<ChunkId, ChunkRecord> found = index.lookup(List.of(first.hash(), second.hash(), record(3, null).hash()));
+            assertEquals(2, found.size());
+            assertEquals(first.location(), found.get(first.hash()).location());
+            assertEquals(first.originalSize(), found.get(first.hash()).originalSize());
+            // La recherche ne relit pas le journal : l'empreinte de vérification est lue à part
+            assertNull(found.get(second.hash()).verifyDigest());
+            Map<ChunkId, byte[]> digests = index.verifyDigests(List.of(first.hash(), second.hash()));
+            assertEquals(Set.of(second.hash()), digests.keySet());
+            assertArrayEquals(new byte[32], digests.get(second.hash()));
+        }
+    }
+
+    @Test
+    void testReopenReplaysLogAndGrows(@TempDir Path directory) throws Exception {
+        List<ChunkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            records.add(record(i, null));
+        }
+        try (EmbeddedChunkIndex index = new EmbeddedChunkIndex(directory)) {
+            index.insertIfAbsent(records.subList(0, 50_000));
+            index.insertIfAbsent(records.subList(50_000, records.size()));
+            assertEquals(100_000, index.size());
+        }
+
+        try (EmbeddedChunkIndex reopened = new EmbeddedChunkIndex(directory)) {
+            assertEquals(100_000, reopened.size());
+            ChunkRecord last = records.get(records.size() - 1);
+            assertEquals(last.location(), reopened.lookup(List.of(last.hash())).get(last.hash()).location());
+            long[] count = {0};
+            reopened.forEach(record -> count[0]++);
+            assertEquals(100_000, count[0]);
+        }
+    }
+
+    @Test
+    void testIncompleteTrailingRecordIsIgnored(@TempDir Path directory) throws Exception {
+        ChunkRecord kept = record(1, null);
+        try (EmbeddedChunkIndex index = new EmbeddedChunkIndex(directory)) {
+            index.insertIfAbsent(List.of(kept));
+        }
+        // Arrêt pendant l'écriture d'un enregistrement
+        try (FileChannel log = FileChannel.open(directory.resolve(EmbeddedChunkIndex.LOG_FILE_NAME), StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[40]));
+        }
+
+        try (EmbeddedChunkIndex index = new EmbeddedChunkIndex(directory)) {
+            assertEquals(1, index.size());
+            ChunkRecord added = record(2, null);
+            index.insertIfAbsent(List.of(added));
+            assertEquals(2, index.lookup(List.of(kept.hash(), added.hash())).size());
+        }
+        try (EmbeddedChunkIndex index = new EmbeddedChunkIndex(directory)) {
+            assertEquals(2, index.size());
+        }
+    }
+
+    @Test
+    void testUncleanShutdownRebuildsTableFromLog(@TempDir Path directory) throws Exception {
+        ChunkRecord first = record(1, new byte[32]);
+        EmbeddedChunkIndex crashed = new EmbeddedChunkIndex(directory);
+        crashed.insertIfAbsent(List.of(first, record(2, null)));
+        crashed.sync();
+
+        // Sans fermeture propre, la table projetée est reconstruite depuis le journal
+        try (EmbeddedChunkIndex index = new EmbeddedChunkIndex(directory)) {
+            assertEquals(2, index.size());
+            assertArrayEquals(new byte[32], index.verifyDigests(List.of(first.hash())).get(first.hash()));
+        }
+    }
+
+    private static ChunkRecord record(int i, byte[] digest) {
+        ChunkId hash = Sha256ChunkHasher.INSTANCE.hash(("chunk-" + i).getBytes());
+        return new ChunkRecord(hash, new PackLocation(1 + i / 1000, 36L * i, 100 + i % 50), 200 + i % 50, digest);
+    }
+}
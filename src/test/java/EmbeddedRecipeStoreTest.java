@@ -0,0 +1,178 @@
+import org.hetic.ChunkIndex;
+import org.hetic.EmbeddedRecipeStore;
+import org.hetic.RecipeStore;
+import org.hetic.SQLChunkStorageSystem;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkId;
+import org.hetic.models.ChunkMetadata;
+import org.hetic.models.DeduplicationStats;
+import org.hetic.models.FileCatalogEntry;
+import org.hetic.models.PendingChunk;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddedRecipeStoreTest {
+
+    @Test
+    void testStateSurvivesReopen(@TempDir Path directory) throws Exception {
+        byte[] digest = new byte[32];
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            store.putMeta("chunk_hasher", "sha256");
+            store.addReferences(List.of(reference("a.bin", 0, 1), reference("a.bin", 1, 2), reference("b.bin", 0, 1)));
+            store.addReferences(List.of(reference("a.bin", 2, 3)));
+            store.recordFile(new FileCatalogEntry("a.bin", 300, 42, digest));
+            store.recordFile(new FileCatalogEntry("b.bin", 100, 43, null));
+            store.forgetFile("b.bin", 0);
+            assertEquals(1, store.saveDictionary("log", new byte[]{1, 2, 3}));
+        }
+
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            assertEquals("sha256", store.getMeta("chunk_hasher"));
+            assertEquals(List.of(hash(1), hash(2), hash(3)), store.fileChunks("a.bin"));
+            assertTrue(store.fileChunks("b.bin").isEmpty());
+            assertEquals(Map.of("a.bin", 3), store.listFiles());
+
+            Map<String, FileCatalogEntry> catalog = store.loadCatalog();
+            assertEquals(1, catalog.size());
+            assertEquals(300, catalog.get("a.bin").size());
+            assertArrayEquals(digest, catalog.get("a.bin").digest());
+
+            List<RecipeStore.StoredDictionary> dictionaries = store.loadDictionaries();
+            assertEquals(1, dictionaries.size());
+            assertArrayEquals(new byte[]{1, 2, 3}, dictionaries.get(0).content());
+            assertEquals(2, store.saveDictionary("log", new byte[]{4}));
+        }
+    }
+
+    @Test
+    void testPartialForgetKeepsBeginning(@TempDir Path directory) throws Exception {
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            store.addReferences(List.of(reference("wal.log", 0, 1), reference("wal.log", 1, 2), reference("wal.log", 2, 3)));
+            store.recordFile(new FileCatalogEntry("wal.log", 300, 42, null));
+            store.forgetFile("wal.log", 2);
+
+            assertEquals(List.of(hash(1), hash(2)), store.fileChunks("wal.log"));
+            assertTrue(store.loadCatalog().isEmpty(), "Le fichier doit sortir du catalogue jusqu'à sa ré-ingestion");
+
+            // Un trou dans la numérotation rend la liste inutilisable
+            store.addReferences(List.of(reference("wal.log", 3, 4)));
+            assertTrue(store.fileChunks("wal.log").isEmpty());
+        }
+    }
+
+    @Test
+    void testConflictingReferenceFailsWholeBatch(@TempDir Path directory) throws Exception {
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            store.addReferences(List.of(reference("a.bin", 0, 1)));
+            // Lot rejoué à l'identique : accepté
+            store.addReferences(List.of(reference("a.bin", 0, 1)));
+
+            // Même nom, autre contenu : rien du lot n'est écrit
+            assertThrows(IllegalStateException.class,
+                    () -> store.addReferences(List.of(reference("a.bin", 1, 2), reference("a.bin", 0, 3))));
+            assertThrows(IllegalStateException.class,
+                    () -> store.addReferences(List.of(reference("b.bin", 0, 1), reference("b.bin", 0, 2))));
+            assertEquals(List.of(hash(1)), store.fileChunks("a.bin"));
+            assertFalse(store.containsFile("b.bin"));
+        }
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            assertEquals(List.of(hash(1)), store.fileChunks("a.bin"));
+        }
+    }
+
+    @Test
+    void testIncompleteTrailingRecordIsIgnored(@TempDir Path directory) throws Exception {
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            store.addReferences(List.of(reference("a.bin", 0, 1)));
+        }
+        // Arrêt pendant l'écriture d'un enregistrement : en-tête complet, contenu absent
+        try (FileChannel log = FileChannel.open(directory.resolve(EmbeddedRecipeStore.LOG_FILE_NAME), StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.allocate(9).put((byte) 1).putInt(1000).putInt(0).flip());
+        }
+
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            assertEquals(List.of(hash(1)), store.fileChunks("a.bin"));
+            store.addReferences(List.of(reference("a.bin", 1, 2)));
+        }
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            assertEquals(List.of(hash(1), hash(2)), store.fileChunks("a.bin"));
+        }
+    }
+
+    @Test
+    void testForgottenReferencesAreCompacted(@TempDir Path directory) throws Exception {
+        Path log = directory.resolve(EmbeddedRecipeStore.LOG_FILE_NAME);
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            List<PendingChunk> batch = new ArrayList<>();
+            for (int i = 0; i < 120_000; i++) {
+                batch.add(reference("old.bin", i, i));
+            }
+            store.addReferences(batch);
+            store.forgetFile("old.bin", 0);
+            store.addReferences(List.of(reference("new.bin", 0, 7)));
+            store.recordFile(new FileCatalogEntry("new.bin", 10, 1, null));
+        }
+        long before = Files.size(log);
+
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            assertTrue(Files.size(log) < before / 100, "Le journal devrait être réécrit sans les références oubliées");
+            assertEquals(Map.of("new.bin", 1), store.listFiles());
+            assertEquals(1, store.loadCatalog().size());
+        }
+        try (EmbeddedRecipeStore store = new EmbeddedRecipeStore(directory)) {
+            assertEquals(List.of(hash(7)), store.fileChunks("new.bin"));
+        }
+    }
+
+    @Test
+    void testEmbeddedRepositoryWithoutDatabase() {
+        // Index, listes de chunks et catalogue à côté des packs : aucune connexion PostgreSQL
+        try (SQLChunkStorageSystem embedded = new SQLChunkStorageSystem(Sha256ChunkHasher.INSTANCE, false, false,
+                ChunkIndex.Backend.EMBEDDED)) {
+            ChunkMetadata first = embedded.addChunk("Contenu de test 1".getBytes(), "file1.txt", 0);
+            ChunkMetadata duplicate = embedded.addChunk("Contenu de test 1".getBytes(), "file2.txt", 0);
+            embedded.addChunk("Contenu de test 2".getBytes(), "file2.txt", 1);
+            embedded.recordFile(new FileCatalogEntry("file2.txt", 34, 1, null));
+
+            assertEquals(first.getLocation(), duplicate.getLocation(), "Le doublon devrait réutiliser le chunk stocké");
+            assertEquals(2, embedded.getChunkIndex().size());
+            assertTrue(Files.exists(Paths.get("storage", "chunk-index.log")));
+            assertTrue(Files.exists(Paths.get("storage", EmbeddedRecipeStore.LOG_FILE_NAME)));
+            assertThrows(IllegalStateException.class, embedded::getConnection);
+
+            List<ChunkMetadata> chunks = embedded.getFileChunks("file2.txt");
+            assertEquals(2, chunks.size());
+            assertEquals("Contenu de test 2".length(), chunks.get(1).getSize());
+
+            DeduplicationStats stats = embedded.calculateDetailedStats();
+            assertEquals(3, stats.totalChunks());
+            assertEquals(2, stats.uniqueChunks());
+            assertEquals(1, stats.duplicateChunks());
+            assertEquals(33.33, stats.deduplicationRatio());
+
+            assertTrue(embedded.deleteFile("file1.txt"));
+            assertFalse(embedded.deleteFile("file1.txt"));
+            assertEquals(List.of("file2.txt"), List.copyOf(embedded.listFiles().keySet()));
+        }
+    }
+
+    private static PendingChunk reference(String filename, int chunkNumber, int content) {
+        return new PendingChunk(hash(content), null, null, 1, filename, chunkNumber);
+    }
+
+    private static ChunkId hash(int content) {
+        return Sha256ChunkHasher.INSTANCE.hash(ByteBuffer.allocate(4).putInt(0, content));
+    }
+}
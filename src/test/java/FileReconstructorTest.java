@@ -1,11 +1,16 @@
 import org.junit.jupiter.api.*;
 import java.nio.file.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.hetic.SQLChunkStorageSystem;
+import org.hetic.CompressedChunkStorageSystem;
 import org.hetic.FileReconstructor;
+import org.hetic.ChunkedFileChannel;
 
 public class FileReconstructorTest {
     private SQLChunkStorageSystem deduplicationSystem;
@@ -64,6 +69,72 @@ public class FileReconstructorTest {
             "Le fichier reconstruit devrait contenir tous les chunks dans l'ordre");
     }
 
+    @Test
+    void testCompressedParallelReconstruction() throws IOException {
+        // Le système du fixture est fermé avant que le nouveau ne réinitialise le stockage
+        deduplicationSystem.close();
+        // Chunks compressés, avec des doublons, restaurés par plusieurs threads
+        try (CompressedChunkStorageSystem compressedSystem = new CompressedChunkStorageSystem()) {
+            FileReconstructor parallelReconstructor = new FileReconstructor(compressedSystem, 4, 8);
+
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                String chunk = "Bloc " + (i % 7) + " ".repeat(100 + i % 7) + "\n";
+                compressedSystem.addChunk(chunk.getBytes(), TEST_FILENAME, i);
+                expected.append(chunk);
+            }
+
+            parallelReconstructor.reconstructFile(TEST_FILENAME);
+
+            Path reconstructedPath = Paths.get("reconstructed", "reconstructed_" + TEST_FILENAME);
+            assertEquals(expected.toString(), Files.readString(reconstructedPath),
+                "Les chunks compressés devraient être décompressés et écrits à leur position");
+            assertTrue(parallelReconstructor.getChunkCacheStats().hits() > 0,
+                "Les chunks répétés devraient être servis par le cache");
+        }
+    }
+
+    @Test
+    void testRangeReadAcrossChunks() throws IOException {
+        deduplicationSystem.close();
+        try (CompressedChunkStorageSystem compressedSystem = new CompressedChunkStorageSystem()) {
+            FileReconstructor rangeReconstructor = new FileReconstructor(compressedSystem);
+
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                String chunk = "Chunk " + i + " " + "x".repeat(50 + i) + "\n";
+                compressedSystem.addChunk(chunk.getBytes(), TEST_FILENAME, i);
+                expected.append(chunk);
+            }
+            byte[] content = expected.toString().getBytes();
+
+            // Plage à cheval sur plusieurs chunks, plage interne à un chunk, plage tronquée en fin de fichier
+            assertArrayEquals(Arrays.copyOfRange(content, 100, 400),
+                rangeReconstructor.readRange(TEST_FILENAME, 100, 300));
+            assertArrayEquals(Arrays.copyOfRange(content, 3, 10),
+                rangeReconstructor.readRange(TEST_FILENAME, 3, 7));
+            assertArrayEquals(Arrays.copyOfRange(content, content.length - 5, content.length),
+                rangeReconstructor.readRange(TEST_FILENAME, content.length - 5, 100));
+            assertEquals(0, rangeReconstructor.readRange(TEST_FILENAME, content.length + 10, 10).length);
+
+            try (ChunkedFileChannel channel = rangeReconstructor.openFile(TEST_FILENAME)) {
+                assertEquals(content.length, channel.size());
+                assertEquals(20, channel.chunkCount());
+
+                // Lecture séquentielle par petits morceaux après un positionnement
+                channel.position(500);
+                ByteBuffer buffer = ByteBuffer.allocate(content.length - 500);
+                ByteBuffer small = ByteBuffer.allocate(13);
+                while (channel.read(small.clear()) > 0) {
+                    buffer.put(small.flip());
+                }
+                assertArrayEquals(Arrays.copyOfRange(content, 500, content.length), buffer.array());
+                assertEquals(-1, channel.read(small.clear()));
+                assertThrows(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+            }
+        }
+    }
+
     @Test
     void testNonExistentFile() {
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
@@ -97,6 +168,8 @@ public class FileReconstructorTest {
 
     @AfterEach
     void tearDown() throws Exception {
+        deduplicationSystem.close();
+
         // Nettoyer les fichiers reconstruits
         Path reconstructedDir = Paths.get("reconstructed");
         if (Files.exists(reconstructedDir)) {
@@ -0,0 +1,114 @@
+import org.hetic.FileReconstructor;
+import org.hetic.GarbageCollector;
+import org.hetic.SQLChunkStorageSystem;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkId;
+import org.hetic.models.GcStats;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GarbageCollectorTest {
+    private final Random random = new Random(18);
+
+    @BeforeEach
+    void setUp() {
+        // Un dépôt non persistant repart de zéro
+        new SQLChunkStorageSystem().close();
+    }
+
+    @Test
+    void testDeletedFileIsCollectedAndPackCompacted() throws Exception {
+        byte[] unique = randomBytes(50_000);
+        byte[] shared = randomBytes(1000);
+        byte[] other = randomBytes(1000);
+        try (SQLChunkStorageSystem system = persistentSystem()) {
+            system.addChunk(unique, "a.bin", 0);
+            system.addChunk(shared, "a.bin", 1);
+            system.addChunk(shared, "b.bin", 0);
+            system.addChunk(other, "b.bin", 1);
+        }
+
+        // Réouverture : le premier pack est fermé et peut être compacté
+        try (SQLChunkStorageSystem system = persistentSystem()) {
+            int firstPack = system.getPackStore().packIds()[0];
+            assertTrue(system.deleteFile("a.bin"));
+            assertFalse(system.deleteFile("a.bin"), "Le fichier ne devrait plus exister");
+
+            GcStats stats = new GarbageCollector(system, Duration.ZERO, 0.5).collect();
+            assertEquals(1, stats.chunksDeleted(), "Seul le chunk propre au fichier supprimé est récupéré");
+            assertEquals(1, stats.packsCompacted());
+            assertEquals(2, stats.chunksMoved());
+            assertEquals(1, stats.packsDeleted());
+            assertFalse(Files.exists(system.getPackStore().packPath(firstPack)));
+
+            new FileReconstructor(system).reconstructFile("b.bin");
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            expected.write(shared);
+            expected.write(other);
+            assertArrayEquals(expected.toByteArray(), Files.readAllBytes(Paths.get("reconstructed", "reconstructed_b.bin")));
+        }
+    }
+
+    @Test
+    void testOrphansAreKeptDuringGracePeriod() {
+        try (SQLChunkStorageSystem system = persistentSystem()) {
+            system.addChunk(randomBytes(1000), "a.bin", 0);
+            system.deleteFile("a.bin");
+
+            GcStats stats = new GarbageCollector(system).collect();
+            assertEquals(1, stats.orphansMarked());
+            assertEquals(0, stats.chunksDeleted(), "Un chunk orphelin attend le délai de grâce");
+        }
+    }
+
+    @Test
+    void testMatchedOrphanSurvivesSweepUntilReferenced() throws Exception {
+        byte[] content = randomBytes(1000);
+        try (SQLChunkStorageSystem system = persistentSystem()) {
+            system.addChunk(content, "a.bin", 0);
+            system.deleteFile("a.bin");
+            GarbageCollector collector = new GarbageCollector(system);
+            assertEquals(1, collector.collect().orphansMarked());
+            try (Connection conn = system.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE chunks SET orphaned_at = CURRENT_TIMESTAMP - INTERVAL '1 day'");
+            }
+
+            // Doublon annoncé par le cache alors que le délai de grâce est écoulé
+            ChunkId hash = system.hashChunk(ByteBuffer.wrap(content));
+            assertEquals(Set.of(hash), system.findExistingChunks(List.of(hash)));
+            assertEquals(0, collector.collect().chunksDeleted(), "Le doublon retrouvé ne doit plus être balayé");
+
+            system.addChunk(content, "b.bin", 0);
+            assertEquals(1, system.getFileChunks("b.bin").size());
+        }
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static SQLChunkStorageSystem persistentSystem() {
+        return new SQLChunkStorageSystem(SQLChunkStorageSystem.DEFAULT_JDBC_URL,
+                "postgres", "root", Sha256ChunkHasher.INSTANCE, false, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        new SQLChunkStorageSystem().close();
+    }
+}
@@ -0,0 +1,153 @@
+import org.hetic.ContentDefinedChunking;
+import org.hetic.FileReconstructor;
+import org.hetic.IngestPipeline;
+import org.hetic.SQLChunkStorageSystem;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.IngestStats;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalIngestTest {
+    private static final IngestPipeline.Config CONFIG = new IngestPipeline.Config(1, 1, 1, 1, 1, 16, 8);
+
+    @BeforeEach
+    void setUp() {
+        // Un dépôt non persistant repart de zéro
+        new SQLChunkStorageSystem().close();
+    }
+
+    @Test
+    void testOnlyChangedFilesAreReingested(@TempDir Path directory) throws Exception {
+        Random random = new Random(16);
+        for (String name : new String[]{"a.bin", "b.bin", "c.bin"}) {
+            byte[] content = new byte[200 * 1024];
+            random.nextBytes(content);
+            Files.write(directory.resolve(name), content);
+        }
+
+        IngestStats first = ingest(directory);
+        assertEquals(3, first.files());
+        assertEquals(0, first.skippedFiles());
+
+        IngestStats unchanged = ingest(directory);
+        assertEquals(0, unchanged.files(), "Aucun fichier n'a changé");
+        assertEquals(3, unchanged.skippedFiles());
+
+        byte[] appended = new byte[50 * 1024];
+        random.nextBytes(appended);
+        Files.write(directory.resolve("b.bin"), appended, StandardOpenOption.APPEND);
+        IngestStats modified = ingest(directory);
+        assertEquals(1, modified.files(), "Seul le fichier modifié devrait être redécoupé");
+        assertEquals(2, modified.skippedFiles());
+        assertTrue(modified.newChunks() < modified.chunks(), "Le début du fichier est déjà stocké");
+
+        // Même contenu, nouvelle date : reconnu à son empreinte
+        Path touched = directory.resolve("c.bin");
+        Files.setLastModifiedTime(touched, FileTime.fromMillis(Files.getLastModifiedTime(touched).toMillis() + 60_000));
+        IngestStats afterTouch = ingest(directory);
+        assertEquals(0, afterTouch.files());
+        assertEquals(3, afterTouch.skippedFiles());
+    }
+
+    @Test
+    void testAppendedFileResumesChunking(@TempDir Path directory) throws Exception {
+        Random random = new Random(17);
+        Path log = directory.resolve("journal.log");
+        byte[] content = new byte[2 * 1024 * 1024];
+        random.nextBytes(content);
+        Files.write(log, content);
+        ingest(directory);
+
+        byte[] appended = new byte[100 * 1024];
+        random.nextBytes(appended);
+        Files.write(log, appended, StandardOpenOption.APPEND);
+
+        try (SQLChunkStorageSystem system = persistentSystem()) {
+            IngestStats stats = new IngestPipeline(system, new ContentDefinedChunking(), CONFIG).run(directory);
+            assertEquals(1, stats.files());
+            assertTrue(stats.bytes() < 200 * 1024, "Seule la fin du fichier devrait être redécoupée, lu : " + stats.bytes());
+
+            new FileReconstructor(system).reconstructFile("journal.log");
+            assertArrayEquals(Files.readAllBytes(log),
+                    Files.readAllBytes(Paths.get("reconstructed", "reconstructed_journal.log")));
+        }
+    }
+
+    @Test
+    void testSameNameInSubdirectoriesKeepsSeparateEntries(@TempDir Path directory) throws Exception {
+        Random random = new Random(19);
+        for (String version : new String[]{"2024", "2025"}) {
+            byte[] content = new byte[(version.equals("2024") ? 100 : 150) * 1024];
+            random.nextBytes(content);
+            Files.createDirectories(directory.resolve(version));
+            Files.write(directory.resolve(version).resolve("db.dump"), content);
+        }
+
+        assertEquals(2, ingest(directory).files());
+        IngestStats unchanged = ingest(directory);
+        assertEquals(0, unchanged.files(), "Chaque version devrait avoir sa propre entrée de catalogue");
+        assertEquals(2, unchanged.skippedFiles());
+
+        try (SQLChunkStorageSystem system = persistentSystem()) {
+            for (String version : new String[]{"2024", "2025"}) {
+                long size = system.getFileChunks(version + "/db.dump").stream().mapToLong(chunk -> chunk.getSize()).sum();
+                assertEquals(Files.size(directory.resolve(version).resolve("db.dump")), size);
+            }
+        }
+    }
+
+    @Test
+    void testFailedFileLeavesNoPartialRecipe(@TempDir Path directory) throws Exception {
+        Random random = new Random(18);
+        for (String name : new String[]{"sain.bin", "echec.bin"}) {
+            byte[] content = new byte[400 * 1024];
+            random.nextBytes(content);
+            Files.write(directory.resolve(name), content);
+        }
+
+        AtomicInteger encoded = new AtomicInteger();
+        try (SQLChunkStorageSystem system = new SQLChunkStorageSystem() {
+            @Override
+            public ByteBuffer encodeChunk(ByteBuffer chunk, String filename) {
+                // Les premiers chunks du fichier passent, la suite échoue
+                if (filename.equals("echec.bin") && encoded.incrementAndGet() > 2) {
+                    throw new IllegalStateException("disque plein");
+                }
+                return super.encodeChunk(chunk, filename);
+            }
+        }) {
+            IngestStats stats = new IngestPipeline(system, new ContentDefinedChunking(), CONFIG).run(directory);
+            assertEquals(1, stats.files(), "Le fichier en échec ne devrait pas être compté");
+            assertTrue(stats.failures() > 0);
+            assertTrue(system.getFileChunks("echec.bin").isEmpty(), "Aucune référence partielle ne devrait rester");
+            assertFalse(system.getFileChunks("sain.bin").isEmpty());
+        }
+    }
+
+    private static IngestStats ingest(Path directory) throws InterruptedException {
+        try (SQLChunkStorageSystem system = persistentSystem()) {
+            return new IngestPipeline(system, new ContentDefinedChunking(), CONFIG).run(directory);
+        }
+    }
+
+    private static SQLChunkStorageSystem persistentSystem() {
+        return new SQLChunkStorageSystem(SQLChunkStorageSystem.DEFAULT_JDBC_URL,
+                "postgres", "root", Sha256ChunkHasher.INSTANCE, false, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        new SQLChunkStorageSystem().close();
+    }
+}
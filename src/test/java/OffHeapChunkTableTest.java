@@ -0,0 +1,102 @@
+import org.hetic.OffHeapChunkTable;
+import org.hetic.Sha256ChunkHasher;
+import org.hetic.models.ChunkId;
+import org.hetic.models.PackLocation;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapChunkTableTest {
+    @Test
+    void testConcurrentInserts(@TempDir Path directory) throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        OffHeapChunkTable table = new OffHeapChunkTable(directory);
+        AtomicInteger inserted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    // Chaque thread insère ses propres chunks et une moitié commune à tous
+                    for (int i = 0; i < perThread; i++) {
+                        int n = i % 2 == 0 ? i : thread * perThread + i;
+                        if (table.putIfAbsent(hash(n), location(n), 100 + n, n)) {
+                            inserted.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long expected = perThread / 2 + (long) threads * perThread / 2;
+        assertEquals(expected, inserted.get(), "Un chunk commun ne doit être ajouté qu'une fois");
+        assertEquals(expected, table.size());
+        OffHeapChunkTable.Entry entry = table.get(hash(3 * perThread + 7));
+        assertEquals(location(3 * perThread + 7), entry.location());
+        assertEquals(100 + 3 * perThread + 7, entry.originalSize());
+        assertNull(table.get(hash(-1)));
+        table.close(0);
+    }
+
+    @Test
+    void testReopenAfterCleanClose(@TempDir Path directory) throws Exception {
+        OffHeapChunkTable table = new OffHeapChunkTable(directory);
+        assertEquals(-1, table.coveredLogSize());
+        for (int i = 0; i < 50_000; i++) {
+            table.putIfAbsent(hash(i), location(i), i, 85L * i);
+        }
+        table.close(85L * 50_000);
+
+        // Projection des fichiers, sans reconstruction
+        OffHeapChunkTable reopened = new OffHeapChunkTable(directory);
+        assertEquals(85L * 50_000, reopened.coveredLogSize());
+        assertEquals(50_000, reopened.size());
+        assertEquals(85L * 49_999, reopened.get(hash(49_999)).recordPosition());
+        long[] count = {0};
+        reopened.forEach(entry -> {
+            assertEquals(entry.location(), reopened.get(entry.hash()).location());
+            count[0]++;
+        });
+        assertEquals(50_000, count[0]);
+        reopened.close(85L * 50_000);
+    }
+
+    @Test
+    void testUncleanShutdownRequiresRebuild(@TempDir Path directory) throws Exception {
+        OffHeapChunkTable table = new OffHeapChunkTable(directory);
+        table.putIfAbsent(hash(1), location(1), 1, 0);
+        table.close(85);
+
+        OffHeapChunkTable opened = new OffHeapChunkTable(directory);
+        opened.putIfAbsent(hash(2), location(2), 2, 85);
+        // Arrêt brutal : pas de close, la table reste marquée à reconstruire
+        OffHeapChunkTable afterCrash = new OffHeapChunkTable(directory);
+        assertEquals(-1, afterCrash.coveredLogSize());
+        assertEquals(0, afterCrash.size());
+        afterCrash.close(0);
+    }
+
+    private static ChunkId hash(int i) {
+        return Sha256ChunkHasher.INSTANCE.hash(("chunk-" + i).getBytes());
+    }
+
+    private static PackLocation location(int i) {
+        return new PackLocation(1 + i / 1000, 36L * i, 100 + i % 50);
+    }
+}
@@ -0,0 +1,108 @@
+import org.hetic.PackFileStore;
+import org.hetic.models.ChunkId;
+import org.hetic.models.PackLocation;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackFileStoreTest {
+    @TempDir
+    Path directory;
+
+    private static ChunkId idOf(String content) {
+        byte[] bytes = new byte[ChunkId.BYTES];
+        byte[] source = content.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(source, 0, bytes, 0, Math.min(source.length, bytes.length));
+        return ChunkId.fromBytes(bytes);
+    }
+
+    @Test
+    void testAppendAndRead() throws IOException {
+        try (PackFileStore store = new PackFileStore(directory)) {
+            byte[] first = "premier chunk".getBytes(StandardCharsets.UTF_8);
+            byte[] second = "second chunk".getBytes(StandardCharsets.UTF_8);
+
+            PackLocation a = store.append(idOf("a"), ByteBuffer.wrap(first));
+            PackLocation b = store.append(idOf("b"), ByteBuffer.allocateDirect(second.length).put(second).flip());
+
+            assertEquals(a.packId(), b.packId(), "Les deux chunks devraient être dans le même pack");
+            assertEquals(PackFileStore.RECORD_HEADER_SIZE, a.offset());
+            assertArrayEquals(first, store.read(a));
+            assertArrayEquals(second, store.read(b));
+        }
+    }
+
+    @Test
+    void testRollsOverToNewPack() throws IOException {
+        try (PackFileStore store = new PackFileStore(directory, 1024)) {
+            byte[] data = new byte[600];
+            PackLocation a = store.append(idOf("a"), ByteBuffer.wrap(data));
+            PackLocation b = store.append(idOf("b"), ByteBuffer.wrap(data));
+
+            assertNotEquals(a.packId(), b.packId(), "Le second chunk devrait ouvrir un nouveau pack");
+            assertTrue(Files.exists(store.packPath(a.packId())));
+            assertTrue(Files.exists(store.packPath(b.packId())));
+            assertArrayEquals(data, store.read(b));
+        }
+    }
+
+    @Test
+    void testReopenAppendsToNewPack() throws IOException {
+        PackLocation first;
+        try (PackFileStore store = new PackFileStore(directory)) {
+            first = store.append(idOf("a"), ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        }
+        try (PackFileStore store = new PackFileStore(directory)) {
+            PackLocation second = store.append(idOf("b"), ByteBuffer.wrap(new byte[]{4, 5}));
+            assertTrue(second.packId() > first.packId(), "Un pack existant ne devrait jamais être réécrit");
+            assertArrayEquals(new byte[]{1, 2, 3}, store.read(first));
+        }
+    }
+
+    @Test
+    void testDeleteClosedPack() throws IOException {
+        try (PackFileStore store = new PackFileStore(directory, 1024)) {
+            PackLocation old = store.append(idOf("a"), ByteBuffer.wrap(new byte[600]));
+            store.read(old);
+            store.append(idOf("b"), ByteBuffer.wrap(new byte[600]));
+
+            assertArrayEquals(new int[]{old.packId(), store.currentPackId()}, store.packIds());
+            assertThrows(IllegalArgumentException.class, () -> store.deletePack(store.currentPackId()));
+
+            store.deletePack(old.packId());
+            assertFalse(Files.exists(store.packPath(old.packId())));
+            assertArrayEquals(new int[]{store.currentPackId()}, store.packIds());
+        }
+    }
+
+    @Test
+    void testAwaitDurableFromConcurrentWriters() throws Exception {
+        try (PackFileStore store = new PackFileStore(directory, 4096);
+             ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<PackLocation>> locations = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                byte[] data = ("chunk " + i).getBytes(StandardCharsets.UTF_8);
+                locations.add(writers.submit(() -> {
+                    PackLocation location = store.append(idOf(new String(data, StandardCharsets.UTF_8)), ByteBuffer.wrap(data));
+                    store.awaitDurable();
+                    return location;
+                }));
+            }
+            for (int i = 0; i < locations.size(); i++) {
+                assertArrayEquals(("chunk " + i).getBytes(StandardCharsets.UTF_8), store.read(locations.get(i).get()));
+            }
+            assertTrue(store.packIds().length > 1, "Les écritures devraient couvrir plusieurs packs");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import org.hetic.ContentDefinedChunking;
+import org.hetic.SyntheticCorpus;
+import org.hetic.SyntheticCorpus.Config;
+import org.hetic.SyntheticCorpus.CorpusFile;
+import org.hetic.SyntheticCorpus.Profile;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyntheticCorpusTest {
+    @Test
+    void testSameSeedGivesSameBytes() {
+        Config config = new Config(Profile.VERSIONED_BACKUP, 7, 8, 64 * 1024, 256 * 1024, 0.9, 5, 0.5);
+        SyntheticCorpus first = new SyntheticCorpus(config);
+        SyntheticCorpus second = new SyntheticCorpus(config);
+
+        assertEquals(8, first.files().size());
+        for (int i = 0; i < first.files().size(); i++) {
+            CorpusFile file = first.files().get(i);
+            byte[] content = first.readAllBytes(file);
+            assertEquals(file.size(), content.length);
+            assertArrayEquals(content, second.readAllBytes(second.files().get(i)),
+                    "Le corpus devrait être identique pour une même graine");
+        }
+
+        SyntheticCorpus other = new SyntheticCorpus(new Config(Profile.VERSIONED_BACKUP, 8, 8,
+                64 * 1024, 256 * 1024, 0.9, 5, 0.5));
+        assertFalse(java.util.Arrays.equals(first.readAllBytes(first.files().get(0)),
+                other.readAllBytes(other.files().get(0))));
+    }
+
+    @Test
+    void testWrittenFilesMatchStreams(@TempDir Path directory) throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(new Config(Profile.LOG_APPEND, 3, 5,
+                16 * 1024, 64 * 1024, 0.8, 0, 0.95));
+        corpus.writeTo(directory);
+
+        long previousSize = 0;
+        for (CorpusFile file : corpus.files()) {
+            byte[] written = Files.readAllBytes(directory.resolve(file.name()));
+            assertArrayEquals(corpus.readAllBytes(file), written);
+            assertTrue(written.length > previousSize, "Un journal ne fait que grandir");
+            previousSize = written.length;
+        }
+    }
+
+    @Test
+    void testVersionsShareMostChunks() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(new Config(Profile.VERSIONED_BACKUP, 11, 2,
+                1024 * 1024, 1024 * 1024, 0.9, 5, 0.5));
+        List<CorpusFile> versions = corpus.files();
+
+        Set<ByteBuffer> base = chunkDigests(corpus.readAllBytes(versions.get(0)));
+        Set<ByteBuffer> next = chunkDigests(corpus.readAllBytes(versions.get(1)));
+        long shared = next.stream().filter(base::contains).count();
+
+        // Modifications et insertions ne touchent que les chunks voisins malgré les décalages
+        assertTrue(shared >= next.size() * 0.6,
+                "Seulement " + shared + " chunks partagés sur " + next.size());
+        assertTrue(shared < next.size(), "La nouvelle version devrait contenir des chunks neufs");
+    }
+
+    @Test
+    void testVmImagesContainSharedAndZeroExtents() {
+        SyntheticCorpus corpus = new SyntheticCorpus(new Config(Profile.VM_IMAGE, 5, 3,
+                4L * 1024 * 1024, 4L * 1024 * 1024, 0.6, 0, 0.3));
+
+        assertEquals(3, corpus.files().size());
+        assertEquals(12L * 1024 * 1024, corpus.totalSize());
+        assertEquals(Profile.VM_IMAGE, Profile.fromName("vm-image"));
+    }
+
+    private static Set<ByteBuffer> chunkDigests(byte[] content) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        Set<ByteBuffer> digests = new HashSet<>();
+        new ContentDefinedChunking().streamChunks(new ByteArrayInputStream(content), content.length,
+                (chunk, chunkNumber) -> digests.add(ByteBuffer.wrap(digest.digest(chunk))));
+        return digests;
+    }
+}